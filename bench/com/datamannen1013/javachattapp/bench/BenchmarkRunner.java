@@ -0,0 +1,129 @@
+package com.datamannen1013.javachattapp.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs benchmark operations the way JMH's throughput mode does, for the harnesses in this
+ * package. Each operation gets warmup iterations and then measured iterations of a fixed
+ * length on the calling thread. The score is operations per second, given as the mean with
+ * the standard deviation over the measured iterations. Every result is folded into a sink
+ * that is printed at the end, so the JIT cannot drop the work as dead code.
+ *
+ * -Dbench.warmupIterations (default 5), -Dbench.iterations (default 5) and
+ * -Dbench.iterationMs (default 1000) set the length of a run.
+ */
+final class BenchmarkRunner {
+    private static final int WARMUP_ITERATIONS = Integer.getInteger("bench.warmupIterations", 5);
+    private static final int ITERATIONS = Math.max(1, Integer.getInteger("bench.iterations", 5));
+    private static final long ITERATION_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("bench.iterationMs", 1_000));
+    // Calls between clock reads grow until a batch takes this long, so cheap operations are not timed one by one
+    private static final long BATCH_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final int MAX_BATCH = 1 << 20;
+
+    private static long sink;
+
+    private BenchmarkRunner() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * One call of the code under test.
+     */
+    @FunctionalInterface
+    interface Operation {
+        /**
+         * @return Any value derived from the work, it is consumed so the work is not optimised away
+         * @throws Exception If the code under test fails, which ends the benchmark
+         */
+        long run() throws Exception;
+    }
+
+    record Score(String benchmark, String param, double mean, double deviation) {
+    }
+
+    /**
+     * Warms an operation up, then measures it.
+     * @param benchmark Name of the benchmark
+     * @param param Parameter value the operation was set up with, shown next to the name
+     * @param operation The operation to measure
+     * @return Throughput in operations per second
+     * @throws Exception If the operation fails
+     */
+    static Score run(String benchmark, String param, Operation operation) throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            double score = iterate(operation);
+            System.out.printf("# Warmup %s (%s) iteration %d: %.3f ops/s%n", benchmark, param, i + 1, score);
+        }
+        double[] scores = new double[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            scores[i] = iterate(operation);
+            System.out.printf("  %s (%s) iteration %d: %.3f ops/s%n", benchmark, param, i + 1, scores[i]);
+        }
+        double mean = 0;
+        for (double score : scores) {
+            mean += score / scores.length;
+        }
+        double variance = 0;
+        for (double score : scores) {
+            variance += (score - mean) * (score - mean);
+        }
+        double deviation = scores.length > 1 ? Math.sqrt(variance / (scores.length - 1)) : 0;
+        return new Score(benchmark, param, mean, deviation);
+    }
+
+    /**
+     * Prints the scores as a table, plus the sink so nothing was computed for nothing.
+     * @param scores The scores to print
+     */
+    static void print(List<Score> scores) {
+        int nameWidth = "Benchmark".length();
+        for (Score score : scores) {
+            nameWidth = Math.max(nameWidth, score.benchmark().length());
+        }
+        String format = "%-" + nameWidth + "s %12s %6s %4s %16s %14s  %s%n";
+        System.out.printf("%n" + format, "Benchmark", "(param)", "Mode", "Cnt", "Score", "Deviation", "Units");
+        for (Score score : scores) {
+            System.out.printf(format, score.benchmark(), score.param(), "thrpt", ITERATIONS,
+                    String.format("%.3f", score.mean()), String.format("± %.3f", score.deviation()), "ops/s");
+        }
+        System.out.println("(sink " + sink + ")");
+    }
+
+    /**
+     * Points the server at an empty database file in a temporary directory, unless
+     * -Dchat.db.url is given. Has to run before any server class is loaded.
+     * @return The database URL in use
+     * @throws IOException If the temporary directory cannot be created
+     */
+    static String useTemporaryDatabase() throws IOException {
+        if (System.getProperty("chat.db.url") == null) {
+            System.setProperty("chat.db.url",
+                    "jdbc:sqlite:" + Files.createTempDirectory("chat-bench").resolve("chat.db"));
+        }
+        return System.getProperty("chat.db.url");
+    }
+
+    // Private methods
+    private static double iterate(Operation operation) throws Exception {
+        long operations = 0;
+        int batch = 1;
+        long start = System.nanoTime();
+        long deadline = start + ITERATION_NANOS;
+        long now = start;
+        while (now < deadline) {
+            long batchStart = now;
+            for (int i = 0; i < batch; i++) {
+                sink += operation.run();
+            }
+            operations += batch;
+            now = System.nanoTime();
+            if (now - batchStart < BATCH_NANOS && batch < MAX_BATCH) {
+                batch <<= 1;
+            }
+        }
+        return operations * 1e9 / (now - start);
+    }
+}
@@ -0,0 +1,59 @@
+package com.datamannen1013.javachattapp.bench;
+
+import com.datamannen1013.javachattapp.server.DuplicateFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the duplicate check every chat line goes through, with a full window of recent
+ * messages. "miss" checks a new line, which is compared against the whole window; "hit" checks
+ * a repeat of the newest line, the last one compared; "checkAndRemember" does what a client's
+ * reader does for a stream of distinct lines. The server uses a window of 16, larger windows
+ * show how the check grows with the backlog. Messages are remembered for the whole run, so
+ * the window stays full instead of emptying after the server's two seconds.
+ *
+ * Usage: DuplicateCheckBenchmark [windows]
+ * Defaults to windows of 16,64,256,1024. Duplicate warnings are turned off for the run.
+ */
+public class DuplicateCheckBenchmark {
+    private static final int DISTINCT_MESSAGES = 4096;
+
+    public static void main(String[] args) throws Exception {
+        String windows = args.length > 0 ? args[0] : "16,64,256,1024";
+        // Every hit would otherwise log a warning
+        if (System.getProperty("chat.log.levels") == null) {
+            System.setProperty("chat.log.levels", DuplicateFilter.class.getName() + "=SEVERE");
+        }
+
+        String[] messages = new String[DISTINCT_MESSAGES];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = "[12:00:00] bench: chat message number " + i + " with some ordinary text";
+        }
+        String newMessage = "[12:00:01] bench: a message that was not sent before";
+
+        List<BenchmarkRunner.Score> scores = new ArrayList<>();
+        for (String value : windows.split(",")) {
+            int window = Integer.parseInt(value.trim());
+            DuplicateFilter full = new DuplicateFilter(window, Long.MAX_VALUE);
+            for (int i = 0; i < window; i++) {
+                full.remember(messages[i % messages.length]);
+            }
+            String newest = messages[(window - 1) % messages.length];
+            scores.add(BenchmarkRunner.run("miss", value.trim(), () -> full.isDuplicate(newMessage) ? 1 : 0));
+            scores.add(BenchmarkRunner.run("hit", value.trim(), () -> full.isDuplicate(newest) ? 1 : 0));
+
+            DuplicateFilter rolling = new DuplicateFilter(window, Long.MAX_VALUE);
+            int[] next = {0};
+            scores.add(BenchmarkRunner.run("checkAndRemember", value.trim(), () -> {
+                String message = messages[next[0]++ & (DISTINCT_MESSAGES - 1)];
+                if (rolling.isDuplicate(message)) {
+                    return 1;
+                }
+                rolling.remember(message);
+                return 0;
+            }));
+        }
+        BenchmarkRunner.print(scores);
+    }
+}
@@ -0,0 +1,237 @@
+package com.datamannen1013.javachattapp.bench;
+
+import com.datamannen1013.javachattapp.server.BlockingChatServer;
+import com.datamannen1013.javachattapp.server.BroadcastDispatcher;
+import com.datamannen1013.javachattapp.server.ClientHandler;
+import com.datamannen1013.javachattapp.server.constants.ServerConstants;
+import com.datamannen1013.javachattapp.server.database.DatabaseManager;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Compares the platform-thread and virtual-thread server modes in one JVM.
+ * Opens a large number of idle connections plus a set of active ones that each send
+ * chat messages, then reports join time, heap, live platform threads and delivery throughput.
+ *
+ * Usage: ExecutionModeBenchmark [idleClients] [activeClients] [messagesPerActiveClient]
+ * Defaults to 10000 idle and 1000 active clients. Every connection uses two file
+ * descriptors here, so raise the limit first (ulimit -n 65536).
+ */
+public class ExecutionModeBenchmark {
+    private static final int BASE_PORT = 5100;
+    private static final long PHASE_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final String MARKER = "bench-msg";
+
+    public static void main(String[] args) throws Exception {
+        int idleClients = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int activeClients = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+        int messagesPerClient = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+        DatabaseManager.getInstance();
+
+        List<Result> results = new ArrayList<>();
+        results.add(run("platform", BlockingChatServer.platformThreads(), BASE_PORT,
+                idleClients, activeClients, messagesPerClient));
+        results.add(run("virtual", BlockingChatServer.virtualThreads(), BASE_PORT + 1,
+                idleClients, activeClients, messagesPerClient));
+
+        System.out.printf("%n%-10s %12s %12s %14s %14s %16s%n",
+                "mode", "join ms", "heap MB", "live threads", "deliver ms", "deliveries/s");
+        for (Result result : results) {
+            System.out.printf("%-10s %12d %12d %14d %14d %16.0f%n",
+                    result.mode, result.joinMillis, result.heapMegabytes, result.liveThreads,
+                    result.deliverMillis, result.deliveriesPerSecond());
+        }
+        System.exit(0);
+    }
+
+    private static Result run(String mode, ThreadFactory threadFactory, int port,
+                              int idleClients, int activeClients, int messagesPerClient) throws Exception {
+        System.out.println("Running " + mode + " mode...");
+        Set<ClientHandler> clients = ConcurrentHashMap.newKeySet();
+        BroadcastDispatcher dispatcher = new BroadcastDispatcher(clients, ServerConstants.BROADCAST_RING_SIZE);
+        dispatcher.start();
+        BlockingChatServer server = new BlockingChatServer(port, clients, dispatcher, threadFactory);
+        Thread acceptor = new Thread(() -> {
+            try {
+                server.start();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "bench-acceptor-" + mode);
+        acceptor.start();
+        Thread.sleep(500);
+
+        int total = idleClients + activeClients;
+        SimulatedClients simulated = new SimulatedClients();
+        long joinStart = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            simulated.connect(port, "bench-" + i);
+        }
+        awaitCount(clients::size, total, "joins");
+        long joinMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - joinStart);
+
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        long heapMegabytes = (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+        int liveThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        // Let join notices and history settle before counting chat deliveries
+        Thread.sleep(1000);
+        simulated.resetDeliveries();
+
+        long expected = (long) activeClients * messagesPerClient * total;
+        long deliverStart = System.nanoTime();
+        for (int m = 0; m < messagesPerClient; m++) {
+            for (int i = idleClients; i < total; i++) {
+                String name = "bench-" + i;
+                simulated.send(i, "[" + System.currentTimeMillis() + "] " + name + ": " + MARKER + " " + i + "-" + m);
+            }
+        }
+        awaitCount(simulated::deliveries, expected, "deliveries");
+        long deliverMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - deliverStart);
+
+        simulated.close();
+        server.shutdown();
+        dispatcher.shutdown();
+        acceptor.join(TimeUnit.SECONDS.toMillis(10));
+        return new Result(mode, joinMillis, heapMegabytes, liveThreads, deliverMillis, expected);
+    }
+
+    private static void awaitCount(LongSupplier counter, long expected, String what) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + PHASE_TIMEOUT_MS;
+        while (counter.getAsLong() < expected) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Timed out waiting for " + what + ": "
+                        + counter.getAsLong() + "/" + expected);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private record Result(String mode, long joinMillis, long heapMegabytes, int liveThreads,
+                          long deliverMillis, long deliveries) {
+        double deliveriesPerSecond() {
+            return deliverMillis == 0 ? 0 : deliveries * 1000.0 / deliverMillis;
+        }
+    }
+
+    /**
+     * Client side of the benchmark. A single selector thread drains every simulated
+     * connection and counts chat lines, so the client side stays cheap whichever
+     * server mode is measured.
+     */
+    private static final class SimulatedClients implements Runnable {
+        private static final byte[] MARKER_BYTES = MARKER.getBytes(StandardCharsets.UTF_8);
+
+        private final Selector selector;
+        private final List<SocketChannel> channels = new ArrayList<>();
+        private final AtomicLong deliveries = new AtomicLong();
+        private final Thread reader;
+        private volatile boolean running = true;
+
+        SimulatedClients() throws IOException {
+            this.selector = Selector.open();
+            this.reader = new Thread(this, "bench-reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        void connect(int port, String userName) throws IOException {
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", port));
+            writeFully(channel, "/join " + userName);
+            channel.configureBlocking(false);
+            channels.add(channel);
+            channel.register(selector, SelectionKey.OP_READ, new int[1]);
+        }
+
+        void send(int index, String line) throws IOException {
+            writeFully(channels.get(index), line);
+        }
+
+        long deliveries() {
+            return deliveries.get();
+        }
+
+        void resetDeliveries() {
+            deliveries.set(0);
+        }
+
+        void close() throws IOException {
+            running = false;
+            selector.wakeup();
+            for (SocketChannel channel : channels) {
+                channel.close();
+            }
+        }
+
+        @Override
+        public void run() {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+            try {
+                while (running) {
+                    selector.select(100);
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        drain(key, buffer);
+                    }
+                }
+            } catch (IOException e) {
+                if (running) e.printStackTrace();
+            }
+        }
+
+        private void drain(SelectionKey key, ByteBuffer buffer) {
+            int[] matched = (int[]) key.attachment();
+            try {
+                buffer.clear();
+                if (((SocketChannel) key.channel()).read(buffer) < 0) {
+                    key.cancel();
+                    return;
+                }
+                buffer.flip();
+                // Allocation free marker search, state survives across reads
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    if (b == MARKER_BYTES[matched[0]]) {
+                        if (++matched[0] == MARKER_BYTES.length) {
+                            deliveries.incrementAndGet();
+                            matched[0] = 0;
+                        }
+                    } else {
+                        matched[0] = b == MARKER_BYTES[0] ? 1 : 0;
+                    }
+                }
+            } catch (IOException e) {
+                key.cancel();
+            }
+        }
+
+        private static void writeFully(SocketChannel channel, String line) throws IOException {
+            ByteBuffer bytes = StandardCharsets.UTF_8.encode(line + "\n");
+            while (bytes.hasRemaining()) {
+                if (channel.write(bytes) == 0) {
+                    Thread.onSpinWait();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.datamannen1013.javachattapp.bench;
+
+import com.datamannen1013.javachattapp.protocol.WireFormat;
+import com.datamannen1013.javachattapp.server.BroadcastDispatcher;
+import com.datamannen1013.javachattapp.server.ClientHandler;
+import com.datamannen1013.javachattapp.server.connection.ClientConnection;
+import com.datamannen1013.javachattapp.server.connection.SharedFrame;
+import com.datamannen1013.javachattapp.server.constants.ServerConstants;
+import com.datamannen1013.javachattapp.server.database.DatabaseManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Measures broadcast fan-out from the dispatcher through ClientHandler to N clients whose
+ * connections are in-memory sinks, so no socket or event loop is involved. The publisher
+ * keeps at most half the ring in flight, like a busy server, and a message counts once it has
+ * been handed to every client. Each sink takes the text encoding of every frame, which is
+ * made once per message and shared.
+ *
+ * Usage: FanOutBenchmark [clientCounts]
+ * Defaults to 1,10,100,1000 clients. Uses a temporary database unless -Dchat.db.url is set.
+ * Run it in a scratch directory, the message archive is created there.
+ */
+public class FanOutBenchmark {
+    private static final String MESSAGE = "[12:00:00] bench: an ordinary chat message for every client";
+
+    public static void main(String[] args) throws Exception {
+        String clientCounts = args.length > 0 ? args[0] : "1,10,100,1000";
+        BenchmarkRunner.useTemporaryDatabase();
+        DatabaseManager databaseManager = DatabaseManager.getInstance();
+
+        List<BenchmarkRunner.Score> scores = new ArrayList<>();
+        List<String> latencies = new ArrayList<>();
+        for (String count : clientCounts.split(",")) {
+            int clients = Integer.parseInt(count.trim());
+            Set<ClientHandler> subscribers = ConcurrentHashMap.newKeySet();
+            BroadcastDispatcher dispatcher = new BroadcastDispatcher(subscribers, ServerConstants.BROADCAST_RING_SIZE);
+            dispatcher.start();
+            for (int i = 0; i < clients; i++) {
+                new ClientHandler(new SinkConnection(), subscribers, dispatcher, "sink-" + i);
+            }
+            long window = ServerConstants.BROADCAST_RING_SIZE / 2;
+            scores.add(BenchmarkRunner.run("fanOut", count.trim(), () -> {
+                long sequence = dispatcher.publish(MESSAGE);
+                dispatcher.awaitDispatched(sequence - window);
+                return sequence;
+            }));
+            dispatcher.shutdown();
+            latencies.add(String.format("%s clients: publish to dispatched p50 %d us, p99 %d us",
+                    count.trim(),
+                    dispatcher.getDispatchLatency().getValueAtPercentile(50) / 1000,
+                    dispatcher.getDispatchLatency().getValueAtPercentile(99) / 1000));
+        }
+        databaseManager.shutdown();
+
+        BenchmarkRunner.print(scores);
+        latencies.forEach(System.out::println);
+    }
+
+    // Takes frames the way a connection does, without anything behind it
+    private static final class SinkConnection implements ClientConnection {
+        private long bytesWritten;
+
+        @Override
+        public void writeFrame(SharedFrame frame) {
+            bytesWritten += frame.view(WireFormat.TEXT).remaining();
+        }
+
+        @Override
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
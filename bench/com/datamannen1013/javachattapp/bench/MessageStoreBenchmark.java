@@ -0,0 +1,104 @@
+package com.datamannen1013.javachattapp.bench;
+
+import com.datamannen1013.javachattapp.server.database.DatabaseConfig;
+import com.datamannen1013.javachattapp.server.database.DatabaseManager;
+import com.datamannen1013.javachattapp.server.database.MessageStore;
+import com.datamannen1013.javachattapp.server.database.archive.MessageArchive;
+import com.datamannen1013.javachattapp.server.database.archive.RetentionJob;
+import com.datamannen1013.javachattapp.server.database.log.SegmentLogStore;
+import com.datamannen1013.javachattapp.server.database.models.Message;
+import com.datamannen1013.javachattapp.server.database.repository.MessageWriter;
+import com.datamannen1013.javachattapp.server.database.repository.SqliteMessageStore;
+import com.datamannen1013.javachattapp.server.metrics.LatencyHistogram;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Compares the SQLite and segment log message stores in one JVM.
+ * Appends messages to each store and waits until the last is stored, then reads random
+ * history pages back and reports append throughput and page latency.
+ * Both stores use the durability set with -Dchat.db.durability.
+ *
+ * Usage: MessageStoreBenchmark [messages] [pages] [pageSize]
+ * Defaults to 200000 messages and 2000 pages of 50. Run it in a scratch directory, the
+ * SQLite store writes to chat.db there and the log to a temporary directory.
+ */
+public class MessageStoreBenchmark {
+    private static final int FETCH_SIZE = 100;
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int pages = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        int pageSize = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        DatabaseManager databaseManager = DatabaseManager.getInstance();
+        MessageWriter writer = new MessageWriter(databaseManager,
+                DatabaseConfig.getWriteQueueCapacity(),
+                DatabaseConfig.getWriteBatchSize(),
+                DatabaseConfig.getWriteMaxDelayMillis(),
+                DatabaseConfig.getPoolMaxWaitMillis());
+        writer.start();
+        Path logDirectory = Files.createTempDirectory("message-log-bench");
+        // Retention stays off, the archive is only there because the SQLite store reads through it
+        MessageArchive archive = new MessageArchive(Files.createTempDirectory("message-archive-bench"), 1);
+        RetentionJob retentionJob = new RetentionJob(archive, 0, 0, 0, 0, 0, 0);
+
+        List<Result> results = new ArrayList<>();
+        results.add(run("sqlite", new SqliteMessageStore(writer, archive, retentionJob), messages, pages, pageSize));
+        results.add(run("log", new SegmentLogStore(logDirectory,
+                DatabaseConfig.getLogSegmentBytes(),
+                DatabaseConfig.getLogIndexInterval(),
+                DatabaseConfig.getDurability(),
+                DatabaseConfig.getWriteMaxDelayMillis()), messages, pages, pageSize));
+        databaseManager.shutdown();
+
+        System.out.printf("%n%-8s %12s %14s %14s %14s%n",
+                "store", "append ms", "appends/s", "page p50 us", "page p99 us");
+        for (Result result : results) {
+            System.out.printf("%-8s %12d %14.0f %14d %14d%n",
+                    result.store, result.appendMillis, result.appendsPerSecond(),
+                    result.pageTime.getValueAtPercentile(50) / 1000, result.pageTime.getValueAtPercentile(99) / 1000);
+        }
+    }
+
+    private static Result run(String name, MessageStore store, int messages, int pages, int pageSize)
+            throws Exception {
+        System.out.println("Appending " + messages + " messages to " + name);
+        long start = System.nanoTime();
+        CompletableFuture<Message> first = store.append("bench", "bench message 0");
+        CompletableFuture<Message> last = first;
+        for (int i = 1; i < messages; i++) {
+            last = store.append("bench-" + (i % 16), "bench message " + i + " with some ordinary chat text");
+        }
+        long lastId = last.get().id();
+        long appendMillis = (System.nanoTime() - start) / 1_000_000;
+        long firstId = first.get().id();
+
+        System.out.println("Reading " + pages + " pages of " + pageSize + " from " + name);
+        LatencyHistogram pageTime = new LatencyHistogram();
+        int[] read = {0};
+        for (int i = 0; i < pages; i++) {
+            long beforeId = ThreadLocalRandom.current().nextLong(firstId + pageSize, lastId + 2);
+            long pageStart = System.nanoTime();
+            store.streamBefore(beforeId, pageSize, FETCH_SIZE, message -> {
+                read[0] += message.content().length();
+                return true;
+            });
+            pageTime.record(System.nanoTime() - pageStart);
+        }
+        store.close();
+        System.out.println(store.summary());
+        return new Result(name, appendMillis, messages, pageTime);
+    }
+
+    private record Result(String store, long appendMillis, int messages, LatencyHistogram pageTime) {
+        double appendsPerSecond() {
+            return messages * 1000.0 / Math.max(1, appendMillis);
+        }
+    }
+}
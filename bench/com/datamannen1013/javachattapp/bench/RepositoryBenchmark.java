@@ -0,0 +1,44 @@
+package com.datamannen1013.javachattapp.bench;
+
+import com.datamannen1013.javachattapp.server.database.DatabaseManager;
+import com.datamannen1013.javachattapp.server.database.repository.MessageRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the direct MessageRepository calls against a SQLite file: saveMessage, one
+ * transaction per message including the full-text index, and getRecentMessages, the query
+ * that loads history. Saves run first, so the reads see a table that holds every saved message.
+ * The file uses the journal mode and durability set with -Dchat.db.journalMode and
+ * -Dchat.db.durability.
+ *
+ * Usage: RepositoryBenchmark [recentLimits]
+ * Defaults to reading 50 and 500 recent messages. Uses a new file in a temporary directory
+ * unless -Dchat.db.url is set. Run it in a scratch directory, the message archive is created there.
+ */
+public class RepositoryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String recentLimits = args.length > 0 ? args[0] : "50,500";
+        System.out.println("Database " + BenchmarkRunner.useTemporaryDatabase());
+        DatabaseManager databaseManager = DatabaseManager.getInstance();
+
+        List<BenchmarkRunner.Score> scores = new ArrayList<>();
+        long[] saved = {0};
+        scores.add(BenchmarkRunner.run("saveMessage", "-", () -> {
+            long count = saved[0]++;
+            return MessageRepository.saveMessage("bench-" + (count & 15),
+                    "bench message " + count + " with some ordinary chat text") ? 1 : 0;
+        }));
+        for (String value : recentLimits.split(",")) {
+            int limit = Integer.parseInt(value.trim());
+            scores.add(BenchmarkRunner.run("getRecentMessages", value.trim(),
+                    () -> MessageRepository.getRecentMessages(limit).size()));
+        }
+        databaseManager.shutdown();
+
+        BenchmarkRunner.print(scores);
+        System.out.println(saved[0] + " messages saved");
+    }
+}
@@ -0,0 +1,44 @@
+package com.datamannen1013.javachattapp.bench;
+
+import com.datamannen1013.javachattapp.server.ServerMessageHandler;
+import com.datamannen1013.javachattapp.server.constants.ServerConstants;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures ServerMessageHandler.isSystemMessage, which classifies every line that is
+ * broadcast and is checked again by the duplicate filter. Each kind of line is measured on
+ * its own, since the checks stop at the first match, and "mixed" cycles through all of them.
+ *
+ * Usage: SystemMessageBenchmark
+ */
+public class SystemMessageBenchmark {
+    private static final int VARIANTS = 4;
+
+    public static void main(String[] args) throws Exception {
+        // Several lines of each kind, so no call sees the same input as the one before
+        String[][] lines = new String[5][VARIANTS];
+        String[] kinds = {"chat", "longChat", "onlineUsers", "historyEnd", "leave"};
+        for (int i = 0; i < VARIANTS; i++) {
+            lines[0][i] = "[12:00:0" + i + "] bench: an ordinary chat message that is not a system message";
+            lines[1][i] = "[12:00:0" + i + "] bench: " + "a long chat message ".repeat(25);
+            lines[2][i] = ServerConstants.ONLINE_USERS_MESSAGE_PREFIX + "alice,bob,carol,user" + i;
+            lines[3][i] = new String(ServerConstants.CHAT_HISTORY_END); // A copy, equals would stop at the identity check
+            lines[4][i] = ServerConstants.CLIENT_DISCONNECT_PREFIX + "user" + i;
+        }
+
+        List<BenchmarkRunner.Score> scores = new ArrayList<>();
+        int[] next = {0};
+        for (int kind = 0; kind < kinds.length; kind++) {
+            String[] variants = lines[kind];
+            scores.add(BenchmarkRunner.run("isSystemMessage", kinds[kind],
+                    () -> ServerMessageHandler.isSystemMessage(variants[next[0]++ & (VARIANTS - 1)]) ? 1 : 0));
+        }
+        scores.add(BenchmarkRunner.run("isSystemMessage", "mixed", () -> {
+            int call = next[0]++;
+            return ServerMessageHandler.isSystemMessage(lines[call % kinds.length][call & (VARIANTS - 1)]) ? 1 : 0;
+        }));
+        BenchmarkRunner.print(scores);
+    }
+}
@@ -0,0 +1,105 @@
+package com.datamannen1013.javachattapp.loadtest;
+
+import com.datamannen1013.javachattapp.server.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+
+/**
+ * Writes the results of a load test.
+ * The interval log gets one CSV line per interval with users, throughput and delivery
+ * latency percentiles, in HdrHistogram's log style of commented headers. A percentile
+ * distribution is written at the end in HdrHistogram's .hgrm text format, which its
+ * plotting tools read. Latencies are written in milliseconds.
+ */
+final class LatencyLog implements AutoCloseable {
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+    // As HdrHistogram's default, five percentile steps for every halving of the distance to 100%
+    private static final int TICKS_PER_HALF_DISTANCE = 5;
+
+    private final PrintWriter intervals;
+    private final long startNanos;
+
+    LatencyLog(Path intervalLog) throws IOException {
+        this.intervals = new PrintWriter(Files.newBufferedWriter(intervalLog, StandardCharsets.UTF_8));
+        this.startNanos = System.nanoTime();
+        Instant start = Instant.now();
+        intervals.printf("#[Load test interval log, delivery latencies in milliseconds]%n");
+        intervals.printf("#[StartTime: %.3f (seconds since epoch), %s]%n", start.toEpochMilli() / 1000.0, start);
+        intervals.println("\"Seconds\",\"Users\",\"Joined\",\"Sent/s\",\"Delivered/s\",\"p50\",\"p99\",\"p99.9\",\"Max\"");
+        intervals.flush();
+    }
+
+    /**
+     * Logs one interval and prints it.
+     * @param interval Delivery latencies of the interval, reset afterwards
+     */
+    synchronized void logInterval(int users, long joined, double sentPerSecond, double deliveredPerSecond,
+                                  LatencyHistogram interval) {
+        String line = String.format("%.3f,%d,%d,%.1f,%.1f,%.3f,%.3f,%.3f,%.3f",
+                (System.nanoTime() - startNanos) / 1e9, users, joined, sentPerSecond, deliveredPerSecond,
+                millis(interval.getValueAtPercentile(50)), millis(interval.getValueAtPercentile(99)),
+                millis(interval.getValueAtPercentile(99.9)), millis(interval.getMax()));
+        interval.reset();
+        intervals.println(line);
+        intervals.flush();
+        System.out.println(line);
+    }
+
+    /**
+     * Notes a scenario step in the interval log, so changes in the numbers can be matched to it.
+     */
+    synchronized void logStep(String step) {
+        intervals.printf("#[%.3f: %s]%n", (System.nanoTime() - startNanos) / 1e9, step);
+        intervals.flush();
+        System.out.println("# " + step);
+    }
+
+    /**
+     * Writes the percentile distribution of a histogram in .hgrm format.
+     * @param histogram Latencies in nanoseconds
+     * @param file File to write
+     * @throws IOException If the file cannot be written
+     */
+    static void writeDistribution(LatencyHistogram histogram, Path file) throws IOException {
+        long count = histogram.getCount();
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.printf("%12s %14s %10s %14s%n%n", "Value", "Percentile", "TotalCount", "1/(1-Percentile)");
+            if (count > 0) {
+                for (int level = 0; ; level++) {
+                    double from = 100.0 - 100.0 / (1L << level);
+                    double to = 100.0 - 100.0 / (1L << (level + 1));
+                    if (level > 62 || 100.0 / (100.0 - from) > count) {
+                        break;
+                    }
+                    for (int tick = 0; tick < TICKS_PER_HALF_DISTANCE; tick++) {
+                        writeRow(out, histogram, from + (to - from) * tick / TICKS_PER_HALF_DISTANCE, count);
+                    }
+                }
+                out.printf("%12.3f %1.12f %10d%n", millis(histogram.getMax()), 1.0, count);
+            }
+            out.printf("#[Mean    = %12.3f, StdDeviation   = %12s]%n", histogram.getMean() / NANOS_PER_MILLI, "n/a");
+            out.printf("#[Max     = %12.3f, Total count    = %12d]%n", millis(histogram.getMax()), count);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        intervals.close();
+    }
+
+    // Private methods
+    private static void writeRow(PrintWriter out, LatencyHistogram histogram, double percentile, long count) {
+        long totalCount = (long) Math.ceil(count * percentile / 100.0);
+        out.printf("%12.3f %1.12f %10d %14.2f%n", millis(histogram.getValueAtPercentile(percentile)),
+                percentile / 100.0, Math.max(1, totalCount), 100.0 / (100.0 - percentile));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+}
@@ -0,0 +1,208 @@
+package com.datamannen1013.javachattapp.loadtest;
+
+import com.datamannen1013.javachattapp.server.metrics.LatencyHistogram;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Headless load generator for a running chat server.
+ * Simulated users join with the same "/join" protocol as ChatClient and send chat lines at a
+ * total rate the scenario sets, each from a random joined user. Every delivery to every user is
+ * timed from when its line was due to be sent, so a sender held up by the server shows up as
+ * latency instead of hiding it. Each interval is logged with throughput and delivery p50, p99,
+ * p99.9 and max, and the full distributions are written at the end, see LatencyLog.
+ * Scenarios script joins, connect storms, load changes and mass disconnects, see LoadScenario;
+ * without a file a built-in scenario runs.
+ *
+ * Usage: LoadGenerator [scenarioFile]
+ * -Dload.host (default 127.0.0.1) and -Dload.port (default 5000) give the server.
+ * -Dload.messageBytes (default 100) is the size of the text of each chat message.
+ * -Dload.readers (default half the processors) is the number of reader threads.
+ * -Dload.intervalMs (default 1000) is the reporting interval.
+ * -Dload.output (default "load") is the prefix of the result files: .log for the intervals, and
+ * -delivery.hgrm and -join.hgrm for the distributions. Thousands of users need a raised
+ * open file limit (ulimit -n 65536).
+ */
+public class LoadGenerator {
+    private static final String HOST = System.getProperty("load.host", "127.0.0.1");
+    private static final int PORT = Integer.getInteger("load.port", 5000);
+    private static final int MESSAGE_BYTES = Integer.getInteger("load.messageBytes", 100);
+    private static final int READERS = Integer.getInteger("load.readers",
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private static final long INTERVAL_MS = Long.getLong("load.intervalMs", 1_000);
+    private static final String OUTPUT = System.getProperty("load.output", "load");
+    // How long a connect step waits for the server to welcome every new user
+    private static final long JOIN_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(60);
+    // Time for deliveries still in flight once the scenario has ended
+    private static final long DRAIN_MS = 2_000;
+
+    public static void main(String[] args) throws Exception {
+        LoadScenario scenario = LoadScenario.parse(args.length > 0 ?
+                Files.readAllLines(Path.of(args[0])) : LoadScenario.DEFAULT);
+        SimulatedUsers users = new SimulatedUsers(new InetSocketAddress(HOST, PORT), READERS);
+        Sender sender = new Sender(users);
+        long start = System.nanoTime();
+        try (LatencyLog log = new LatencyLog(Path.of(OUTPUT + ".log"))) {
+            Thread reporter = startReporter(users, log);
+            for (LoadScenario.Step step : scenario.steps()) {
+                log.logStep(step.toString());
+                run(step, users, sender, log);
+            }
+            sender.stop();
+            Thread.sleep(DRAIN_MS);
+            reporter.interrupt();
+            reporter.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        users.close();
+
+        LatencyLog.writeDistribution(users.deliveryLatency, Path.of(OUTPUT + "-delivery.hgrm"));
+        LatencyLog.writeDistribution(users.joinLatency, Path.of(OUTPUT + "-join.hgrm"));
+        System.out.printf("%nRan %.1f s: sent %d messages (%.0f/s), delivered %d (%.0f/s)%n",
+                seconds, users.sent.get(), users.sent.get() / seconds,
+                users.deliveries.get(), users.deliveries.get() / seconds);
+        printLatency("Delivery", users.deliveryLatency);
+        printLatency("Join", users.joinLatency);
+        System.out.printf("Connect failures %d, users dropped by the server %d%n",
+                users.connectFailures.get(), users.droppedByServer.get());
+        System.out.println("Results in " + OUTPUT + ".log, " + OUTPUT + "-delivery.hgrm and " + OUTPUT + "-join.hgrm");
+    }
+
+    private static void run(LoadScenario.Step step, SimulatedUsers users, Sender sender, LatencyLog log)
+            throws InterruptedException {
+        switch (step.command()) {
+            case CONNECT -> connect(users, (int) step.argument(0, 0), step.argument(1, 0), log);
+            case LOAD -> sender.setRate(step.argument(0, 0));
+            case PAUSE -> Thread.sleep(step.argument(0, 0));
+            case LEAVE -> log.logStep(users.remove((int) step.argument(0, 0), true) + " users left");
+            case DISCONNECT -> log.logStep(users.remove((int) step.argument(0, 0), false) + " users disconnected");
+        }
+    }
+
+    // Each connection gets a virtual thread that waits for its slot, so a storm really opens them all at once
+    private static void connect(SimulatedUsers users, int count, long overMillis, LatencyLog log)
+            throws InterruptedException {
+        long expectedJoined = users.joinedCount() + count;
+        long lostBefore = users.connectFailures.get() + users.droppedByServer.get();
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < count; i++) {
+                long slot = start + TimeUnit.MILLISECONDS.toNanos(overMillis) * i / Math.max(1, count);
+                executor.execute(() -> {
+                    LockSupport.parkNanos(slot - System.nanoTime());
+                    users.connect();
+                });
+            }
+        }
+        long connectedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        long deadline = System.currentTimeMillis() + JOIN_TIMEOUT_MS;
+        while (users.joinedCount() < expectedJoined - (users.connectFailures.get() + users.droppedByServer.get() - lostBefore)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        log.logStep(String.format("%d connections opened in %d ms, %d users joined after %d ms",
+                count, connectedMillis, users.joinedCount(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+
+    private static Thread startReporter(SimulatedUsers users, LatencyLog log) {
+        Thread reporter = new Thread(() -> {
+            long lastSent = 0;
+            long lastDelivered = 0;
+            long last = System.nanoTime();
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    Thread.sleep(INTERVAL_MS);
+                    long now = System.nanoTime();
+                    long sent = users.sent.get();
+                    long delivered = users.deliveries.get();
+                    double seconds = (now - last) / 1e9;
+                    log.logInterval(users.connectedCount(), users.joinedCount(),
+                            (sent - lastSent) / seconds, (delivered - lastDelivered) / seconds,
+                            users.intervalDeliveryLatency);
+                    lastSent = sent;
+                    lastDelivered = delivered;
+                    last = now;
+                }
+            } catch (InterruptedException e) {
+                // Scenario finished
+            }
+        }, "load-reporter");
+        reporter.setDaemon(true);
+        reporter.start();
+        return reporter;
+    }
+
+    private static void printLatency(String name, LatencyHistogram histogram) {
+        System.out.printf("%s latency ms: p50 %.3f, p99 %.3f, p99.9 %.3f, max %.3f (%d samples)%n", name,
+                histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(99) / 1e6,
+                histogram.getValueAtPercentile(99.9) / 1e6, histogram.getMax() / 1e6, histogram.getCount());
+    }
+
+    /**
+     * Sends at the rate the scenario set, on a fixed schedule. Each line carries the time it
+     * was due, so falling behind the schedule counts against latency.
+     */
+    private static final class Sender implements Runnable {
+        private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("'['HH:mm:ss']'");
+        // Roughly what the marker and stamp take, the padding makes up the rest
+        private static final int STAMP_BYTES = SimulatedUsers.MARKER.length() + 20;
+
+        private final SimulatedUsers users;
+        private final String padding = "x".repeat(Math.max(1, MESSAGE_BYTES - STAMP_BYTES));
+        private final Thread thread;
+        private volatile long intervalNanos = 0;
+        private volatile boolean running = true;
+
+        Sender(SimulatedUsers users) {
+            this.users = users;
+            this.thread = new Thread(this, "load-sender");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void setRate(long messagesPerSecond) {
+            intervalNanos = messagesPerSecond == 0 ? 0 : Math.max(1, 1_000_000_000L / messagesPerSecond);
+            LockSupport.unpark(thread);
+        }
+
+        void stop() throws InterruptedException {
+            running = false;
+            LockSupport.unpark(thread);
+            thread.join();
+        }
+
+        @Override
+        public void run() {
+            long scheduledInterval = 0;
+            long next = 0;
+            while (running) {
+                long interval = intervalNanos;
+                long now = System.nanoTime();
+                if (interval == 0) {
+                    scheduledInterval = 0;
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+                    continue;
+                }
+                if (interval != scheduledInterval) {
+                    scheduledInterval = interval;
+                    next = now;
+                }
+                if (now < next) {
+                    LockSupport.parkNanos(next - now);
+                    continue;
+                }
+                users.sendFromRandomUser(next, padding, LocalTime.now().format(TIMESTAMP));
+                next += interval;
+            }
+        }
+    }
+}
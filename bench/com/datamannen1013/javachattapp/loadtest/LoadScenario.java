@@ -0,0 +1,104 @@
+package com.datamannen1013.javachattapp.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A load test script, one step per line, run in order. '#' starts a comment.
+ * <pre>
+ * connect &lt;users&gt; [overMs]   join users, spread evenly over overMs; 0 or left out is a connect storm
+ * load &lt;messagesPerSecond&gt;   send at this total rate from random joined users until changed, 0 stops
+ * pause &lt;ms&gt;                 wait while the current load runs
+ * leave &lt;users&gt;              users send the leave line and close, like the chat window's Exit button
+ * disconnect &lt;users&gt;         users drop their connection without a word
+ * </pre>
+ */
+record LoadScenario(List<LoadScenario.Step> steps) {
+
+    static final List<String> DEFAULT = List.of(
+            "connect 1000 5000",
+            "load 200",
+            "pause 20000",
+            "connect 1000",
+            "pause 10000",
+            "disconnect 1000",
+            "pause 10000",
+            "load 0",
+            "leave 500");
+
+    enum Command {
+        CONNECT(1, 2),
+        LOAD(1, 1),
+        PAUSE(1, 1),
+        LEAVE(1, 1),
+        DISCONNECT(1, 1);
+
+        private final int minArguments;
+        private final int maxArguments;
+
+        Command(int minArguments, int maxArguments) {
+            this.minArguments = minArguments;
+            this.maxArguments = maxArguments;
+        }
+    }
+
+    record Step(Command command, long[] arguments) {
+        long argument(int index, long fallback) {
+            return index < arguments.length ? arguments[index] : fallback;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(command.name().toLowerCase());
+            for (long argument : arguments) {
+                text.append(' ').append(argument);
+            }
+            return text.toString();
+        }
+    }
+
+    /**
+     * @param lines The script
+     * @return The parsed scenario
+     * @throws IllegalArgumentException If a line is not a valid step, naming the line
+     */
+    static LoadScenario parse(List<String> lines) {
+        List<Step> steps = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            int comment = line.indexOf('#');
+            String[] words = (comment < 0 ? line : line.substring(0, comment)).trim().split("\\s+");
+            if (words[0].isEmpty()) {
+                continue;
+            }
+            try {
+                steps.add(parseStep(words));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + (i + 1) + ": " + e.getMessage() + ": " + line.trim(), e);
+            }
+        }
+        return new LoadScenario(steps);
+    }
+
+    // Private methods
+    private static Step parseStep(String[] words) {
+        Command command;
+        try {
+            command = Command.valueOf(words[0].toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown command", e);
+        }
+        int count = words.length - 1;
+        if (count < command.minArguments || count > command.maxArguments) {
+            throw new IllegalArgumentException("wrong number of arguments");
+        }
+        long[] arguments = new long[count];
+        for (int i = 0; i < count; i++) {
+            arguments[i] = Long.parseLong(words[i + 1]);
+            if (arguments[i] < 0) {
+                throw new IllegalArgumentException("negative argument");
+            }
+        }
+        return new Step(command, arguments);
+    }
+}
@@ -0,0 +1,321 @@
+package com.datamannen1013.javachattapp.loadtest;
+
+import com.datamannen1013.javachattapp.server.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The simulated users of a load test, each a plain socket speaking the text protocol.
+ * Users join with "/join name" like ChatClient. A few selector threads read every
+ * connection, so thousands of users cost a handful of threads. A chat line sent by the load
+ * generator carries the time it was meant to be sent, and each delivery records the time since
+ * then. Join latency is from opening the connection until the server's welcome line.
+ */
+final class SimulatedUsers {
+    // Chat lines written by the load generator are "name: lg <intendedNanos> padding"
+    static final String MARKER = "lg ";
+    private static final byte[] MARKER_BYTES = (": " + MARKER).getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] WELCOME_BYTES = "Welcome ".getBytes(StandardCharsets.US_ASCII);
+    private static final String LEAVE_SUFFIX = " has left the chat.";
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+
+    private final InetSocketAddress address;
+    private final Reader[] readers;
+    private final List<User> users = new CopyOnWriteArrayList<>();
+    private final AtomicLong nextUser = new AtomicLong();
+
+    // Results, histograms hold nanoseconds
+    final LatencyHistogram deliveryLatency = new LatencyHistogram();
+    final LatencyHistogram intervalDeliveryLatency = new LatencyHistogram();
+    final LatencyHistogram joinLatency = new LatencyHistogram();
+    final AtomicLong deliveries = new AtomicLong();
+    final AtomicLong sent = new AtomicLong();
+    final AtomicLong connectFailures = new AtomicLong();
+    final AtomicLong droppedByServer = new AtomicLong();
+
+    SimulatedUsers(InetSocketAddress address, int readerThreads) throws IOException {
+        this.address = address;
+        this.readers = new Reader[readerThreads];
+        for (int i = 0; i < readerThreads; i++) {
+            readers[i] = new Reader("load-reader-" + i);
+        }
+    }
+
+    /**
+     * Opens a connection and sends the join line; the user counts as joined once welcomed.
+     * Safe to call from many threads at once.
+     * @return false if the server could not be reached
+     */
+    boolean connect() {
+        long index = nextUser.getAndIncrement();
+        String name = "load-" + index;
+        long start = System.nanoTime();
+        try {
+            SocketChannel channel = SocketChannel.open(address);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            User user = new User(name, channel, start);
+            user.write("/join " + name);
+            channel.configureBlocking(false);
+            users.add(user);
+            readers[(int) (index % readers.length)].register(user);
+            return true;
+        } catch (IOException e) {
+            connectFailures.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Sends one chat line from a random joined user, stamped with when it was meant to go out.
+     * @param intendedNanos System.nanoTime the send was scheduled for
+     * @param padding Filler that brings the message up to its configured size
+     * @param timestamp The "[HH:mm:ss]" part of the line
+     * @return false if no user is joined
+     */
+    boolean sendFromRandomUser(long intendedNanos, String padding, String timestamp) {
+        int size = users.size();
+        for (int attempt = 0; attempt < 8 && size > 0; attempt++) {
+            User user = users.get(ThreadLocalRandom.current().nextInt(size));
+            if (user.joined && !user.closed) {
+                if (user.write(timestamp + " " + user.name + ": " + MARKER + intendedNanos + " " + padding)) {
+                    sent.incrementAndGet();
+                }
+                return true;
+            }
+            size = users.size();
+        }
+        return false;
+    }
+
+    /**
+     * Takes users out of the test, the ones that joined first go first.
+     * @param count Number of users
+     * @param graceful true to send the leave line before closing, like the chat window does
+     * @return Number of users removed
+     */
+    int remove(int count, boolean graceful) {
+        List<User> removed = new ArrayList<>(users.subList(0, Math.min(count, users.size())));
+        users.removeAll(new HashSet<>(removed));
+        for (User user : removed) {
+            if (graceful) {
+                user.write(user.name + LEAVE_SUFFIX);
+            }
+            user.close();
+        }
+        return removed.size();
+    }
+
+    int connectedCount() {
+        return users.size();
+    }
+
+    long joinedCount() {
+        return users.stream().filter(user -> user.joined).count();
+    }
+
+    void close() {
+        remove(users.size(), false);
+        for (Reader reader : readers) {
+            reader.stop();
+        }
+    }
+
+    // Private methods
+    private void onLine(User user, byte[] line, int offset, int end) {
+        if (!user.joined) {
+            if (startsWith(line, offset, end, WELCOME_BYTES)) {
+                user.joined = true;
+                joinLatency.record(System.nanoTime() - user.connectNanos);
+            }
+            return;
+        }
+        int marker = indexOf(line, offset, end, MARKER_BYTES);
+        if (marker < 0) {
+            return;
+        }
+        long stamp = 0;
+        for (int i = marker + MARKER_BYTES.length; i < end && line[i] >= '0' && line[i] <= '9'; i++) {
+            stamp = stamp * 10 + (line[i] - '0');
+        }
+        long latency = System.nanoTime() - stamp;
+        deliveryLatency.record(latency);
+        intervalDeliveryLatency.record(latency);
+        deliveries.incrementAndGet();
+    }
+
+    private static boolean startsWith(byte[] line, int offset, int end, byte[] prefix) {
+        return end - offset >= prefix.length && Arrays.equals(line, offset, offset + prefix.length, prefix, 0, prefix.length);
+    }
+
+    private static int indexOf(byte[] line, int offset, int end, byte[] pattern) {
+        outer:
+        for (int i = offset; i <= end - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (line[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private final class User {
+        private final String name;
+        private final SocketChannel channel;
+        private final long connectNanos;
+        // Start of a line split across reads, only touched by the user's reader thread
+        private byte[] line = new byte[256];
+        private int lineLength;
+        private volatile boolean joined;
+        private volatile boolean closed;
+
+        User(String name, SocketChannel channel, long connectNanos) {
+            this.name = name;
+            this.channel = channel;
+            this.connectNanos = connectNanos;
+        }
+
+        // Writes can come from the sender and the scenario thread, a full socket buffer is waited out
+        synchronized boolean write(String text) {
+            ByteBuffer buffer = ByteBuffer.wrap((text + "\n").getBytes(StandardCharsets.UTF_8));
+            try {
+                while (buffer.hasRemaining()) {
+                    if (channel.write(buffer) == 0) {
+                        LockSupport.parkNanos(50_000);
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        // Lines complete in the read are handled where they are, only a split line is copied
+        void onRead(byte[] bytes, int length) {
+            int start = 0;
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] != '\n') {
+                    continue;
+                }
+                if (lineLength > 0) {
+                    keep(bytes, start, i);
+                    onLine(this, line, 0, lineLength);
+                    lineLength = 0;
+                } else {
+                    onLine(this, bytes, start, i);
+                }
+                start = i + 1;
+            }
+            keep(bytes, start, length);
+        }
+
+        private void keep(byte[] bytes, int from, int to) {
+            int length = to - from;
+            if (lineLength + length > line.length) {
+                line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+            }
+            System.arraycopy(bytes, from, line, lineLength, length);
+            lineLength += length;
+        }
+
+        void close() {
+            closed = true;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing left to do with it
+            }
+        }
+    }
+
+    private final class Reader implements Runnable {
+        private final Selector selector;
+        private final Queue<User> pending = new ConcurrentLinkedQueue<>();
+        private final Thread thread;
+        private volatile boolean running = true;
+
+        Reader(String name) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void register(User user) {
+            pending.add(user);
+            selector.wakeup();
+        }
+
+        void stop() {
+            running = false;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+            try {
+                while (running) {
+                    selector.select(100);
+                    for (User user; (user = pending.poll()) != null; ) {
+                        try {
+                            user.channel.register(selector, SelectionKey.OP_READ, user);
+                        } catch (ClosedChannelException e) {
+                            // Removed before it was registered
+                        }
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        read(key, buffer);
+                    }
+                }
+                selector.close();
+            } catch (IOException e) {
+                System.err.println(thread.getName() + " stopped: " + e.getMessage());
+            }
+        }
+
+        private void read(SelectionKey key, ByteBuffer buffer) {
+            User user = (User) key.attachment();
+            int read;
+            try {
+                buffer.clear();
+                read = user.channel.read(buffer);
+            } catch (IOException e) {
+                read = -1;
+            }
+            if (read < 0) {
+                key.cancel();
+                if (!user.closed) {
+                    droppedByServer.incrementAndGet();
+                    users.remove(user);
+                    user.close();
+                }
+                return;
+            }
+            user.onRead(buffer.array(), read);
+        }
+    }
+}
@@ -1,21 +1,37 @@
 package com.datamannen1013.javachattapp.client;
 
 import com.datamannen1013.javachattapp.client.constants.ClientConstants;
+import com.datamannen1013.javachattapp.protocol.BinaryFraming;
+import com.datamannen1013.javachattapp.protocol.FrameReader;
+import com.datamannen1013.javachattapp.protocol.TraceHeader;
 
 import javax.swing.*;
 import java.io.*;
 import java.net.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 
 public class ChatClient {
 
     // Components for the ChatClient
     private Socket socket;
-    private BufferedReader in;
+    private FrameReader in;
+    private OutputStream rawOut;
     private PrintWriter out;
+    // Framing is settled by the first line from the server, sends wait until then
+    private volatile boolean binaryFraming = false;
+    private volatile CountDownLatch framingNegotiated = new CountDownLatch(1);
     private final Consumer<String> onMessageReceived;
     private volatile boolean isRunning = false;
-    private final Object lock = new Object();
+    // ReentrantLock instead of synchronized so waiting threads never pin a virtual thread carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    // Id to ask for older history with, 0 once the oldest message has been shown
+    private volatile long historyCursor = 0;
+    // Last search sent and where its next page starts, null once all results have been shown
+    private volatile String lastSearch;
+    private volatile String searchCursor;
 
     // Constructor for initializing the ChatClient
     private static final int CONNECTION_TIMEOUT = 5000; // 5 seconds timeout
@@ -25,16 +41,20 @@ public class ChatClient {
                      Consumer<String> onMessageReceived, Consumer<String> errorHandler) {
         this.onMessageReceived = onMessageReceived; // Set the message handler
         this.errorHandler = errorHandler; // Set the error handler
+        MessageTraces.getInstance().setReporter(this::sendMessage);
         try {
             // Create a socket with timeout
             this.socket = new Socket();
             socket.connect(new InetSocketAddress(serverAddress, serverPort), CONNECTION_TIMEOUT);
 
-            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            this.out = new PrintWriter(socket.getOutputStream(), true);
+            this.in = new FrameReader(socket.getInputStream(), ClientConstants.MAX_INCOMING_MESSAGE_BYTES);
+            this.rawOut = socket.getOutputStream();
+            this.out = new PrintWriter(rawOut, true);
             // Send a join message to the server with the username
 
-            out.println(ClientConstants.JOIN_MESSAGE_PREFIX + userName);
+            String traceOption = ClientConstants.TRACE_MESSAGES ? TraceHeader.JOIN_OPTION : "";
+            String framingOption = ClientConstants.USE_BINARY_FRAMING ? BinaryFraming.JOIN_OPTION : "";
+            out.println(ClientConstants.JOIN_MESSAGE_PREFIX + userName + traceOption + framingOption);
         } catch (SocketTimeoutException e) {
             handleError(new IOException(ClientConstants.SERVER_TIMEOUT_MESSAGE, e));
             // Handle connection failures
@@ -47,7 +67,7 @@ public class ChatClient {
 
     // Method to send a message to the server
     public boolean sendMessage(String msg) {
-        MessageSenderWorker worker = new MessageSenderWorker(msg);
+        MessageSenderWorker worker = new MessageSenderWorker(MessageTraces.getInstance().stamp(msg));
         worker.execute();
         try {
             return worker.get();
@@ -65,16 +85,16 @@ public class ChatClient {
         }
 
         @Override
-        @SuppressWarnings({"SynchronizeOnNonFinalField"}) // Suppressing warning as socket synchronization is intended behavior
         protected Boolean doInBackground() throws Exception {
-            synchronized (socket) {
+            framingNegotiated.await(CONNECTION_TIMEOUT, TimeUnit.MILLISECONDS);
+            lock.lock();
+            try {
                 if (socket != null && !socket.isClosed() && out != null) {
-                    out.println(message);
-                    if (out.checkError()) {
-                        throw new IOException(ClientConstants.MESSAGE_SEND_ERROR_MESSAGE);
-                    }
+                    writeMessage(message);
                     return true;
                 }
+            } finally {
+                lock.unlock();
             }
             return false;
         }
@@ -93,21 +113,30 @@ public class ChatClient {
         Thread listenerThread = new Thread(() -> {
             String line;
             try {
-                while (isRunning && (line = in.readLine()) != null) {
-                    synchronized (this) {
-                        if (!isValidMessage(line)) {
-                            SwingUtilities.invokeLater(() -> 
-                                errorHandler.accept(ClientConstants.INVALID_SERVER_RESPONSE_MESSAGE));
-                            continue;
-                        }
-                        final String message = line;
-                        SwingUtilities.invokeLater(() -> onMessageReceived.accept(message));
+                line = negotiateFraming();
+                for (; isRunning && line != null; line = readMessage()) {
+                    if (!isValidMessage(line)) {
+                        SwingUtilities.invokeLater(() ->
+                            errorHandler.accept(ClientConstants.INVALID_SERVER_RESPONSE_MESSAGE));
+                        continue;
+                    }
+                    if (line.startsWith(TraceHeader.DELIVERY_PREFIX)) {
+                        line = MessageTraces.getInstance().received(line);
                     }
+                    if (line.startsWith(ClientConstants.HISTORY_PAGE_PREFIX)) {
+                        updateHistoryCursor(line);
+                        continue;
+                    }
+                    if (line.startsWith(ClientConstants.SEARCH_PAGE_PREFIX)) {
+                        String cursor = line.substring(ClientConstants.SEARCH_PAGE_PREFIX.length()).trim();
+                        searchCursor = cursor.equals("0") ? null : cursor;
+                        continue;
+                    }
+                    final String message = line;
+                    SwingUtilities.invokeLater(() -> onMessageReceived.accept(message));
                 }
             } catch (IOException e) {
-                synchronized (this) {
-                    closeResources();
-                }
+                closeResources();
                 handleError(e);
             } finally {
                 // Ensure resources are closed when done
@@ -118,6 +147,74 @@ public class ChatClient {
         listenerThread.start();
     }
 
+    /**
+     * Asks the server for the page of history before the oldest message shown so far.
+     * @return false if there is no older history or the request could not be sent
+     */
+    public boolean requestOlderHistory() {
+        long cursor = historyCursor;
+        return cursor > 0 && sendMessage(ClientConstants.HISTORY_BEFORE_REQUEST_PREFIX + cursor
+                + " " + ClientConstants.HISTORY_PAGE_SIZE);
+    }
+
+    /**
+     * Sends a full-text search, see the server's MessageSearch for the syntax.
+     * @param terms What the user typed after "/search "
+     */
+    public boolean search(String terms) {
+        lastSearch = terms;
+        searchCursor = null;
+        return sendMessage(ClientConstants.SEARCH_REQUEST_PREFIX + terms);
+    }
+
+    /**
+     * Asks for the next page of the last search.
+     * @return false if there are no more results or the request could not be sent
+     */
+    public boolean searchMore() {
+        String cursor = searchCursor;
+        return cursor != null && lastSearch != null
+                && sendMessage(ClientConstants.SEARCH_REQUEST_PREFIX + "page:" + cursor + " " + lastSearch);
+    }
+
+    private void updateHistoryCursor(String line) {
+        try {
+            historyCursor = Long.parseLong(line.substring(ClientConstants.HISTORY_PAGE_PREFIX.length()).trim());
+        } catch (NumberFormatException e) {
+            historyCursor = 0;
+        }
+    }
+
+    // The first line is the framing acknowledgement if the server accepted binary frames
+    private String negotiateFraming() throws IOException {
+        try {
+            String first = in.readLine();
+            if (ClientConstants.USE_BINARY_FRAMING && BinaryFraming.ACKNOWLEDGEMENT.equals(first)) {
+                binaryFraming = true;
+                return readMessage();
+            }
+            return first;
+        } finally {
+            framingNegotiated.countDown();
+        }
+    }
+
+    private String readMessage() throws IOException {
+        return binaryFraming ? in.readFrame() : in.readLine();
+    }
+
+    // Callers hold the lock
+    private void writeMessage(String message) throws IOException {
+        if (binaryFraming) {
+            BinaryFraming.write(rawOut, message);
+        } else {
+            out.println(message);
+            if (out.checkError()) {
+                throw new IOException(ClientConstants.MESSAGE_SEND_ERROR_MESSAGE);
+            }
+        }
+    }
+
     private boolean isValidMessage(String message) {
         return message != null && !message.trim().isEmpty();
         // Add more message validation logic here
@@ -135,8 +232,11 @@ public class ChatClient {
                 
                 socket = new Socket();
                 socket.connect(new InetSocketAddress(ClientConstants.SERVER_ADDRESS, ClientConstants.SERVER_PORT), CONNECTION_TIMEOUT);
-                in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                out = new PrintWriter(socket.getOutputStream(), true);
+                in = new FrameReader(socket.getInputStream(), ClientConstants.MAX_INCOMING_MESSAGE_BYTES);
+                rawOut = socket.getOutputStream();
+                out = new PrintWriter(rawOut, true);
+                binaryFraming = false;
+                framingNegotiated = new CountDownLatch(1);
                 
                 startClient();
                 break;
@@ -177,25 +277,26 @@ public class ChatClient {
 
     // Method to close resources used for communication
     private void closeResources() {
-        synchronized (lock) {
+        lock.lock();
+        try {
             if (!isRunning) return; // Already closed
             isRunning = false;
-            
+
             try {
                 // Send disconnect message if possible
                 if (out != null && !socket.isClosed()) {
-                    out.println("DISCONNECT");
-                    out.flush();
+                    writeMessage("DISCONNECT");
                 }
                 
                 // Close resources
-                if (in != null) in.close();
                 if (out != null) out.close();
                 if (socket != null) socket.close();
             } catch (IOException e) {
                 System.err.println("Error during resource cleanup: " + e.getMessage());
                 e.printStackTrace();
             }
+        } finally {
+            lock.unlock();
         }
     }
 }
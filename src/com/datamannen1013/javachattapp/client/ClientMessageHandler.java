@@ -51,11 +51,10 @@ public class ClientMessageHandler extends Component {
     }
 
     public void handleMessage(String message) throws BadLocationException {
-        // Prevent duplicate processing
-        if (processedMessages.contains(message)) {
+        // Prevent duplicate processing, search results are answers to a request and may repeat
+        if (!message.startsWith(ClientConstants.SEARCH_RESULT_PREFIX) && !processedMessages.add(message)) {
             return;
         }
-        processedMessages.add(message);
 
         // Handle welcome messages and is now online messages and Start/End history markers
         if (message.startsWith(ClientConstants.WELCOME_MESSAGE_PREFIX) && message.contains(currentUserName) ||
@@ -113,13 +112,17 @@ public class ClientMessageHandler extends Component {
                 message.equals(ClientConstants.SERVER_SHUTDOWN_MESSAGE) ||
                 message.startsWith(ClientConstants.WELCOME_MESSAGE_PREFIX)||
                 message.contains(ClientConstants.NEW_USER_SUFFIX) ||
-                message.startsWith(ClientConstants.SERVER_HISTORY_MESSAGE_PREFIX);
+                message.startsWith(ClientConstants.SERVER_HISTORY_MESSAGE_PREFIX) ||
+                message.startsWith(ClientConstants.SEARCH_RESULT_PREFIX);
     }
 
     private void displaySystemMessage(String message) throws BadLocationException {
         if (message.startsWith(ClientConstants.SERVER_HISTORY_MESSAGE_PREFIX)){
             message = message.substring(9);
         }
+        else if (message.startsWith(ClientConstants.SEARCH_RESULT_PREFIX)) {
+            message = "Search: " + message.substring(ClientConstants.SEARCH_RESULT_PREFIX.length());
+        }
         StyledDocument doc = messageArea.getStyledDocument();
         Style systemStyle = messageArea.addStyle("System Style", null);
         StyleConstants.setForeground(systemStyle, ClientConstants.SYSTEM_MESSAGE_COLOR);
@@ -212,6 +215,7 @@ public class ClientMessageHandler extends Component {
 
                     // Auto-scroll to bottom
                     messageArea.setCaretPosition(doc.getLength());
+                    MessageTraces.getInstance().rendered(message);
 
 
                     publish(formatMessage(timestamp, username, userMessage));
@@ -0,0 +1,114 @@
+package com.datamannen1013.javachattapp.client;
+
+import com.datamannen1013.javachattapp.client.constants.ClientConstants;
+import com.datamannen1013.javachattapp.protocol.TraceHeader;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Measures latency from send to render, turned on with -Dchat.client.trace=true.
+ * Chat lines this client sends get a send stamp. Traced lines from the server are kept until
+ * they are rendered, then their spans are added to a window of samples. Each full window is
+ * sent to the server as percentiles and started over.
+ */
+public class MessageTraces {
+    private static final String[] SPANS = {"toServer", "inServer", "toRender", "endToEnd"};
+    // Lines that are never rendered, duplicates and system lines, must not pile up
+    private static final int MAX_PENDING = 256;
+    private static final MessageTraces INSTANCE = new MessageTraces();
+
+    private final boolean enabled = ClientConstants.TRACE_MESSAGES;
+    private final int reportEvery = Math.max(1, ClientConstants.TRACE_REPORT_EVERY);
+    private final Map<String, TraceHeader> pending = new ConcurrentHashMap<>();
+    private final long[][] samples = new long[SPANS.length][reportEvery];
+    private int sampleCount = 0;
+    private volatile Consumer<String> reporter = report -> {};
+
+    private MessageTraces() {
+    }
+
+    public static MessageTraces getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param reporter Sends a report line to the server
+     */
+    public void setReporter(Consumer<String> reporter) {
+        this.reporter = reporter;
+    }
+
+    /**
+     * Stamps a line about to be sent, commands are left as they are.
+     * @param message The line to send
+     * @return The line to write to the server
+     */
+    public String stamp(String message) {
+        return enabled && !message.startsWith("/") ? TraceHeader.stampSend(message) : message;
+    }
+
+    /**
+     * Strips the trace header from a line delivered by the server and keeps it until the line is rendered.
+     * @param line A line starting with TraceHeader.DELIVERY_PREFIX
+     * @return The line without its header
+     */
+    public String received(String line) {
+        TraceHeader trace = TraceHeader.parseDelivery(line);
+        if (trace == null) {
+            return line;
+        }
+        if (enabled) {
+            if (pending.size() >= MAX_PENDING) {
+                pending.clear();
+            }
+            pending.put(trace.line(), trace);
+        }
+        return trace.line();
+    }
+
+    /**
+     * Records the spans of a line once it is shown, if it came with a trace header.
+     * @param message The line that was rendered
+     */
+    public void rendered(String message) {
+        TraceHeader trace = pending.remove(message);
+        if (trace == null) {
+            return;
+        }
+        String report = record(trace, TraceHeader.nowMicros());
+        if (report != null) {
+            reporter.accept(report);
+        }
+    }
+
+    // Private methods
+    // Returns the report line when the window is full, null otherwise
+    private synchronized String record(TraceHeader trace, long renderedMicros) {
+        samples[0][sampleCount] = trace.serverReceive() - trace.clientSend();
+        samples[1][sampleCount] = trace.serverDispatch() - trace.serverReceive();
+        samples[2][sampleCount] = renderedMicros - trace.serverDispatch();
+        samples[3][sampleCount] = renderedMicros - trace.clientSend();
+        if (++sampleCount < reportEvery) {
+            return null;
+        }
+        StringBuilder report = new StringBuilder(TraceHeader.REPORT_PREFIX).append("samples=").append(sampleCount);
+        for (int span = 0; span < SPANS.length; span++) {
+            long[] values = samples[span];
+            Arrays.sort(values);
+            report.append(' ').append(SPANS[span]).append('=')
+                    .append(percentile(values, 0.5)).append('/')
+                    .append(percentile(values, 0.99)).append('/')
+                    .append(percentile(values, 0.999));
+        }
+        sampleCount = 0;
+        return report.toString();
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.clamp(index, 0, sorted.length - 1)];
+    }
+}
@@ -13,6 +13,15 @@ public class ClientConstants {
     public static final String SERVER_ADDRESS = "127.0.0.1";
     public static final int SERVER_PORT = 5000;
 
+    // Binary framing is asked for in the join handshake, -Dchat.client.binary=false keeps the text protocol
+    public static final boolean USE_BINARY_FRAMING = Boolean.parseBoolean(System.getProperty("chat.client.binary", "true"));
+    public static final int MAX_INCOMING_MESSAGE_BYTES = 64 * 1024;
+
+    // Latency tracing, -Dchat.client.trace=true stamps sent messages and reports send to render
+    // percentiles to the server after every chat.client.traceReportEvery traced messages shown
+    public static final boolean TRACE_MESSAGES = Boolean.getBoolean("chat.client.trace");
+    public static final int TRACE_REPORT_EVERY = Integer.getInteger("chat.client.traceReportEvery", 100);
+
     // Command prefixes for handling specific message types
     @SuppressWarnings("SpellCheckingInspection") //Correct spelling in this spesific case
     public static final String ONLINE_USERS_MESSAGE_PREFIX = "/onlineusers ";
@@ -24,6 +33,18 @@ public class ClientConstants {
     @SuppressWarnings("SpellCheckingInspection") //Correct spelling in this spesific case
     public static final String SERVER_SHUTDOWN_MESSAGE = "/serverclose";
     public static final String SERVER_HISTORY_MESSAGE_PREFIX = "/history ";
+    // Scroll-back, the server tells where older history starts and the client asks for a page from there
+    public static final String HISTORY_PAGE_PREFIX = "/historypage ";
+    public static final String HISTORY_BEFORE_REQUEST_PREFIX = "/historybefore ";
+    public static final String OLDER_HISTORY_COMMAND = "/older";
+    public static final int HISTORY_PAGE_SIZE = 50;
+    public static final String NO_OLDER_HISTORY_MESSAGE = "There are no older messages.";
+    // Search, "/search terms" asks the server, "/more" gets the next page of the last search
+    public static final String SEARCH_REQUEST_PREFIX = "/search ";
+    public static final String SEARCH_RESULT_PREFIX = "/searchresult ";
+    public static final String SEARCH_PAGE_PREFIX = "/searchpage ";
+    public static final String SEARCH_MORE_COMMAND = "/more";
+    public static final String NO_MORE_RESULTS_MESSAGE = "There are no more search results.";
 
     // Sizes for the GUI components
     public static final int WINDOW_WIDTH = 600;
@@ -193,6 +193,19 @@ public class ChatWindow extends JFrame {
         @Override
         @SuppressWarnings({"SynchronizeOnNonFinalField"}) // Suppressing warning as client synchronization is intended behavior
         protected Void doInBackground(){
+            if (userMessage.equals(ClientConstants.OLDER_HISTORY_COMMAND)) {
+                runCommand(client.requestOlderHistory(), ClientConstants.NO_OLDER_HISTORY_MESSAGE, "History");
+                return null;
+            }
+            if (userMessage.startsWith(ClientConstants.SEARCH_REQUEST_PREFIX)) {
+                runCommand(client.search(userMessage.substring(ClientConstants.SEARCH_REQUEST_PREFIX.length())),
+                        ClientConstants.MESSAGE_SEND_ERROR_MESSAGE, "Search");
+                return null;
+            }
+            if (userMessage.equals(ClientConstants.SEARCH_MORE_COMMAND)) {
+                runCommand(client.searchMore(), ClientConstants.NO_MORE_RESULTS_MESSAGE, "Search");
+                return null;
+            }
             if (userMessage.isEmpty()) {
                 SwingUtilities.invokeLater(() ->
                         JOptionPane.showMessageDialog(ChatWindow.this,
@@ -226,6 +239,19 @@ public class ChatWindow extends JFrame {
             return null;
         }
 
+        // Clears the input if the command was sent, otherwise tells the user why not
+        private void runCommand(boolean sent, String failureMessage, String title) {
+            if (sent) {
+                SwingUtilities.invokeLater(() -> textField.setText(""));
+            } else {
+                SwingUtilities.invokeLater(() ->
+                        JOptionPane.showMessageDialog(ChatWindow.this,
+                                failureMessage,
+                                title,
+                                JOptionPane.INFORMATION_MESSAGE));
+            }
+        }
+
         @Override
         protected void done() {
             try {
@@ -0,0 +1,50 @@
+package com.datamannen1013.javachattapp.protocol;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Length-prefixed binary frame format, an alternative to newline separated text.
+ * A frame is one type byte, the payload length as a four byte big-endian int and the
+ * UTF-8 payload. Payloads may contain newlines.
+ *
+ * A client asks for frames by ending its text join line with JOIN_OPTION. A server
+ * that supports them answers with the text line ACKNOWLEDGEMENT, after which both
+ * sides only send frames. Clients that never ask keep using the text protocol.
+ */
+public final class BinaryFraming {
+    // Usernames cannot contain '/', so the option never clashes with a name
+    public static final String JOIN_OPTION = " /binary";
+    public static final String ACKNOWLEDGEMENT = "/binary";
+    public static final int HEADER_LENGTH = 5;
+
+    private BinaryFraming() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Encodes a text protocol line as a single frame.
+     * @param line The line, without line terminator
+     * @return The encoded frame, ready to be written
+     */
+    public static byte[] encode(String line) {
+        FrameType type = FrameType.of(line);
+        byte[] payload = line.substring(type.prefixLength()).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_LENGTH + payload.length);
+        frame.put(type.code()).putInt(payload.length).put(payload);
+        return frame.array();
+    }
+
+    /**
+     * Writes a text protocol line as a single frame and flushes the stream.
+     * @param out Stream to write to
+     * @param line The line, without line terminator
+     * @throws IOException If writing fails
+     */
+    public static void write(OutputStream out, String line) throws IOException {
+        out.write(encode(line));
+        out.flush();
+    }
+}
@@ -0,0 +1,103 @@
+package com.datamannen1013.javachattapp.protocol;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Blocking reader for both wire formats on one stream.
+ * Works on bytes rather than characters, so nothing past the join line is decoded
+ * as text when a connection switches to binary frames. The read buffer is reused
+ * between messages; only the decoded String is allocated.
+ */
+public final class FrameReader {
+    private final InputStream in;
+    private final int maxLength;
+    private byte[] buffer = new byte[256];
+
+    /**
+     * @param in Stream to read from, buffered by the reader
+     * @param maxLength Longest line or frame payload accepted, in bytes
+     */
+    public FrameReader(InputStream in, int maxLength) {
+        this.in = new BufferedInputStream(in);
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Reads one newline terminated text line.
+     * @return The line without terminator, or null at the end of the stream
+     * @throws IOException If reading fails or the line is longer than the maximum
+     */
+    public String readLine() throws IOException {
+        int length = 0;
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                return length == 0 ? null : decode(length);
+            }
+            ensureCapacity(length + 1);
+            buffer[length++] = (byte) b;
+        }
+        if (length > 0 && buffer[length - 1] == '\r') {
+            length--;
+        }
+        return decode(length);
+    }
+
+    /**
+     * Reads one binary frame and rebuilds the text protocol line it stands for.
+     * @return The line, or null at the end of the stream
+     * @throws IOException If reading fails, the frame is malformed or too long
+     */
+    public String readFrame() throws IOException {
+        int code = in.read();
+        if (code < 0) {
+            return null;
+        }
+        FrameType type;
+        try {
+            type = FrameType.fromCode(code);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        int length = readInt();
+        if (length < 0) {
+            throw new IOException("Negative frame length: " + length);
+        }
+        ensureCapacity(length);
+        if (in.readNBytes(buffer, 0, length) < length) {
+            throw new EOFException("Stream ended inside a frame");
+        }
+        return type.toLine(decode(length));
+    }
+
+    // Private methods
+    private int readInt() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Stream ended inside a frame header");
+            }
+            value = (value << 8) | b;
+        }
+        return value;
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (length > maxLength) {
+            throw new IOException("Message longer than " + maxLength + " bytes");
+        }
+        if (length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.min(Math.max(length, buffer.length * 2), maxLength));
+        }
+    }
+
+    private String decode(int length) {
+        return new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+}
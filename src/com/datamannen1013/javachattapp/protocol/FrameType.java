@@ -0,0 +1,84 @@
+package com.datamannen1013.javachattapp.protocol;
+
+/**
+ * Kind of a binary frame, sent as its first byte.
+ * Each type stands for one of the text protocol's command prefixes, which is left
+ * out of the payload. Marker types match a whole line and carry an empty payload.
+ */
+public enum FrameType {
+    MESSAGE(0, "", false),
+    ONLINE_USERS(1, "/onlineusers ", false),
+    HISTORY(2, "/history ", false),
+    HISTORY_START(3, "--- Chat History ---", true),
+    HISTORY_END(4, "--- End of History ---", true),
+    LEAVE(5, "/leave ", false),
+    SERVER_SHUTDOWN(6, "/serverclose", true),
+    HISTORY_PAGE(7, "/historypage ", false),
+    SEARCH_RESULT(8, "/searchresult ", false),
+    SEARCH_PAGE(9, "/searchpage ", false);
+
+    private static final FrameType[] BY_CODE = values();
+
+    private final byte code;
+    private final String prefix;
+    private final boolean marker;
+
+    FrameType(int code, String prefix, boolean marker) {
+        this.code = (byte) code;
+        this.prefix = prefix;
+        this.marker = marker;
+    }
+
+    public byte code() {
+        return code;
+    }
+
+    /**
+     * @return Number of leading characters of a text line that the type replaces
+     */
+    public int prefixLength() {
+        return prefix.length();
+    }
+
+    /**
+     * Rebuilds the text protocol line for a decoded payload.
+     * @param payload The frame payload
+     * @return The line as the text protocol would have sent it
+     */
+    public String toLine(String payload) {
+        if (marker) {
+            return prefix;
+        }
+        return prefix.isEmpty() ? payload : prefix + payload;
+    }
+
+    /**
+     * @param line A text protocol line
+     * @return The type whose prefix the line starts with, MESSAGE if none matches
+     */
+    public static FrameType of(String line) {
+        for (int i = 1; i < BY_CODE.length; i++) {
+            FrameType type = BY_CODE[i];
+            if (type.marker ? line.equals(type.prefix) : line.startsWith(type.prefix)) {
+                return type;
+            }
+        }
+        return MESSAGE;
+    }
+
+    public static boolean isKnown(int code) {
+        return code >= 0 && code < BY_CODE.length;
+    }
+
+    /**
+     * @param code The type byte of a frame
+     * @return The matching type
+     * @throws IllegalArgumentException If no type uses the code
+     */
+    public static FrameType fromCode(int code) {
+        if (!isKnown(code)) {
+            throw new IllegalArgumentException("Unknown frame type: " + code);
+        }
+        return BY_CODE[code];
+    }
+}
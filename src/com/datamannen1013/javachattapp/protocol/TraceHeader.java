@@ -0,0 +1,89 @@
+package com.datamannen1013.javachattapp.protocol;
+
+import java.time.Instant;
+
+/**
+ * Timestamps carried in front of a chat line to measure latency from send to render.
+ * A tracing client joins with JOIN_OPTION and sends "/trace clientSend line". The server
+ * strips the header, handles the line as usual and delivers
+ * "/traced clientSend serverReceive serverDispatch line" to clients that joined with the
+ * option or sent a traced line themselves, which strip it again before showing the line.
+ * Every other client gets the plain line.
+ *
+ * Stamps are wall clock microseconds since the epoch, so spans between two machines are
+ * only as good as their clock synchronisation.
+ */
+public record TraceHeader(long clientSend, long serverReceive, long serverDispatch, String line) {
+    // Ends the join line, before BinaryFraming.JOIN_OPTION if both are used
+    public static final String JOIN_OPTION = " /trace";
+    public static final String SEND_PREFIX = "/trace ";
+    public static final String DELIVERY_PREFIX = "/traced ";
+    // "/tracereport samples=n span=p50/p99/p999 ...", percentiles of the spans a client rendered
+    public static final String REPORT_PREFIX = "/tracereport ";
+
+    /**
+     * @return The current wall clock time in microseconds since the epoch
+     */
+    public static long nowMicros() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000 + now.getNano() / 1_000;
+    }
+
+    /**
+     * Puts a send stamp in front of a line.
+     * @param line The line to send
+     * @return The line as a tracing client sends it
+     */
+    public static String stampSend(String line) {
+        return SEND_PREFIX + nowMicros() + " " + line;
+    }
+
+    /**
+     * Reads a line sent by a tracing client and stamps when the server received it.
+     * @param line A line starting with SEND_PREFIX
+     * @return The header, or null if the line is malformed
+     */
+    public static TraceHeader parseSend(String line) {
+        long[] stamps = new long[1];
+        int lineStart = parseStamps(line, SEND_PREFIX.length(), stamps);
+        return lineStart < 0 ? null : new TraceHeader(stamps[0], nowMicros(), 0, line.substring(lineStart));
+    }
+
+    /**
+     * Reads a line delivered by the server.
+     * @param line A line starting with DELIVERY_PREFIX
+     * @return The header, or null if the line is malformed
+     */
+    public static TraceHeader parseDelivery(String line) {
+        long[] stamps = new long[3];
+        int lineStart = parseStamps(line, DELIVERY_PREFIX.length(), stamps);
+        return lineStart < 0 ? null : new TraceHeader(stamps[0], stamps[1], stamps[2], line.substring(lineStart));
+    }
+
+    /**
+     * Stamps the dispatch time and formats the line for delivery to clients.
+     * @param line The line to deliver, may differ from the one received
+     * @return The line with its full header
+     */
+    public String toDelivery(String line) {
+        return DELIVERY_PREFIX + clientSend + " " + serverReceive + " " + nowMicros() + " " + line;
+    }
+
+    // Reads space separated stamps from start, returns where the line begins or -1
+    private static int parseStamps(String line, int start, long[] stamps) {
+        int position = start;
+        for (int i = 0; i < stamps.length; i++) {
+            int end = line.indexOf(' ', position);
+            if (end <= position) {
+                return -1;
+            }
+            try {
+                stamps[i] = Long.parseLong(line, position, end, 10);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+            position = end + 1;
+        }
+        return position;
+    }
+}
@@ -0,0 +1,9 @@
+package com.datamannen1013.javachattapp.protocol;
+
+/**
+ * How messages are laid out on a connection, see BinaryFraming.
+ */
+public enum WireFormat {
+    TEXT,
+    BINARY
+}
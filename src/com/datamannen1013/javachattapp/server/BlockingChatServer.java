@@ -0,0 +1,193 @@
+package com.datamannen1013.javachattapp.server;
+
+import com.datamannen1013.javachattapp.server.connection.BlockingClientConnection;
+import com.datamannen1013.javachattapp.server.connection.SocketConnection;
+import com.datamannen1013.javachattapp.server.constants.ServerConstants;
+import com.datamannen1013.javachattapp.server.jfr.HandshakeEvent;
+import com.datamannen1013.javachattapp.server.logger.ClassLogger;
+import com.datamannen1013.javachattapp.server.logger.ServerLogger;
+import com.datamannen1013.javachattapp.server.metrics.ServerMetrics;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Blocking server mode where every client gets its own thread running ClientHandler.run(),
+ * plus a writer thread draining its outbound queue.
+ * The thread factory decides whether those are platform threads or virtual threads.
+ * The accept thread only accepts; the join handshake runs on the client's own thread
+ * with a deadline, so a client that never sends its join line blocks nobody else.
+ */
+public class BlockingChatServer {
+    private static final ClassLogger LOG = ServerLogger.forClass(BlockingChatServer.class);
+    private final int port;
+    private final Set<ClientHandler> clients;
+    private final BroadcastDispatcher dispatcher;
+    private final ThreadFactory threadFactory;
+    private final ExecutorService executor;
+    private final HandshakeLimiter handshakes = new HandshakeLimiter(ServerConstants.MAX_PENDING_HANDSHAKES);
+    private ServerSocket serverSocket;
+    private volatile boolean running = true;
+    private volatile boolean accepting = true;
+
+    public BlockingChatServer(int port, Set<ClientHandler> clients, BroadcastDispatcher dispatcher,
+                              ThreadFactory threadFactory) {
+        this.port = port;
+        this.clients = clients;
+        this.dispatcher = dispatcher;
+        this.threadFactory = threadFactory;
+        this.executor = Executors.newThreadPerTaskExecutor(threadFactory);
+    }
+
+    /**
+     * One platform thread per client, the original server behaviour.
+     */
+    public static ThreadFactory platformThreads() {
+        return Thread.ofPlatform().name("client-", 0).factory();
+    }
+
+    /**
+     * One virtual thread per client. Blocking reads and writes park the virtual thread
+     * and free its carrier, so idle clients cost a few KB of heap instead of a stack.
+     */
+    public static ThreadFactory virtualThreads() {
+        return Thread.ofVirtual().name("client-", 0).factory();
+    }
+
+    /**
+     * Accepts clients until shutdown() is called.
+     * @throws IOException If the server socket cannot be opened
+     */
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port);
+        LOG.logInfo("Chat server started on port {}", port);
+
+        while (running) {
+            try {
+                Socket clientSocket = serverSocket.accept();
+                long acceptedNanos = System.nanoTime();
+                ServerMetrics.CONNECTIONS_ACCEPTED.increment();
+                if (!accepting) {
+                    LOG.logInfo("Server is draining, refusing client: {}", clientSocket);
+                    closeQuietly(clientSocket);
+                    continue;
+                }
+                if (!handshakes.tryBegin()) {
+                    LOG.logWarning("Too many pending handshakes, refusing client: {}", clientSocket);
+                    closeQuietly(clientSocket);
+                    continue;
+                }
+                LOG.logInfo("Client connected: {}", clientSocket);
+                executor.execute(() -> serveClient(clientSocket, acceptedNanos));
+            } catch (IOException e) {
+                if (!running) {
+                    break; // Server socket closed by shutdown()
+                }
+                LOG.logError("Error accepting client: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    public HandshakeLimiter getHandshakeLimiter() {
+        return handshakes;
+    }
+
+    /**
+     * Closes new connections as soon as they are accepted, clients already joined stay.
+     */
+    public void refuseNewClients() {
+        accepting = false;
+    }
+
+    public void shutdown() {
+        running = false;
+        try {
+            if (serverSocket != null) serverSocket.close();
+        } catch (IOException e) {
+            LOG.logError("Error closing server socket: " + e.getMessage(), e);
+        }
+        executor.shutdown();
+    }
+
+    // Private methods - runs on the client's own thread
+    private void serveClient(Socket clientSocket, long acceptedNanos) {
+        ClientHandler clientHandler = completeHandshake(clientSocket, acceptedNanos);
+        if (clientHandler != null) {
+            clientHandler.run();
+        }
+    }
+
+    private ClientHandler completeHandshake(Socket clientSocket, long acceptedNanos) {
+        BlockingClientConnection connection = null;
+        ClientHandler clientHandler = null;
+        // Begun before the join read, so the event spans what HANDSHAKE_TIME measures
+        HandshakeEvent event = new HandshakeEvent();
+        event.begin();
+        try {
+            clientSocket.setSoTimeout((int) ServerConstants.HANDSHAKE_TIMEOUT_MS);
+            // The connection owns the reader, so nothing buffered after the join line is lost
+            connection = new SocketConnection(clientSocket, threadFactory);
+            String joinLine = connection.readLine();
+            if (joinLine == null) {
+                LOG.logInfo("Client left before joining: {}", clientSocket);
+                return null;
+            }
+            // Cleared before the handler registers itself, so a failure here leaves nothing behind
+            clientSocket.setSoTimeout(0);
+            clientHandler = new ClientHandler(connection, clients, dispatcher, joinLine);
+            long sinceAccept = System.nanoTime() - acceptedNanos;
+            ServerMetrics.HANDSHAKE_TIME.record(sinceAccept);
+            commitHandshakeEvent(event, clientHandler, joinLine, sinceAccept);
+            return clientHandler;
+        } catch (SocketTimeoutException e) {
+            handshakes.recordTimeout();
+            LOG.logWarning("Client did not join within {} ms: {}", ServerConstants.HANDSHAKE_TIMEOUT_MS, clientSocket);
+        } catch (IOException e) {
+            LOG.logError("Rejected client " + clientSocket + ": " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            LOG.logError("Handshake failed for " + clientSocket + ": " + e.getMessage(), e);
+        } finally {
+            handshakes.end();
+            // Anything short of a handler leaves the socket and its writer thread to us
+            if (clientHandler == null) {
+                closeQuietly(connection, clientSocket);
+            }
+        }
+        return null;
+    }
+
+    private void commitHandshakeEvent(HandshakeEvent event, ClientHandler clientHandler, String joinLine, long sinceAccept) {
+        if (event.shouldCommit()) {
+            event.user = clientHandler.getUserName();
+            event.messageLength = joinLine.length();
+            event.recipients = clients.size();
+            event.sinceAccept = sinceAccept;
+            event.commit();
+        }
+    }
+
+    private static void closeQuietly(BlockingClientConnection connection, Socket clientSocket) {
+        try {
+            if (connection != null) {
+                connection.close();
+            }
+        } catch (IOException ignored) {
+            // Nothing left to clean up
+        }
+        closeQuietly(clientSocket);
+    }
+
+    private static void closeQuietly(Socket clientSocket) {
+        try {
+            clientSocket.close();
+        } catch (IOException ignored) {
+            // Nothing left to clean up
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.datamannen1013.javachattapp.server;
+
+import com.datamannen1013.javachattapp.server.connection.SharedFrame;
+import com.datamannen1013.javachattapp.server.jfr.FanOutEvent;
+import com.datamannen1013.javachattapp.server.logger.ServerLogger;
+import com.datamannen1013.javachattapp.server.metrics.LatencyHistogram;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fans broadcast messages out to every connected client, in one strict global order.
+ * Built like the Disruptor: producers claim a sequence in a preallocated ring and
+ * publish into its slot without locks, and a single dispatcher thread consumes every
+ * published slot in sequence order, handing whole batches to each client at once.
+ * Because only the dispatcher writes to client queues for broadcasts, every client
+ * sees broadcasts in the same order. Each message is wrapped once in a SharedFrame,
+ * encoded at most once per wire format, and the same bytes are queued for every recipient.
+ * A traced message also gets a frame with its trace header, sent only to clients that trace.
+ */
+public final class BroadcastDispatcher {
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int IDLE_SPINS = 100;
+    private static final int MAX_BATCH = 256;
+
+    private final Set<ClientHandler> subscribers;
+
+    // Ring buffer - slots are written by the producer that claimed them, read by the dispatcher
+    private final int mask;
+    private final int indexShift;
+    private final String[] messages;
+    private final String[] tracedMessages;
+    private final long[] publishNanos;
+    private final long[] receivedNanos;
+    private final AtomicIntegerArray publishedRound;
+    private final AtomicLong claimSequence = new AtomicLong(-1);
+    private volatile long dispatchedSequence = -1;
+
+    // Dispatcher thread state
+    private final Thread dispatcherThread;
+    private volatile boolean running = true;
+    private volatile boolean dispatcherParked = false;
+
+    // Counters - written by the dispatcher thread only
+    private final LatencyHistogram dispatchLatency = new LatencyHistogram();
+    private volatile long deliveryCount;
+    private volatile long batchCount;
+    private final long startNanos = System.nanoTime();
+
+    // Frames of the batch being dispatched, reused by the dispatcher thread
+    private final SharedFrame[] batchFrames = new SharedFrame[MAX_BATCH];
+    private final SharedFrame[] tracedBatchFrames = new SharedFrame[MAX_BATCH];
+    // Views handed to ClientHandler.sendFrames, so each client queues a batch in one go
+    private final List<SharedFrame> batchFrameList = Arrays.asList(batchFrames);
+    private final List<SharedFrame> tracedBatchFrameList = Arrays.asList(tracedBatchFrames);
+
+    /**
+     * @param subscribers Clients receiving every broadcast
+     * @param ringSize Number of slots, rounded up to a power of two
+     */
+    public BroadcastDispatcher(Set<ClientHandler> subscribers, int ringSize) {
+        if (ringSize < 2) {
+            throw new IllegalArgumentException("Ring size must be at least 2");
+        }
+        int capacity = Integer.bitCount(ringSize) == 1 ? ringSize : Integer.highestOneBit(ringSize) << 1;
+        this.subscribers = subscribers;
+        this.mask = capacity - 1;
+        this.indexShift = Integer.numberOfTrailingZeros(capacity);
+        this.messages = new String[capacity];
+        this.tracedMessages = new String[capacity];
+        this.publishNanos = new long[capacity];
+        this.receivedNanos = new long[capacity];
+        this.publishedRound = new AtomicIntegerArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            publishedRound.set(i, -1);
+        }
+        this.dispatcherThread = new Thread(this::dispatchLoop, "broadcast-dispatcher");
+        dispatcherThread.setDaemon(true);
+    }
+
+    /**
+     * Starts the dispatcher thread. Kept out of the constructor, the thread must only see a fully built dispatcher.
+     */
+    public void start() {
+        dispatcherThread.start();
+    }
+
+    /**
+     * Publishes a message to every subscriber. Never takes a lock; if the ring is full
+     * the caller waits for the dispatcher to free a slot.
+     * @param message The message to broadcast
+     * @return The sequence the message was published at
+     */
+    public long publish(String message) {
+        return publish(message, 0);
+    }
+
+    /**
+     * Publishes a message read from a client, see publish(String).
+     * @param message The message to broadcast
+     * @param receivedNanos System.nanoTime when the message was read, carried to its frame
+     * @return The sequence the message was published at
+     */
+    public long publish(String message, long receivedNanos) {
+        return publish(message, receivedNanos, null);
+    }
+
+    /**
+     * Publishes a message read from a tracing client, see publish(String).
+     * @param message The message to broadcast
+     * @param receivedNanos System.nanoTime when the message was read, carried to its frame
+     * @param tracedMessage The message with its trace header, for clients that trace; null if not traced
+     * @return The sequence the message was published at
+     */
+    public long publish(String message, long receivedNanos, String tracedMessage) {
+        long sequence = claimSequence.incrementAndGet();
+        long wrapPoint = sequence - messages.length;
+        while (wrapPoint > dispatchedSequence) {
+            LockSupport.parkNanos(1_000);
+        }
+
+        int index = (int) (sequence & mask);
+        messages[index] = message;
+        tracedMessages[index] = tracedMessage;
+        publishNanos[index] = System.nanoTime();
+        this.receivedNanos[index] = receivedNanos;
+        publishedRound.set(index, (int) (sequence >>> indexShift));
+
+        if (dispatcherParked) {
+            LockSupport.unpark(dispatcherThread);
+        }
+        return sequence;
+    }
+
+    /**
+     * Waits until the message at the given sequence has been handed to every subscriber.
+     * Lets a publisher limit how far it runs ahead of the dispatcher.
+     * @param sequence Sequence returned by publish
+     */
+    public void awaitDispatched(long sequence) {
+        while (!isDispatched(sequence)) {
+            LockSupport.parkNanos(1_000);
+        }
+    }
+
+    /**
+     * @param sequence Sequence returned by publish
+     * @return true once the message has been handed to every subscriber, or the dispatcher is not running
+     */
+    public boolean isDispatched(long sequence) {
+        return dispatchedSequence >= sequence || !dispatcherThread.isAlive();
+    }
+
+    /**
+     * Stops the dispatcher after it has delivered everything already published.
+     */
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(dispatcherThread);
+        try {
+            dispatcherThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Counters
+    public long getPublishedCount() {
+        return claimSequence.get() + 1;
+    }
+
+    public long getDispatchedCount() {
+        return dispatchedSequence + 1;
+    }
+
+    /**
+     * @return Messages handed to a single client, i.e. dispatched messages times recipients
+     */
+    public long getDeliveryCount() {
+        return deliveryCount;
+    }
+
+    public long getBatchCount() {
+        return batchCount;
+    }
+
+    /**
+     * @return Average dispatched messages per second since the dispatcher was created
+     */
+    public double getThroughputPerSecond() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds == 0 ? 0 : getDispatchedCount() / seconds;
+    }
+
+    /**
+     * @return Time from publish until the message was queued for every client, at the 99th percentile
+     */
+    public long getP99LatencyNanos() {
+        return dispatchLatency.getValueAtPercentile(99.0);
+    }
+
+    public LatencyHistogram getDispatchLatency() {
+        return dispatchLatency;
+    }
+
+    // Private methods
+    private void dispatchLoop() {
+        ServerLogger.logInfo("Broadcast dispatcher started with " + messages.length + " slots");
+        int idleSpins = 0;
+        while (running || dispatchedSequence < claimSequence.get()) {
+            long available = highestPublishedSequence(dispatchedSequence + 1);
+            if (available > dispatchedSequence) {
+                dispatchBatch(dispatchedSequence + 1, Math.min(available, dispatchedSequence + MAX_BATCH));
+                idleSpins = 0;
+            } else if (++idleSpins < IDLE_SPINS) {
+                Thread.onSpinWait();
+            } else {
+                park();
+            }
+        }
+        ServerLogger.logInfo("Broadcast dispatcher stopped after " + getDispatchedCount() + " messages");
+    }
+
+    private long highestPublishedSequence(long from) {
+        long claimed = claimSequence.get();
+        long sequence = from;
+        while (sequence <= claimed
+                && publishedRound.get((int) (sequence & mask)) == (int) (sequence >>> indexShift)) {
+            sequence++;
+        }
+        return sequence - 1;
+    }
+
+    private void dispatchBatch(long first, long last) {
+        FanOutEvent event = new FanOutEvent();
+        event.begin();
+        int count = (int) (last - first + 1);
+        boolean traced = false;
+        for (int i = 0; i < count; i++) {
+            int index = (int) ((first + i) & mask);
+            batchFrames[i] = SharedFrame.of(messages[index], receivedNanos[index]);
+            traced |= tracedMessages[index] != null;
+        }
+
+        int recipients = 0;
+        List<SharedFrame> frames = batchFrameList.subList(0, count);
+        List<SharedFrame> tracedFrames = null;
+        for (ClientHandler client : subscribers) {
+            recipients++;
+            if (traced && client.wantsTraces()) {
+                if (tracedFrames == null) {
+                    buildTracedFrames(first, count);
+                    tracedFrames = tracedBatchFrameList.subList(0, count);
+                }
+                client.sendFrames(tracedFrames);
+            } else {
+                client.sendFrames(frames);
+            }
+        }
+
+        if (event.shouldCommit()) {
+            int length = 0;
+            for (int i = 0; i < count; i++) {
+                length += batchFrames[i].text().length();
+            }
+            event.messageCount = count;
+            event.messageLength = length;
+            event.recipients = recipients;
+            event.commit();
+        }
+
+        long now = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            int index = (int) ((first + i) & mask);
+            dispatchLatency.record(now - publishNanos[index]);
+            messages[index] = null;
+            tracedMessages[index] = null;
+            batchFrames[i].release();
+            batchFrames[i] = null;
+            if (tracedFrames != null) {
+                tracedBatchFrames[i].release();
+                tracedBatchFrames[i] = null;
+            }
+        }
+        deliveryCount += (long) count * recipients;
+        batchCount++;
+        dispatchedSequence = last; // Frees the slots for producers
+    }
+
+    // The plain frame stands in for messages that were not traced. The traced frame carries
+    // no receive time, the plain frame records the delivery latency once.
+    private void buildTracedFrames(long first, int count) {
+        for (int i = 0; i < count; i++) {
+            String tracedMessage = tracedMessages[(int) ((first + i) & mask)];
+            tracedBatchFrames[i] = tracedMessage == null ? batchFrames[i].retain() : SharedFrame.of(tracedMessage);
+        }
+    }
+
+    private void park() {
+        dispatcherParked = true;
+        // Re-check after announcing the park, a producer may have published in between
+        if (highestPublishedSequence(dispatchedSequence + 1) == dispatchedSequence && running) {
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+        dispatcherParked = false;
+    }
+}
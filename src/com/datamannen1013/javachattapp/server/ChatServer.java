@@ -1,21 +1,38 @@
 package com.datamannen1013.javachattapp.server;
 
 import com.datamannen1013.javachattapp.server.constants.ServerConstants;
+import com.datamannen1013.javachattapp.server.database.ConnectionPool;
 import com.datamannen1013.javachattapp.server.database.DatabaseManager;
-import com.datamannen1013.javachattapp.server.database.models.Message;
-import com.datamannen1013.javachattapp.server.database.repository.MessageRepository;
+import com.datamannen1013.javachattapp.server.logger.ClassLogger;
 import com.datamannen1013.javachattapp.server.logger.ServerLogger;
+import com.datamannen1013.javachattapp.server.management.ChatServerMonitor;
+import com.datamannen1013.javachattapp.server.management.ConnectionPoolMonitor;
+import com.datamannen1013.javachattapp.server.management.LoggerMonitor;
+import com.datamannen1013.javachattapp.server.management.ServerManagement;
+import com.datamannen1013.javachattapp.server.metrics.MetricsRegistry;
+import com.datamannen1013.javachattapp.server.metrics.ServerMetrics;
+import com.datamannen1013.javachattapp.server.nio.NioChatServer;
 
 import java.io.*;
-import java.net.*;
-import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 public class ChatServer {
-    // Thread-safe set to keep track of all connected clients
-    private static final Set<ClientHandler> clients = Collections.synchronizedSet(new HashSet<>());
+    private static final ClassLogger LOG = ServerLogger.forClass(ChatServer.class);
+    // Lock-free set to keep track of all connected clients
+    private static final Set<ClientHandler> clients = ConcurrentHashMap.newKeySet();
+    private static final BroadcastDispatcher dispatcher =
+            new BroadcastDispatcher(clients, ServerConstants.BROADCAST_RING_SIZE);
     private static volatile boolean isRunning = true;
-    private static ServerSocket serverSocket;
+    private static volatile boolean isDraining = false;
+    private static BlockingChatServer blockingServer;
+    private static NioChatServer nioServer;
+    private static ScheduledExecutorService metricsReporter;
     static DatabaseManager dbManager;
 
     public static void main(String[] args) {
@@ -24,106 +41,204 @@ public class ChatServer {
             ServerLogger.setupLogger();
 
         } catch (Exception e) {
-            ServerLogger.logError("Failed to initialize database: " + e.getMessage(), e);
+            LOG.logError("Failed to initialize database: " + e.getMessage(), e);
             System.exit(1);
         }
 
-        // Server initialization
+        dispatcher.start();
+        // Read history from the database once, joins are served from memory
+        RecentHistory.getInstance();
+        registerMetrics();
+        startMetricsReporter();
+        registerManagementBeans();
+
+        // Add shutdown hook
+        Runtime.getRuntime().addShutdownHook(new Thread(ChatServer::shutdownServer, "ShutdownHook"));
+
+        String mode = System.getProperty(ServerConstants.SERVER_MODE_PROPERTY, ServerConstants.SERVER_MODE_THREAD);
+        if (ServerConstants.SERVER_MODE_NIO.equalsIgnoreCase(mode)) {
+            startNioServer();
+        } else if (ServerConstants.SERVER_MODE_VIRTUAL.equalsIgnoreCase(mode)) {
+            startBlockingServer(BlockingChatServer.virtualThreads());
+        } else {
+            startBlockingServer(BlockingChatServer.platformThreads());
+        }
+    }
+
+    // Blocking mode - one thread per connected client, platform or virtual
+    private static void startBlockingServer(ThreadFactory threadFactory) {
         try {
-            serverSocket = new ServerSocket(ServerConstants.SERVER_PORT);
-            ServerLogger.logInfo("Chat server started on port " + ServerConstants.SERVER_PORT);
+            blockingServer = new BlockingChatServer(ServerConstants.SERVER_PORT, clients, dispatcher, threadFactory);
+            blockingServer.start();
+        } catch (IOException e) {
+            LOG.logError("Error in server: " + e.getMessage(), e);
+        }
+    }
 
-            while (isRunning) {
-                Socket clientSocket = serverSocket.accept();
+    // Event loop mode - a few selector threads serve every client
+    private static void startNioServer() {
+        try {
+            nioServer = new NioChatServer(ServerConstants.SERVER_PORT, ServerConstants.NIO_EVENT_LOOPS, clients, dispatcher);
+            nioServer.start();
+        } catch (IOException e) {
+            LOG.logError("Error in NIO server: " + e.getMessage(), e);
+        }
+    }
 
-                // Create a BufferedReader to read text input from the client socket's input stream
-                BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                ServerLogger.logInfo("Client connected: " + clientSocket);
+    // Metrics - histograms kept by components, and gauges read when the metrics are reported
+    private static void registerMetrics() {
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        registry.register("broadcast.dispatch", dispatcher.getDispatchLatency());
+        registry.register("db.pool.wait", dbManager.getConnectionPool().getWaitTime());
+        registry.gauge("clients.connected", clients::size);
+        registry.gauge("clients.outbound.queued", () -> {
+            long queued = 0;
+            for (ClientHandler client : clients) {
+                queued += client.getQueuedLineCount();
+            }
+            return queued;
+        });
+        registry.gauge("clients.outbound.maxQueued", () -> {
+            long max = 0;
+            for (ClientHandler client : clients) {
+                max = Math.max(max, client.getQueuedLineCount());
+            }
+            return max;
+        });
+        registry.gauge("broadcast.backlog", () -> dispatcher.getPublishedCount() - dispatcher.getDispatchedCount());
+        registry.gauge("db.pool.active", () -> dbManager.getConnectionPool().getActiveCount());
+    }
+
+    // Management - live state and operations over JMX
+    private static void registerManagementBeans() {
+        ServerManagement.register("ChatServer", new ChatServerMonitor(clients, dispatcher));
+        ServerManagement.register("ConnectionPool", new ConnectionPoolMonitor(dbManager.getConnectionPool()));
+        if (ServerLogger.getHandler() != null) {
+            ServerManagement.register("Logger", new LoggerMonitor(ServerLogger.getHandler()));
+        }
+    }
 
-                // Spawn a new thread for each client
-                ClientHandler clientThread = new ClientHandler(clientSocket, clients, in.readLine());
-                clients.add(clientThread);
+    private static void startMetricsReporter() {
+        if (ServerConstants.METRICS_LOG_INTERVAL_MS <= 0) {
+            return;
+        }
+        metricsReporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        metricsReporter.scheduleAtFixedRate(() -> LOG.logInfo(MetricsRegistry.getInstance().report()),
+                ServerConstants.METRICS_LOG_INTERVAL_MS, ServerConstants.METRICS_LOG_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
 
-                // Send recent messages to new client
-                sendRecentMessagesToClient(clientThread);
+    public static boolean isDraining() {
+        return isDraining;
+    }
 
-                new Thread(clientThread).start();
+    /**
+     * Disconnects a user the same way a server shutdown would, and tells the other clients they left.
+     * @return false if the user is not connected
+     */
+    public static boolean disconnectUser(String userName) {
+        for (ClientHandler client : clients) {
+            if (client.getUserName().equals(userName)) {
+                client.disconnect();
+                dispatcher.publish(userName + ServerConstants.LEAVE_MESSAGE_SUFFIX);
+                LOG.logInfo("Disconnected user {} on request", userName);
+                return true;
             }
-        } catch (IOException e) {
-            ServerLogger.logError("Error in server: " + e.getMessage(), e);
         }
+        return false;
+    }
 
-        try {
-            serverSocket = new ServerSocket(ServerConstants.SERVER_PORT);
-            ServerLogger.logInfo("Server started. Waiting for clients...");
-            
-            // Add shutdown hook
-            Runtime.getRuntime().addShutdownHook(new Thread(ChatServer::shutdownServer, "ShutdownHook"));
-
-            // Continuously accept new client connections
-            while (isRunning) {
-                Socket clientSocket = serverSocket.accept();
-
-                // Create a BufferedReader to read text input from the client socket's input stream
-                BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                ServerLogger.logInfo("Client connected: " + clientSocket);
-
-                // Spawn a new thread for each client
-                ClientHandler clientThread = new ClientHandler(clientSocket, clients, in.readLine());
-                clients.add(clientThread); // Add client to the set
-                new Thread(clientThread).start();
+    /**
+     * Refuses new connections, waits up to timeoutMillis for queued broadcasts to reach
+     * every client, then disconnects them all. The process stays up, so it can be stopped
+     * whenever suits.
+     * @return Number of clients disconnected
+     */
+    public static int drain(long timeoutMillis) {
+        isDraining = true;
+        LOG.logInfo("Draining server, waiting up to {} ms for queued messages", timeoutMillis);
+        if (blockingServer != null) blockingServer.refuseNewClients();
+        if (nioServer != null) nioServer.refuseNewClients();
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (!isIdle() && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+
+        int disconnected = 0;
+        for (ClientHandler client : clients) {
+            client.disconnect();
+            disconnected++;
+        }
+        LOG.logInfo("Drained server, disconnected {} clients", disconnected);
+        return disconnected;
+    }
+
+    // Nothing waiting for the dispatcher or in any client's outbound queue
+    private static boolean isIdle() {
+        if (dispatcher.getDispatchedCount() < dispatcher.getPublishedCount()) {
+            return false;
+        }
+        for (ClientHandler client : clients) {
+            if (client.getQueuedLineCount() > 0) {
+                return false;
             }
-        } catch (IOException e) {
-            ServerLogger.logError("Error in server: " + e.getMessage(), e);
         }
+        return true;
     }
-    
+
     private static void shutdownServer() {
         isRunning = false;
-        ServerLogger.logInfo("Initiating server shutdown...");
-        
+        LOG.logInfo("Initiating server shutdown...");
+        if (metricsReporter != null) metricsReporter.shutdownNow();
+
+        // Deliver broadcasts that were already published
+        dispatcher.shutdown();
+        LOG.logInfo("Broadcast dispatcher delivered " + dispatcher.getDispatchedCount()
+                + " messages in " + dispatcher.getBatchCount() + " batches, p99 "
+                + dispatcher.getP99LatencyNanos() / 1000 + " us");
+
         // Close all client connections
-        synchronized (clients) {
-            for (ClientHandler client : clients) {
-                try {
-                    client.disconnect();
-                } catch (Exception e) {
-                    ServerLogger.logError("Error disconnecting client: " + e.getMessage(), e);
-                }
+        for (ClientHandler client : clients) {
+            try {
+                client.disconnect();
+            } catch (Exception e) {
+                LOG.logError("Error disconnecting client: " + e.getMessage(), e);
             }
-            clients.clear();
         }
+        clients.clear();
 
-        ServerLogger.logInfo("All clients disconnected. Server shutdown complete.");
-        ServerLogger.close();
-        
         // Close server socket
-        try { if (serverSocket != null) serverSocket.close(); }
-        catch (IOException e) { ServerLogger.logError("Error closing server socket: " + e.getMessage(), e); }
+        if (blockingServer != null) blockingServer.shutdown();
+        if (nioServer != null) nioServer.shutdown();
+
+        // Store queued messages and close pooled database connections
+        if (dbManager != null) {
+            ConnectionPool pool = dbManager.getConnectionPool();
+            LOG.logInfo("Connection pool opened " + pool.getCreatedCount() + " connections, p99 wait "
+                    + pool.getWaitTime().getValueAtPercentile(99) / 1000 + " us, " + pool.getTimeoutCount()
+                    + " timeouts, statement cache hits " + pool.getStatementCacheHits());
+            dbManager.shutdown();
+            LOG.logInfo(dbManager.getMessageStore().summary());
+        }
+        LOG.logInfo(MetricsRegistry.getInstance().report());
+
+        LOG.logInfo("All clients disconnected. Server shutdown complete.");
+        ServerLogger.close();
     }
-    // Method to send recent messages to a new client
+    // Method to send recent messages to a new client, served from memory
     static void sendRecentMessagesToClient(ClientHandler client) {
-        ServerLogger.logInfo("Starting to send history to client: " + client.getUserName());
+        long start = System.nanoTime();
         try {
-            List<Message> recentMessages = MessageRepository.getRecentMessages(ServerConstants.MESSAGE_HISTORY_LIMIT);
-            ServerLogger.logInfo("Retrieved " + recentMessages.size() + " messages from database");
-
-            // Send a header to indicate history messages
-            client.sendMessage("--- Chat History ---");
-
-            // Send messages in chronological order (oldest first)
-            Collections.reverse(recentMessages); // Reverse since we got them in DESC order
-            for (Message msg : recentMessages) {
-                String formattedTime = new SimpleDateFormat("HH:mm:ss").format(msg.timestamp());
-                client.sendMessage(ServerConstants.SERVER_HISTORY_MESSAGE_PREFIX + "[" + formattedTime + "] " + msg.sender() + ": " +msg.content());
-                ServerLogger.logInfo("Debug - Sender: " + msg.sender() + ", Content: " + msg.content());
-            }
-
-            client.sendMessage("--- End of History ---");
-            ServerLogger.logInfo("Finished sending history to client: " + client.getUserName());
-
+            RecentHistory.getInstance().replayTo(client);
+            LOG.logDebug("Sent history to client: {}", client.getUserName());
         } catch (Exception e) {
-            ServerLogger.logError("Error sending message history to client: " + e.getMessage(), e);
+            LOG.logError("Error sending message history to client: " + e.getMessage(), e);
+        } finally {
+            ServerMetrics.HISTORY_REPLAY_TIME.record(System.nanoTime() - start);
         }
     }
 }
@@ -1,51 +1,64 @@
 package com.datamannen1013.javachattapp.server;
 
+import com.datamannen1013.javachattapp.protocol.BinaryFraming;
+import com.datamannen1013.javachattapp.protocol.TraceHeader;
+import com.datamannen1013.javachattapp.server.connection.BlockingClientConnection;
+import com.datamannen1013.javachattapp.server.connection.ClientConnection;
+import com.datamannen1013.javachattapp.server.connection.SharedFrame;
 import com.datamannen1013.javachattapp.server.constants.ServerConstants;
+import com.datamannen1013.javachattapp.server.database.DatabaseConfig;
 import com.datamannen1013.javachattapp.server.database.DatabaseManager;
+import com.datamannen1013.javachattapp.server.database.models.Message;
 import com.datamannen1013.javachattapp.server.database.repository.MessageRepository;
+import com.datamannen1013.javachattapp.server.jfr.MessageReceiveEvent;
+import com.datamannen1013.javachattapp.server.logger.ClassLogger;
 import com.datamannen1013.javachattapp.server.logger.ServerLogger;
+import com.datamannen1013.javachattapp.server.metrics.ServerMetrics;
 
-import javax.swing.*;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.Socket;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
 
 
 public class ClientHandler implements Runnable {
     // Constants
-    private static final Object DB_LOCK = new Object();
+    private static final ClassLogger LOG = ServerLogger.forClass(ClientHandler.class);
+    private static final int RECENT_MESSAGE_WINDOW = 16;
+    // Broadcasts one client may have waiting for the dispatcher, keeps a flooding client
+    // within its own outbound queue instead of being dropped as a slow consumer
+    private static final int PUBLISH_WINDOW = Math.max(1, ServerConstants.OUTBOUND_QUEUE_CAPACITY / 4);
 
     // Instance fields - core components
-    private final Socket clientSocket;
+    private final ClientConnection connection;
     private final String userName;
     private final Set<ClientHandler> clients;
-    private final BufferedReader in;
-    private final PrintWriter out;
+    private final BroadcastDispatcher dispatcher;
 
     // Message handling components
-    private final LinkedBlockingQueue<String> messageQueue;
-    private final AtomicBoolean isProcessingBroadcast;
-
-    public ClientHandler(Socket socket, Set<ClientHandler> clients, String message) throws IOException {
-        this.messageQueue = new LinkedBlockingQueue<>();
-        this.isProcessingBroadcast = new AtomicBoolean(false);
-
+    // Only touched by the thread reading this client's input, used to drop duplicates
+    private final DuplicateFilter recentMessages = new DuplicateFilter(RECENT_MESSAGE_WINDOW);
+    private final AtomicBoolean isDisconnecting = new AtomicBoolean(false);
+    // Set by the join option or the first traced line, read by the dispatcher
+    private volatile boolean tracing;
+
+    public ClientHandler(ClientConnection connection, Set<ClientHandler> clients,
+                         BroadcastDispatcher dispatcher, String message) throws IOException {
         try {
-            this.clientSocket = socket;
+            this.connection = connection;
             this.clients = clients;
-            this.userName = validateUsername(message);
-
-            // Initialize streams
-            this.out = new PrintWriter(socket.getOutputStream(), true);
-            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            this.dispatcher = dispatcher;
+            boolean wantsBinaryFraming = message != null && message.endsWith(BinaryFraming.JOIN_OPTION);
+            String joinLine = wantsBinaryFraming ?
+                    message.substring(0, message.length() - BinaryFraming.JOIN_OPTION.length()) : message;
+            this.tracing = joinLine != null && joinLine.endsWith(TraceHeader.JOIN_OPTION);
+            this.userName = validateUsername(tracing ?
+                    joinLine.substring(0, joinLine.length() - TraceHeader.JOIN_OPTION.length()) : joinLine);
+            if (wantsBinaryFraming) {
+                enableBinaryFraming();
+            }
 
             initializeClientConnection();
         } catch (IllegalArgumentException e) {
@@ -53,12 +66,20 @@ public class ClientHandler implements Runnable {
         }
     }
 
+    /**
+     * Reads and handles this client's lines on the calling thread until it leaves.
+     * Only for blocking transports, event driven ones call onMessage for every line.
+     * @throws IllegalStateException If the connection pushes its lines instead
+     */
     @Override
     public void run() {
+        if (!(connection instanceof BlockingClientConnection blockingConnection)) {
+            throw new IllegalStateException(connection + " pushes its lines to onMessage and cannot be read from");
+        }
         try {
-            processClientMessages();
+            processClientMessages(blockingConnection);
         } catch (IOException e) {
-            ServerLogger.logError("An error occurred: " + e.getMessage(), e);
+            LOG.logError("An error occurred: " + e.getMessage(), e);
         } finally {
             disconnect();
         }
@@ -69,27 +90,108 @@ public class ClientHandler implements Runnable {
         return this.userName;
     }
 
+    /**
+     * @return true if broadcasts should reach this client with their trace header
+     */
+    public boolean wantsTraces() {
+        return tracing;
+    }
+
     public void sendMessage(String message) {
         try {
-            if (!isValidConnection()) {
-                return;
-            }
-            out.println(message);
+            connection.writeLine(message);
+        } catch (Exception e) {
+            LOG.logError("Error sending message: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Sends a message that was encoded once for many recipients.
+     * @param frame The shared frame, still owned by the caller
+     */
+    public void sendFrame(SharedFrame frame) {
+        try {
+            connection.writeFrame(frame);
+        } catch (Exception e) {
+            LOG.logError("Error sending message: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Sends several encoded messages in one go.
+     * @param frames The shared frames, still owned by the caller
+     */
+    public void sendFrames(List<SharedFrame> frames) {
+        try {
+            connection.writeFrames(frames);
         } catch (Exception e) {
-            ServerLogger.logError("Error sending message: " + e.getMessage(), e);
+            LOG.logError("Error sending messages: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Waits until this client's output queue is at most half full.
+     * @return false if the client went away, or the wait was interrupted
+     */
+    public boolean awaitOutboundDrained() {
+        try {
+            connection.awaitOutboundBelow(ServerConstants.OUTBOUND_QUEUE_CAPACITY / 2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
         }
+        return isConnectionActive();
+    }
+
+    /**
+     * @return Number of lines queued for this client and not yet written
+     */
+    public int getQueuedLineCount() {
+        return connection.getQueuedLineCount();
+    }
+
+    public long getBytesRead() {
+        return connection.getBytesRead();
+    }
+
+    public long getBytesWritten() {
+        return connection.getBytesWritten();
     }
 
     public void disconnect() {
         try {
-            synchronized (clients) {
+            if (isDisconnecting.compareAndSet(false, true)) {
                 if (isConnectionActive()) {
                     handleDisconnection();
+                } else {
+                    // Transport already gone, e.g. dropped as a slow consumer
+                    clients.remove(this);
                 }
             }
-            closeResources();
+            connection.close();
         } catch (IOException e) {
-            ServerLogger.logError("Error during disconnect: " + e.getMessage(), e);
+            LOG.logError("Error during disconnect: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Handles one line received from this client.
+     * Used directly by event driven transports, and by run() for blocking ones.
+     * @param inputLine The line received from the client
+     * @return false when the client has left and the connection should be closed
+     */
+    public boolean onMessage(String inputLine) {
+        MessageReceiveEvent event = new MessageReceiveEvent();
+        event.begin();
+        try {
+            return handleLine(inputLine);
+        } finally {
+            if (event.shouldCommit()) {
+                event.user = userName;
+                event.messageLength = inputLine.length();
+                event.recipients = clients.size();
+                event.commit();
+            }
         }
     }
 
@@ -102,42 +204,34 @@ public class ClientHandler implements Runnable {
             String serverShutdownMsg = ServerConstants.SERVER_SHUTDOWN_MESSAGE;
             sendMessage(serverShutdownMsg);
 
-            // Give client time to receive the message
-            try {
-                Thread.sleep(100); // Brief delay to ensure message delivery
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                ServerLogger.logWarning("Shutdown notification interrupted for client: " + userName);
-            }
-
-            // Clear any pending messages
-            messageQueue.clear();
-
             // Remove client from active clients list
-            synchronized (clients) {
-                clients.remove(this);
-            }
+            clients.remove(this);
 
             // Ensure final messages are sent
             flushOutput();
 
-            ServerLogger.logInfo("Client " + userName + " disconnected due to server shutdown");
+            LOG.logInfo("Client {} disconnected due to server shutdown", userName);
         } catch (Exception e) {
-            ServerLogger.logError("Error during server shutdown disconnect for " + userName + ": " + e.getMessage(), e);
+            LOG.logError("Error during server shutdown disconnect for " + userName + ": " + e.getMessage(), e);
         }
     }
 
     private void flushOutput() {
         try {
-            if (out != null && !out.checkError()) {
-                out.flush();
-            }
+            connection.flush();
         } catch (Exception e) {
-            ServerLogger.logError("Error flushing final messages to " + userName + ": " + e.getMessage(), e);
+            LOG.logError("Error flushing final messages to " + userName + ": " + e.getMessage(), e);
         }
     }
 
     // Private methods - Connection management
+    // Must run before anything is sent, the acknowledgement has to be the first line
+    private void enableBinaryFraming() {
+        if (!connection.enableBinaryFraming()) {
+            LOG.logWarning("Binary framing requested but not supported by {}", connection);
+        }
+    }
+
     private String validateUsername(String message) {
         String proposedUsername = message.replace(ServerConstants.JOIN_MESSAGE_PREFIX, "");
         Pattern pattern = Pattern.compile(ServerConstants.USERNAME_PATTERN);
@@ -148,15 +242,13 @@ public class ClientHandler implements Runnable {
     }
 
     private void initializeClientConnection() {
-        synchronized (clients) {
-            clients.add(this);
-            sendInitialMessages();
-        }
+        clients.add(this);
+        sendInitialMessages();
     }
 
     private void sendInitialMessages() {
         String onlineUsersMessage = ServerConstants.ONLINE_USERS_MESSAGE_PREFIX + getOnlineUsers();
-        ServerLogger.logInfo("Sending online users to new client: " + onlineUsersMessage);
+        LOG.logDebug("Sending online users to new client: {}", onlineUsersMessage);
         broadcastMessage(onlineUsersMessage);
 
         ChatServer.sendRecentMessagesToClient(this);
@@ -165,205 +257,128 @@ public class ClientHandler implements Runnable {
     }
 
     // Private methods - Message handling
-    private void processClientMessages() throws IOException {
-        String inputLine;
-        while ((inputLine = in.readLine()) != null) {
-            if (inputLine.endsWith(ServerConstants.LEAVE_MESSAGE_SUFFIX)) {
-                break;
+    private boolean handleLine(String inputLine) {
+        // A traced line is handled without its header, which is put back on delivery
+        TraceHeader trace = null;
+        if (inputLine.startsWith(TraceHeader.SEND_PREFIX)) {
+            trace = TraceHeader.parseSend(inputLine);
+            if (trace != null) {
+                inputLine = trace.line();
+                tracing = true;
             }
-            broadcastMessage(inputLine);
         }
-    }
-
-    private void broadcastMessage(String message) {
-        if (isDuplicateMessage(message)) {
-            return;
+        if (inputLine.endsWith(ServerConstants.LEAVE_MESSAGE_SUFFIX)) {
+            return false;
         }
-
-        if (ServerMessageHandler.isSystemMessage(message)) {
-            broadcastSystemMessage(message);
-        } else {
-            queueRegularMessage(message);
+        if (inputLine.startsWith(ServerConstants.HISTORY_BEFORE_REQUEST_PREFIX)) {
+            HistoryPager.handleRequest(this, inputLine);
+            return true;
         }
-    }
-
-    private void broadcastSystemMessage(String message) {
-        synchronized (clients) {
-            for (ClientHandler client : clients) {
-                client.sendMessage(message);
-            }
+        if (inputLine.startsWith(ServerConstants.SEARCH_REQUEST_PREFIX)) {
+            MessageSearch.handleRequest(this, inputLine);
+            return true;
         }
+        if (inputLine.startsWith(TraceHeader.REPORT_PREFIX)) {
+            LatencyReports.handleReport(this, inputLine);
+            return true;
+        }
+        ServerMetrics.MESSAGES_RECEIVED.increment();
+        broadcastMessage(inputLine, System.nanoTime(), trace);
+        return true;
     }
 
-    private void queueRegularMessage(String message) {
-        if (messageQueue.offer(message)) {
-            ServerLogger.logInfo("Message queued: " + message);
-            MessageRepository.saveMessage(userName, DatabaseManager.extractMessageContent(message));
-
-            if (isProcessingBroadcast.compareAndSet(false, true)) {
-                new BroadcastWorker().execute();
+    private void processClientMessages(BlockingClientConnection blockingConnection) throws IOException {
+        String inputLine;
+        while ((inputLine = blockingConnection.readLine()) != null) {
+            if (!onMessage(inputLine)) {
+                break;
             }
         }
     }
 
-    // Private methods - Utility
-    private boolean isConnectionActive() {
-        return clientSocket != null && !clientSocket.isClosed()
-                && in != null && out != null;
+    private void broadcastMessage(String message) {
+        broadcastMessage(message, 0, null);
     }
 
-    private boolean isValidConnection() {
-        if (clientSocket.isClosed()) {
-            ServerLogger.logWarning("Socket is closed, cannot send message");
-            return false;
-        }
-        if (out.checkError()) {
-            ServerLogger.logWarning("PrintWriter is in error state");
-            return false;
+    // receivedNanos is when a client's line was read, 0 for messages the server makes up.
+    // trace is the header the line came with, null if the client does not trace
+    private void broadcastMessage(String message, long receivedNanos, TraceHeader trace) {
+        if (recentMessages.isDuplicate(message)) {
+            return;
         }
-        return true;
-    }
 
-    private void closeResources() throws IOException {
-        in.close();
-        out.close();
-        clientSocket.close();
+        if (ServerMessageHandler.isSystemMessage(message)) {
+            broadcastSystemMessage(message, receivedNanos, trace);
+        } else {
+            queueRegularMessage(message, receivedNanos, trace);
+        }
     }
 
-    private String getOnlineUsers() {
-        StringBuilder onlineUsers = new StringBuilder();
-        synchronized (clients) {
-            for (ClientHandler client : clients) {
-                onlineUsers.append(client.getUserName()).append(",");
-            }
-        }
-        return !onlineUsers.isEmpty() ?
-                onlineUsers.substring(0, onlineUsers.length() - 1) : "";
+    private void broadcastSystemMessage(String message, long receivedNanos, TraceHeader trace) {
+        publish(message, receivedNanos, trace);
     }
 
-    // Private methods - Duplicate message handling
-    private boolean isDuplicateMessage(String message) {
-        // Check for duplicate online broadcast messages
-        if (message.endsWith("is now online.") && isProcessingBroadcast.get()) {
-            ServerLogger.logWarning("Skipping duplicate online broadcast: " + message);
-            return true;
+    private void queueRegularMessage(String message, long receivedNanos, TraceHeader trace) {
+        recentMessages.remember(message);
+        LOG.logDebug("Message queued: {}", message);
+        String content = DatabaseManager.extractMessageContent(message);
+        if (!MessageRepository.isStoredMessage(content)) {
+            publish(message, receivedNanos, trace);
+            return;
         }
-
-        // Check for duplicate messages in queue
-        if (!ServerMessageHandler.isSystemMessage(message)) {
-            for (String queuedMessage : messageQueue) {
-                if (isSimilarMessage(message, queuedMessage)) {
-                    ServerLogger.logWarning("Duplicate message detected: " + message);
-                    return true;
-                }
-            }
+        CompletableFuture<Message> saved = persist(content, receivedNanos);
+        if (DatabaseConfig.getDurability().isCommitAwaited()) {
+            // STRICT broadcasts from the thread that completes the save, the reader never waits for it
+            saved.thenRun(() -> dispatch(message, receivedNanos, trace));
+        } else {
+            publish(message, receivedNanos, trace);
         }
-
-        return false;
     }
 
-    private boolean isSimilarMessage(String message1, String message2) {
-        // Get timestamps if they exist
-        long timestamp1 = extractTimestamp(message1);
-        long timestamp2 = extractTimestamp(message2);
-
-        // If messages are within 2 seconds of each other
-        if (Math.abs(timestamp1 - timestamp2) <= 2000) {
-            // Remove timestamps and compare content
-            String content1 = stripMetadata(message1);
-            String content2 = stripMetadata(message2);
-
-            return content1.equals(content2);
-        }
-
-        return false;
+    // Saving happens in the message store, the returned future completes once it is stored.
+    // History gets the message once it has its id, stores complete in id order.
+    private CompletableFuture<Message> persist(String content, long receivedNanos) {
+        CompletableFuture<Message> saved = DatabaseManager.getInstance().getMessageStore().append(userName, content)
+                .thenApply(stored -> {
+                    RecentHistory.getInstance().record(stored);
+                    if (receivedNanos != 0) {
+                        ServerMetrics.RECEIVE_TO_PERSIST.record(System.nanoTime() - receivedNanos);
+                    }
+                    return stored;
+                });
+        saved.exceptionally(failure -> {
+            sendMessage(ServerConstants.MESSAGE_NOT_SAVED_NOTICE);
+            return null;
+        });
+        return saved;
     }
 
-    private long extractTimestamp(String message) {
-        try {
-            // Assuming timestamp is at the start of the message in a specific format
-            // Adjust this based on your message format
-            int timestampEnd = message.indexOf("]");
-            if (timestampEnd != -1) {
-                String timestamp = message.substring(1, timestampEnd);
-                return Long.parseLong(timestamp);
-            }
-        } catch (Exception e) {
-            ServerLogger.logWarning("Could not extract timestamp from message: " + message);
+    // Called by the thread reading this client. While too much of its output is in flight an event
+    // driven transport stops reading the client, the reader of a blocking one waits
+    private void publish(String message, long receivedNanos, TraceHeader trace) {
+        long windowStart = dispatch(message, receivedNanos, trace) - PUBLISH_WINDOW;
+        if (!dispatcher.isDispatched(windowStart)
+                && !connection.pauseReading(() -> dispatcher.isDispatched(windowStart))) {
+            dispatcher.awaitDispatched(windowStart);
         }
-        return System.currentTimeMillis();
     }
 
-    private String stripMetadata(String message) {
-        try {
-            // Remove timestamp and any other metadata
-            // Adjust this based on your message format
-            int contentStart = message.indexOf("]") + 1;
-            return message.substring(contentStart).trim();
-        } catch (Exception e) {
-            ServerLogger.logWarning("Could not strip metadata from message: " + message);
-            return message;
-        }
+    // Handing the line to the dispatcher is the traced dispatch time
+    private long dispatch(String message, long receivedNanos, TraceHeader trace) {
+        return dispatcher.publish(message, receivedNanos, trace == null ? null : trace.toDelivery(message));
     }
 
+    // Private methods - Utility
+    private boolean isConnectionActive() {
+        return connection.isOpen();
+    }
 
-    // Inner class
-    private class BroadcastWorker extends SwingWorker<Void, String> {
-        @Override
-        protected Void doInBackground() {
-            try {
-                processPendingMessages();
-            } finally {
-                isProcessingBroadcast.set(false);
-                if (!messageQueue.isEmpty()) {
-                    broadcastMessage(messageQueue.peek());
-                }
-            }
-            return null;
-        }
-
-        @Override
-        protected void done() {
-            try {
-                get();
-                ServerLogger.logInfo("BroadcastWorker completed successfully");
-            } catch (InterruptedException e) {
-                ServerLogger.logError("Broadcast interrupted", e);
-                Thread.currentThread().interrupt();
-            } catch (Exception e) {
-                ServerLogger.logError("Error processing messages: " + e.getMessage(), e);
-            }
-        }
-
-        // Private methods - Message processing
-        private void processPendingMessages() {
-            List<String> messageBatch = collectMessageBatch();
-            broadcastMessageBatch(messageBatch);
-        }
-
-        private List<String> collectMessageBatch() {
-            List<String> messageBatch = new ArrayList<>();
-            String message;
-            while ((message = messageQueue.poll()) != null) {
-                messageBatch.add(message);
-                ServerLogger.logInfo("Added to batch: " + message);
-            }
-            return messageBatch;
-        }
-
-        private void broadcastMessageBatch(List<String> messageBatch) {
-            synchronized (DB_LOCK) {
-                for (String msg : messageBatch) {
-                    for (ClientHandler client : clients) {
-                        try {
-                            client.sendMessage(msg);
-                        } catch (Exception e) {
-                            ServerLogger.logError("Error sending to client: " + e.getMessage(), e);
-                        }
-                    }
-                }
-            }
+    private String getOnlineUsers() {
+        StringBuilder onlineUsers = new StringBuilder();
+        for (ClientHandler client : clients) {
+            onlineUsers.append(client.getUserName()).append(",");
         }
+        return !onlineUsers.isEmpty() ?
+                onlineUsers.substring(0, onlineUsers.length() - 1) : "";
     }
 }
-
@@ -0,0 +1,103 @@
+package com.datamannen1013.javachattapp.server;
+
+import com.datamannen1013.javachattapp.server.logger.ClassLogger;
+import com.datamannen1013.javachattapp.server.logger.ServerLogger;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the messages a client sent recently, two seconds by default, and tells whether a
+ * new one repeats them, so a line sent twice by a retrying client goes out once. Each message
+ * is kept with the time it was received, at most window of them.
+ * Only touched by the thread reading that client's input, so it is not thread safe.
+ */
+public class DuplicateFilter {
+    private static final ClassLogger LOG = ServerLogger.forClass(DuplicateFilter.class);
+    private static final long DEFAULT_MAX_AGE_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private final int window;
+    private final long maxAgeNanos;
+    private final ArrayDeque<RecentMessage> recentMessages;
+
+    /**
+     * @param window Number of recent messages compared against
+     */
+    public DuplicateFilter(int window) {
+        this(window, DEFAULT_MAX_AGE_NANOS);
+    }
+
+    /**
+     * @param window Number of recent messages compared against
+     * @param maxAgeNanos How long a message is remembered after it was received
+     */
+    public DuplicateFilter(int window, long maxAgeNanos) {
+        this.window = window;
+        this.maxAgeNanos = maxAgeNanos;
+        this.recentMessages = new ArrayDeque<>(window);
+    }
+
+    /**
+     * @param message The line to check
+     * @return true if the message repeats one received within the max age
+     */
+    public boolean isDuplicate(String message) {
+        forgetExpired(System.nanoTime());
+
+        // Check for duplicate online broadcast messages
+        if (message.endsWith("is now online.")) {
+            for (RecentMessage recent : recentMessages) {
+                if (recent.message.equals(message)) {
+                    LOG.logWarning("Skipping duplicate online broadcast: {}", message);
+                    return true;
+                }
+            }
+        }
+
+        // Check for duplicate messages among the ones recently sent
+        if (!ServerMessageHandler.isSystemMessage(message)) {
+            String content = stripMetadata(message);
+            for (RecentMessage recent : recentMessages) {
+                if (content.equals(recent.content)) {
+                    LOG.logWarning("Duplicate message detected: {}", message);
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Adds a message to the recent ones, forgetting the oldest once the window is full.
+     * @param message The line that was sent
+     */
+    public void remember(String message) {
+        if (recentMessages.size() == window) {
+            recentMessages.removeFirst();
+        }
+        recentMessages.addLast(new RecentMessage(message, stripMetadata(message), System.nanoTime()));
+    }
+
+    // Private methods
+    private void forgetExpired(long now) {
+        while (!recentMessages.isEmpty() && now - recentMessages.peekFirst().receivedNanos > maxAgeNanos) {
+            recentMessages.removeFirst();
+        }
+    }
+
+    private String stripMetadata(String message) {
+        try {
+            // Remove timestamp and any other metadata
+            // Adjust this based on your message format
+            int contentStart = message.indexOf("]") + 1;
+            return message.substring(contentStart).trim();
+        } catch (Exception e) {
+            LOG.logDebug("Could not strip metadata from message: {}", message);
+            return message;
+        }
+    }
+
+    private record RecentMessage(String message, String content, long receivedNanos) {
+    }
+}
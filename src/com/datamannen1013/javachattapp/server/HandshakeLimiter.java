@@ -0,0 +1,59 @@
+package com.datamannen1013.javachattapp.server;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the number of connections that have been accepted but have not finished the join handshake.
+ * Connections over the limit are closed right away, so a reconnect storm, or clients that
+ * connect and never send their join line, cannot make accept latency grow.
+ */
+public class HandshakeLimiter {
+    private final Semaphore permits;
+    private final int maxPending;
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong timedOutCount = new AtomicLong();
+
+    public HandshakeLimiter(int maxPending) {
+        this.maxPending = maxPending;
+        this.permits = new Semaphore(maxPending);
+    }
+
+    /**
+     * Starts a handshake if the limit allows it. Every successful call must be paired with end().
+     * @return false if too many handshakes are pending and the connection should be refused
+     */
+    public boolean tryBegin() {
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        rejectedCount.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Ends a handshake started by tryBegin(), whether it succeeded or not.
+     */
+    public void end() {
+        permits.release();
+    }
+
+    /**
+     * Counts a handshake that was abandoned because the client missed the deadline.
+     */
+    public void recordTimeout() {
+        timedOutCount.incrementAndGet();
+    }
+
+    public int getPendingCount() {
+        return maxPending - permits.availablePermits();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getTimedOutCount() {
+        return timedOutCount.get();
+    }
+}
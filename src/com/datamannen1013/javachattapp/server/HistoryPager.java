@@ -0,0 +1,115 @@
+package com.datamannen1013.javachattapp.server;
+
+import com.datamannen1013.javachattapp.server.connection.SharedFrame;
+import com.datamannen1013.javachattapp.server.constants.ServerConstants;
+import com.datamannen1013.javachattapp.server.database.DatabaseManager;
+import com.datamannen1013.javachattapp.server.database.models.Message;
+import com.datamannen1013.javachattapp.server.database.repository.MessageSink;
+import com.datamannen1013.javachattapp.server.logger.ServerLogger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves scroll-back requests, one keyset page of older history per request.
+ * Pages are streamed from the database, so memory stays bounded by the fetch size however
+ * large the page. Queries run on their own virtual threads so an event loop or reader
+ * thread never waits on the database or on a slow client.
+ */
+public class HistoryPager {
+    private static final Executor EXECUTOR =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("history-page-", 0).factory());
+
+    private HistoryPager() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Handles a "/historybefore &lt;id&gt; &lt;limit&gt;" line from a client.
+     * @param client The client that asked, the page is sent only to it
+     * @param request The request line
+     */
+    public static void handleRequest(ClientHandler client, String request) {
+        String[] parts = request.substring(ServerConstants.HISTORY_BEFORE_REQUEST_PREFIX.length()).trim().split("\\s+");
+        long beforeId;
+        int limit;
+        try {
+            beforeId = Long.parseLong(parts[0]);
+            limit = parts.length > 1 ? Integer.parseInt(parts[1]) : ServerConstants.MESSAGE_HISTORY_LIMIT;
+        } catch (NumberFormatException e) {
+            ServerLogger.logWarning("Ignoring malformed history request from " + client.getUserName() + ": " + request);
+            return;
+        }
+        int pageSize = Math.clamp(limit, 1, ServerConstants.MAX_HISTORY_PAGE_SIZE);
+        EXECUTOR.execute(() -> sendPage(client, beforeId, pageSize));
+    }
+
+    // Private methods
+    private static void sendPage(ClientHandler client, long beforeId, int limit) {
+        PageSink sink = new PageSink(client);
+        int sent;
+        try {
+            sent = DatabaseManager.getInstance().getMessageStore()
+                    .streamBefore(beforeId, limit, ServerConstants.HISTORY_FETCH_SIZE, sink);
+        } catch (Exception e) {
+            ServerLogger.logError("Error reading history page for " + client.getUserName() + ": " + e.getMessage(), e);
+            sink.discard();
+            return;
+        }
+        if (sink.cancelled) {
+            sink.discard();
+            ServerLogger.logInfo("History page for " + client.getUserName() + " cancelled, client left");
+            return;
+        }
+
+        // The header ends the page, a short page is the last one
+        sink.frames.add(SharedFrame.of(RecentHistory.formatPageHeader(sent < limit ? 0 : sink.firstId)));
+        sink.flush();
+    }
+
+    /**
+     * Turns streamed rows into history lines and hands them to the client a chunk at a time,
+     * waiting between chunks until the client has read most of what it was sent.
+     */
+    private static final class PageSink implements MessageSink {
+        private final ClientHandler client;
+        private final List<SharedFrame> frames = new ArrayList<>(ServerConstants.HISTORY_FETCH_SIZE + 1);
+        private long firstId = 0;
+        private boolean cancelled = false;
+
+        PageSink(ClientHandler client) {
+            this.client = client;
+        }
+
+        @Override
+        public boolean accept(Message message) {
+            if (firstId == 0) {
+                firstId = message.id();
+            }
+            frames.add(SharedFrame.of(RecentHistory.formatLine(message.timestamp(), message.sender(), message.content())));
+            return true;
+        }
+
+        @Override
+        public boolean endOfChunk() {
+            flush();
+            cancelled = !client.awaitOutboundDrained();
+            return !cancelled;
+        }
+
+        void flush() {
+            try {
+                client.sendFrames(frames);
+            } finally {
+                discard();
+            }
+        }
+
+        void discard() {
+            frames.forEach(SharedFrame::release);
+            frames.clear();
+        }
+    }
+}
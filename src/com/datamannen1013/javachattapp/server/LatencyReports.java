@@ -0,0 +1,55 @@
+package com.datamannen1013.javachattapp.server;
+
+import com.datamannen1013.javachattapp.protocol.TraceHeader;
+import com.datamannen1013.javachattapp.server.logger.ClassLogger;
+import com.datamannen1013.javachattapp.server.logger.ServerLogger;
+import com.datamannen1013.javachattapp.server.metrics.ServerMetrics;
+
+/**
+ * Takes the latency reports of tracing clients.
+ * A report is "/tracereport samples=n span=p50/p99/p999 ..." with the spans in microseconds,
+ * measured by the client from the stamps of the traced messages it rendered. Every report is
+ * logged, and the end-to-end percentiles go into histograms so they show up in the metrics report.
+ */
+public class LatencyReports {
+    private static final ClassLogger LOG = ServerLogger.forClass(LatencyReports.class);
+    private static final String END_TO_END_SPAN = "endToEnd=";
+
+    private LatencyReports() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Handles a "/tracereport" line from a client.
+     * @param client The client that sent the report
+     * @param report The report line
+     */
+    public static void handleReport(ClientHandler client, String report) {
+        String fields = report.substring(TraceHeader.REPORT_PREFIX.length()).trim();
+        ServerMetrics.TRACE_REPORTS.increment();
+        LOG.logInfo("Latency report from {}: {}", client.getUserName(), fields);
+        for (String field : fields.split("\\s+")) {
+            if (field.startsWith(END_TO_END_SPAN)) {
+                recordEndToEnd(client, field.substring(END_TO_END_SPAN.length()));
+            }
+        }
+    }
+
+    // Private methods
+    private static void recordEndToEnd(ClientHandler client, String percentiles) {
+        String[] values = percentiles.split("/");
+        try {
+            ServerMetrics.TRACE_END_TO_END_P50.record(toNanos(values[0]));
+            if (values.length > 1) {
+                ServerMetrics.TRACE_END_TO_END_P99.record(toNanos(values[1]));
+            }
+        } catch (NumberFormatException e) {
+            LOG.logWarning("Ignoring malformed latency report from {}: {}", client.getUserName(), percentiles);
+        }
+    }
+
+    // Clients report microseconds, the histograms hold nanoseconds
+    private static long toNanos(String micros) {
+        return Long.parseLong(micros) * 1_000;
+    }
+}
@@ -0,0 +1,137 @@
+package com.datamannen1013.javachattapp.server;
+
+import com.datamannen1013.javachattapp.server.connection.SharedFrame;
+import com.datamannen1013.javachattapp.server.constants.ServerConstants;
+import com.datamannen1013.javachattapp.server.database.DatabaseManager;
+import com.datamannen1013.javachattapp.server.database.models.Message;
+import com.datamannen1013.javachattapp.server.database.models.SearchHit;
+import com.datamannen1013.javachattapp.server.database.models.SearchQuery;
+import com.datamannen1013.javachattapp.server.logger.ServerLogger;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves "/search" requests from the full-text index.
+ * A request is "/search [from:user] [after:yyyy-MM-dd] [before:yyyy-MM-dd] [page:cursor] terms".
+ * The reply is one "/searchresult" line per hit, best match first, then "/searchpage cursor";
+ * sending the same request with page:cursor gives the next page, a cursor of 0 means no more.
+ * Searches run on their own virtual threads, like history pages.
+ */
+public class MessageSearch {
+    private static final Executor EXECUTOR =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("search-", 0).factory());
+    private static final DateTimeFormatter RESULT_TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneOffset.UTC);
+
+    private MessageSearch() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Handles a "/search" line from a client.
+     * @param client The client that asked, the results are sent only to it
+     * @param request The request line
+     */
+    public static void handleRequest(ClientHandler client, String request) {
+        SearchQuery query;
+        try {
+            query = parse(request.substring(ServerConstants.SEARCH_REQUEST_PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            client.sendMessage(ServerConstants.SEARCH_RESULT_PREFIX + "Invalid search: " + e.getMessage());
+            return;
+        }
+        EXECUTOR.execute(() -> sendResults(client, query));
+    }
+
+    // Private methods
+    private static void sendResults(ClientHandler client, SearchQuery query) {
+        List<SearchHit> hits;
+        long start = System.nanoTime();
+        try {
+            hits = DatabaseManager.getInstance().getMessageStore().search(query);
+        } catch (UnsupportedOperationException e) {
+            client.sendMessage(ServerConstants.SEARCH_RESULT_PREFIX + "Search is not available on this server");
+            return;
+        } catch (Exception e) {
+            ServerLogger.logError("Search failed for " + client.getUserName() + ": " + e.getMessage(), e);
+            client.sendMessage(ServerConstants.SEARCH_RESULT_PREFIX + "Search failed");
+            return;
+        }
+        ServerLogger.logInfo("Search by " + client.getUserName() + " found " + hits.size() + " hits in "
+                + (System.nanoTime() - start) / 1000 + " us");
+
+        List<SharedFrame> frames = new ArrayList<>(hits.size() + 1);
+        for (SearchHit hit : hits) {
+            Message message = hit.message();
+            frames.add(SharedFrame.of(ServerConstants.SEARCH_RESULT_PREFIX + "["
+                    + RESULT_TIME_FORMAT.format(Instant.ofEpochMilli(message.timestamp())) + "] "
+                    + message.sender() + ": " + message.content()));
+        }
+        // A short page is the last one
+        SearchHit last = hits.size() < query.limit() ? null : hits.get(hits.size() - 1);
+        String cursor = last == null ? "0" : last.rank() + "," + last.message().id();
+        frames.add(SharedFrame.of(ServerConstants.SEARCH_PAGE_PREFIX + cursor));
+        try {
+            client.sendFrames(frames);
+        } finally {
+            frames.forEach(SharedFrame::release);
+        }
+    }
+
+    private static SearchQuery parse(String request) {
+        SearchQuery.Builder builder = new SearchQuery.Builder().limit(ServerConstants.SEARCH_PAGE_SIZE);
+        StringBuilder terms = new StringBuilder();
+        for (String token : request.trim().split("\\s+")) {
+            if (token.startsWith("from:") && token.length() > 5) {
+                builder.sender(token.substring(5));
+            } else if (token.startsWith("after:")) {
+                builder.from(parseDate(token.substring(6)));
+            } else if (token.startsWith("before:")) {
+                builder.to(parseDate(token.substring(7)));
+            } else if (token.startsWith("page:")) {
+                String[] cursor = token.substring(5).split(",");
+                try {
+                    builder.after(Double.parseDouble(cursor[0]), Long.parseLong(cursor[1]));
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    throw new IllegalArgumentException("bad page cursor");
+                }
+            } else if (!token.isEmpty()) {
+                appendTerm(terms, token);
+            }
+        }
+        if (terms.isEmpty()) {
+            throw new IllegalArgumentException("no search terms");
+        }
+        return builder.terms(terms.toString()).build();
+    }
+
+    // Every word is quoted so user input is never read as FTS5 syntax; a trailing * keeps prefix search
+    private static void appendTerm(StringBuilder terms, String token) {
+        boolean prefix = token.length() > 1 && token.endsWith("*");
+        String word = prefix ? token.substring(0, token.length() - 1) : token;
+        if (!terms.isEmpty()) {
+            terms.append(' ');
+        }
+        terms.append('"').append(word.replace("\"", "\"\"")).append('"');
+        if (prefix) {
+            terms.append('*');
+        }
+    }
+
+    // Start of the day, UTC, in epoch milliseconds
+    private static long parseDate(String date) {
+        try {
+            return LocalDate.parse(date).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("dates are yyyy-MM-dd");
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.datamannen1013.javachattapp.server;
+
+import com.datamannen1013.javachattapp.server.connection.SharedFrame;
+import com.datamannen1013.javachattapp.server.constants.ServerConstants;
+import com.datamannen1013.javachattapp.server.database.DatabaseManager;
+import com.datamannen1013.javachattapp.server.database.models.Message;
+import com.datamannen1013.javachattapp.server.jfr.HistoryReplayEvent;
+import com.datamannen1013.javachattapp.server.logger.ServerLogger;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ring of the last MESSAGE_HISTORY_LIMIT chat messages, kept as ready to send history lines.
+ * Loaded from the database once, then updated on every save, so a joining client gets
+ * its history in one bulk write without a database query. Each line is a SharedFrame,
+ * encoded the first time it is sent and reused for every later join.
+ * The replay tells the client the id of its oldest line, where scroll-back starts.
+ */
+public class RecentHistory {
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneOffset.UTC);
+
+    private final SharedFrame historyStart = SharedFrame.of(ServerConstants.CHAT_HISTORY_START);
+    private final SharedFrame historyEnd = SharedFrame.of(ServerConstants.CHAT_HISTORY_END);
+    private final SharedFrame[] lines;
+    private final long[] ids;
+    private final ReentrantLock lock = new ReentrantLock();
+    private int head;
+    private int size;
+
+    private RecentHistory(int capacity) {
+        this.lines = new SharedFrame[capacity];
+        this.ids = new long[capacity];
+    }
+
+    // Loaded on first use, ChatServer touches it at startup
+    private static final class Holder {
+        private static final RecentHistory INSTANCE = load();
+    }
+
+    public static RecentHistory getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Adds a message that was just saved. Called in id order.
+     * @param message The message as stored, with its id and timestamp
+     */
+    public void record(Message message) {
+        // The database stores UTC timestamps and history has always shown them as is
+        add(message.id(), formatLine(message.timestamp(), message.sender(), message.content()));
+    }
+
+    /**
+     * Sends the history block, start and end markers included, to one client.
+     * @param client The client that just joined
+     */
+    public void replayTo(ClientHandler client) {
+        HistoryReplayEvent event = new HistoryReplayEvent();
+        event.begin();
+        List<SharedFrame> frames = new ArrayList<>(lines.length + 3);
+        frames.add(historyStart);
+        lock.lock();
+        try {
+            for (int i = 0; i < size; i++) {
+                // Retained so a concurrent record() cannot recycle the line before it is queued
+                frames.add(lines[(head + i) % lines.length].retain());
+            }
+            // Like a scroll-back page, the header follows the lines
+            if (size > 0) {
+                frames.add(SharedFrame.of(formatPageHeader(ids[head])));
+            }
+        } finally {
+            lock.unlock();
+        }
+        frames.add(historyEnd);
+
+        try {
+            client.sendFrames(frames);
+        } finally {
+            for (int i = 1; i < frames.size() - 1; i++) {
+                frames.get(i).release();
+            }
+        }
+        if (event.shouldCommit()) {
+            int length = 0;
+            for (SharedFrame frame : frames) {
+                length += frame.text().length();
+            }
+            event.user = client.getUserName();
+            event.messageCount = frames.size() > 2 ? frames.size() - 3 : 0; // Markers and page header
+            event.messageLength = length;
+            event.commit();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Private methods
+    private static RecentHistory load() {
+        RecentHistory history = new RecentHistory(ServerConstants.MESSAGE_HISTORY_LIMIT);
+        try {
+            // Streamed oldest first, the order the ring wants
+            DatabaseManager.getInstance().getMessageStore().streamBefore(Long.MAX_VALUE, ServerConstants.MESSAGE_HISTORY_LIMIT,
+                    ServerConstants.HISTORY_FETCH_SIZE, message -> {
+                        history.add(message.id(), formatLine(message.timestamp(), message.sender(), message.content()));
+                        return true;
+                    });
+            ServerLogger.logInfo("Loaded " + history.size() + " history messages from database");
+        } catch (Exception e) {
+            ServerLogger.logError("Error loading message history, starting empty: " + e.getMessage(), e);
+        }
+        return history;
+    }
+
+    private void add(long id, String line) {
+        SharedFrame frame = SharedFrame.of(line);
+        SharedFrame evicted = null;
+        lock.lock();
+        try {
+            if (size == lines.length) {
+                evicted = lines[head];
+                lines[head] = frame;
+                ids[head] = id;
+                head = (head + 1) % lines.length;
+            } else {
+                int tail = (head + size) % lines.length;
+                lines[tail] = frame;
+                ids[tail] = id;
+                size++;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (evicted != null) {
+            evicted.release();
+        }
+    }
+
+    static String formatLine(long timestamp, String sender, String content) {
+        return ServerConstants.SERVER_HISTORY_MESSAGE_PREFIX + "[" + TIME_FORMAT.format(Instant.ofEpochMilli(timestamp)) + "] "
+                + sender + ": " + content;
+    }
+
+    /**
+     * @param nextBeforeId Id the client asks for older messages with, 0 if there are none
+     */
+    static String formatPageHeader(long nextBeforeId) {
+        return ServerConstants.HISTORY_PAGE_PREFIX + nextBeforeId;
+    }
+}
@@ -14,4 +14,13 @@ public class ServerMessageHandler {
                 message.equals(ServerConstants.CHAT_HISTORY_END) ||
                 message.startsWith(ServerConstants.CLIENT_DISCONNECT_PREFIX);
     }
+
+    /**
+     * Messages that only describe current state can replace an older queued copy of themselves.
+     * @return The kind of the message for coalescing, or null if the message must be delivered as is
+     */
+    public static String coalesceKey(String message) {
+        return message.startsWith(ServerConstants.ONLINE_USERS_MESSAGE_PREFIX) ?
+                ServerConstants.ONLINE_USERS_MESSAGE_PREFIX : null;
+    }
 }
@@ -0,0 +1,18 @@
+package com.datamannen1013.javachattapp.server.connection;
+
+import java.io.IOException;
+
+/**
+ * Transport whose lines are pulled by the thread serving the client, as in the
+ * thread-per-client server modes. Event driven transports push lines to
+ * ClientHandler.onMessage instead and only implement ClientConnection.
+ */
+public interface BlockingClientConnection extends ClientConnection {
+
+    /**
+     * Reads the next line from the client, blocking until one is available.
+     * @return The next line, or null when the client closed the connection
+     * @throws IOException If reading from the connection fails
+     */
+    String readLine() throws IOException;
+}
@@ -0,0 +1,107 @@
+package com.datamannen1013.javachattapp.server.connection;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Transport used by a ClientHandler to talk to its client.
+ * Every implementation speaks the same line based protocol, so the handler
+ * does not need to know whether it runs on a blocking socket or an event loop.
+ */
+public interface ClientConnection {
+
+    /**
+     * Sends a single protocol line to the client.
+     * @param line The line to send, without line terminator
+     */
+    default void writeLine(String line) {
+        SharedFrame frame = SharedFrame.of(line);
+        try {
+            writeFrame(frame);
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * Sends a line that was already encoded, possibly for many clients at once.
+     * The connection retains the frame while it is queued and releases it once written.
+     * @param frame The encoded line
+     */
+    void writeFrame(SharedFrame frame);
+
+    /**
+     * Sends several encoded lines in one go, so they can reach the client in a single write.
+     * @param frames The encoded lines, in order, still owned by the caller
+     */
+    default void writeFrames(List<SharedFrame> frames) {
+        for (SharedFrame frame : frames) {
+            writeFrame(frame);
+        }
+    }
+
+    /**
+     * Switches both directions to length-prefixed binary frames, see BinaryFraming.
+     * The acknowledgement goes out as text before anything queued after this call.
+     * @return false if the transport only speaks the text protocol
+     */
+    default boolean enableBinaryFraming() {
+        return false;
+    }
+
+    /**
+     * Waits while more than highWaterMark lines are queued for the client, so a producer of
+     * many lines goes no faster than the client reads. Returns at once when the connection closes.
+     * @throws InterruptedException If interrupted while waiting
+     */
+    default void awaitOutboundBelow(int highWaterMark) throws InterruptedException {
+    }
+
+    /**
+     * Stops taking input from the client until resumeWhen is true, for transports whose thread
+     * serves other clients too and must not wait. Called on that thread while a line is handled.
+     * @param resumeWhen Checked on the transport's own thread
+     * @return false if the transport cannot pause reading, the caller then has to wait itself
+     */
+    default boolean pauseReading(BooleanSupplier resumeWhen) {
+        return false;
+    }
+
+    /**
+     * @return Number of lines queued for the client and not yet written
+     */
+    default int getQueuedLineCount() {
+        return 0;
+    }
+
+    /**
+     * @return Bytes read from the client so far, including framing
+     */
+    default long getBytesRead() {
+        return 0;
+    }
+
+    /**
+     * @return Bytes written to the client so far, including framing
+     */
+    default long getBytesWritten() {
+        return 0;
+    }
+
+    /**
+     * @return true while the connection can still be written to
+     */
+    boolean isOpen();
+
+    /**
+     * Pushes any buffered output towards the client.
+     */
+    void flush();
+
+    /**
+     * Closes the connection, giving already written lines a chance to reach the client.
+     * @throws IOException If the underlying channel cannot be closed
+     */
+    void close() throws IOException;
+}
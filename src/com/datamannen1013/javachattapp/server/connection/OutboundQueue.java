@@ -0,0 +1,261 @@
+package com.datamannen1013.javachattapp.server.connection;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded ring of lines waiting to be written to one client.
+ * Producers never block: when the ring is full the overflow policy decides what happens.
+ * A single writer drains it, either a dedicated writer thread or an event loop.
+ * Items the queue throws away, through the overflow policy or clear(), are handed
+ * to a discard callback so reference counted items can be released.
+ * @param <T> The queued item, a line or its encoded bytes
+ */
+public final class OutboundQueue<T> {
+
+    /**
+     * Outcome of offering an item to the queue
+     */
+    public enum OfferResult {
+        ACCEPTED,
+        DROPPED_OLDEST,
+        COALESCED,
+        REJECTED
+    }
+
+    private final Object[] items;
+    private final String[] keys;
+    private final OverflowPolicy policy;
+    private final Consumer<? super T> onDiscard;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+    private int head;
+    private int size;
+    private boolean closed;
+    private long droppedCount;
+
+    public OutboundQueue(int capacity, OverflowPolicy policy) {
+        this(capacity, policy, item -> { });
+    }
+
+    /**
+     * @param onDiscard Called, with the lock held, for every item dropped without being drained
+     */
+    public OutboundQueue(int capacity, OverflowPolicy policy, Consumer<? super T> onDiscard) {
+        this.items = new Object[capacity];
+        this.keys = new String[capacity];
+        this.policy = policy;
+        this.onDiscard = onDiscard;
+    }
+
+    /**
+     * Adds an item without blocking.
+     * @param item The item to queue
+     * @param coalesceKey Kind of the item for the COALESCE policy, null if it must never be replaced
+     * @return How the item was handled, REJECTED if the queue is closed or the policy is DISCONNECT
+     */
+    public OfferResult offer(T item, String coalesceKey) {
+        lock.lock();
+        try {
+            return offerLocked(item, coalesceKey);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds several items under one lock, so the writer wakes up once and drains them together.
+     * Stops at the first item that is rejected.
+     * @param items The items to queue, in order
+     * @param coalesceKey Gives the kind of an item for the COALESCE policy
+     * @return The number of items the queue took, items from this index on were not queued
+     */
+    public int offerAll(List<? extends T> items, Function<? super T, String> coalesceKey) {
+        lock.lock();
+        try {
+            for (int i = 0; i < items.size(); i++) {
+                T item = items.get(i);
+                if (offerLocked(item, coalesceKey.apply(item)) == OfferResult.REJECTED) {
+                    return i;
+                }
+            }
+            return items.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves up to max queued items into the sink without blocking.
+     * @return The number of items moved
+     */
+    public int drainTo(Collection<? super T> sink, int max) {
+        lock.lock();
+        try {
+            return drainLocked(sink, max);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until at least one item is queued, then moves up to max items into the sink.
+     * @return The number of items moved, or -1 once the queue is closed and empty
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public int awaitDrainTo(Collection<? super T> sink, int max) throws InterruptedException {
+        lock.lock();
+        try {
+            while (size == 0) {
+                if (closed) {
+                    return -1;
+                }
+                notEmpty.await();
+            }
+            return drainLocked(sink, max);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits while more than highWaterMark items are queued.
+     * Lets a reader hold back input from a client until its own output has caught up.
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void awaitBelow(int highWaterMark) throws InterruptedException {
+        lock.lock();
+        try {
+            while (size > highWaterMark && !closed) {
+                drained.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting items. Items already queued can still be drained.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            drained.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            while (size > 0) {
+                discard(removeOldest());
+            }
+            drained.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return How many items the overflow policy has discarded so far
+     */
+    public long getDroppedCount() {
+        lock.lock();
+        try {
+            return droppedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Private methods - callers hold the lock
+    private OfferResult offerLocked(T item, String coalesceKey) {
+        if (closed) {
+            return OfferResult.REJECTED;
+        }
+        OfferResult result = OfferResult.ACCEPTED;
+        if (size == items.length) {
+            if (policy == OverflowPolicy.DISCONNECT) {
+                return OfferResult.REJECTED;
+            }
+            if (policy == OverflowPolicy.COALESCE && replaceLatest(item, coalesceKey)) {
+                return OfferResult.COALESCED;
+            }
+            discard(removeOldest());
+            droppedCount++;
+            result = OfferResult.DROPPED_OLDEST;
+        }
+        int tail = (head + size) % items.length;
+        items[tail] = item;
+        keys[tail] = coalesceKey;
+        size++;
+        notEmpty.signal();
+        return result;
+    }
+
+    private int drainLocked(Collection<? super T> sink, int max) {
+        int count = 0;
+        while (size > 0 && count < max) {
+            sink.add(removeOldest());
+            count++;
+        }
+        if (count > 0) {
+            drained.signalAll();
+        }
+        return count;
+    }
+
+    private T removeOldest() {
+        @SuppressWarnings("unchecked")
+        T item = (T) items[head];
+        items[head] = null;
+        keys[head] = null;
+        head = (head + 1) % items.length;
+        size--;
+        return item;
+    }
+
+    private void discard(T item) {
+        onDiscard.accept(item);
+    }
+
+    private boolean replaceLatest(T item, String coalesceKey) {
+        if (coalesceKey == null) {
+            return false;
+        }
+        for (int i = size - 1; i >= 0; i--) {
+            int index = (head + i) % items.length;
+            if (Objects.equals(keys[index], coalesceKey)) {
+                @SuppressWarnings("unchecked")
+                T replaced = (T) items[index];
+                items[index] = item;
+                discard(replaced);
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,26 @@
+package com.datamannen1013.javachattapp.server.connection;
+
+import com.datamannen1013.javachattapp.server.constants.ServerConstants;
+
+/**
+ * What a connection does when its outbound queue is full because the client reads too slowly.
+ */
+public enum OverflowPolicy {
+    /** Discard the oldest queued line to make room for the new one */
+    DROP_OLDEST,
+    /** Replace a queued line of the same kind (e.g. an older online users list), otherwise drop the oldest */
+    COALESCE,
+    /** Give up on the client and close the connection */
+    DISCONNECT;
+
+    /**
+     * @return The policy selected with -Dchat.outbound.overflowPolicy, DISCONNECT if unset or unknown
+     */
+    public static OverflowPolicy configured() {
+        try {
+            return valueOf(ServerConstants.OUTBOUND_OVERFLOW_POLICY.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return DISCONNECT;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.datamannen1013.javachattapp.server.connection;
+
+import com.datamannen1013.javachattapp.protocol.BinaryFraming;
+import com.datamannen1013.javachattapp.protocol.FrameType;
+import com.datamannen1013.javachattapp.protocol.WireFormat;
+import com.datamannen1013.javachattapp.server.metrics.ServerMetrics;
+import com.datamannen1013.javachattapp.server.nio.BufferPool;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * One protocol line, encoded once per wire format and shared by every connection it is sent to.
+ * Each encoding is made by the first writer that needs it and lives in a pooled direct
+ * buffer that is never modified afterwards; connections read it through their own views.
+ * The buffers go back to their pools when the last holder releases the frame.
+ */
+public final class SharedFrame {
+    // Size classes for pooled frame buffers, larger frames get a buffer of their own
+    private static final int[] SIZE_CLASSES = {512, 4 * 1024, 64 * 1024 + 1};
+    private static final int[] POOLED_PER_CLASS = {4096, 1024, 64};
+    private static final BufferPool[] POOLS = new BufferPool[SIZE_CLASSES.length];
+    private static final ThreadLocal<CharsetEncoder> ENCODER =
+            ThreadLocal.withInitial(StandardCharsets.UTF_8::newEncoder);
+
+    static {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            POOLS[i] = new BufferPool(SIZE_CLASSES[i], POOLED_PER_CLASS[i]);
+        }
+    }
+
+    private final String text;
+    private final long receivedNanos;
+    private final AtomicReferenceArray<ByteBuffer> encoded = new AtomicReferenceArray<>(WireFormat.values().length);
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    private SharedFrame(String text, long receivedNanos) {
+        this.text = text;
+        this.receivedNanos = receivedNanos;
+    }
+
+    /**
+     * Wraps a line for sending. Nothing is encoded until a connection asks for a format.
+     * The caller owns the single reference of the new frame and must release it.
+     * @param line The line to send, without line terminator
+     * @return The new frame
+     */
+    public static SharedFrame of(String line) {
+        return new SharedFrame(line, 0);
+    }
+
+    /**
+     * Wraps a line received from a client. The last release, once every recipient has
+     * written the frame, records the time since receipt in the delivery latency metric.
+     * @param line The line to send, without line terminator
+     * @param receivedNanos System.nanoTime when the line was read, 0 if unknown
+     * @return The new frame
+     */
+    public static SharedFrame of(String line, long receivedNanos) {
+        return new SharedFrame(line, receivedNanos);
+    }
+
+    /**
+     * @return The line this frame was encoded from, without line terminator
+     */
+    public String text() {
+        return text;
+    }
+
+    /**
+     * @return Number of encoded bytes in the given format, including framing
+     */
+    public int length(WireFormat format) {
+        return bytes(format).limit();
+    }
+
+    /**
+     * Copies part of the encoded bytes without touching any shared position.
+     * @param format Wire format to copy
+     * @param offset Offset into the frame
+     * @param destination Array to copy into
+     * @param destinationOffset Offset into the array
+     * @param length Number of bytes to copy
+     */
+    public void copyTo(WireFormat format, int offset, byte[] destination, int destinationOffset, int length) {
+        bytes(format).get(offset, destination, destinationOffset, length);
+    }
+
+    /**
+     * @return A read-only view of the encoded bytes with its own position, for channel writes
+     */
+    public ByteBuffer view(WireFormat format) {
+        return bytes(format).asReadOnlyBuffer();
+    }
+
+    /**
+     * Adds a reference, called by every connection that queues the frame.
+     * @return This frame
+     */
+    public SharedFrame retain() {
+        if (refCount.getAndIncrement() <= 0) {
+            refCount.getAndDecrement();
+            throw new IllegalStateException("Frame already released");
+        }
+        return this;
+    }
+
+    /**
+     * Drops a reference. The last release returns the buffers to their pools.
+     */
+    public void release() {
+        int remaining = refCount.decrementAndGet();
+        if (remaining == 0) {
+            if (receivedNanos != 0) {
+                ServerMetrics.RECEIVE_TO_LAST_DELIVERY.record(System.nanoTime() - receivedNanos);
+            }
+            for (int i = 0; i < encoded.length(); i++) {
+                ByteBuffer buffer = encoded.getAndSet(i, null);
+                if (buffer != null) {
+                    recycle(buffer);
+                }
+            }
+        } else if (remaining < 0) {
+            throw new IllegalStateException("Frame released too many times");
+        }
+    }
+
+    // Private methods - encoding
+    private ByteBuffer bytes(WireFormat format) {
+        ByteBuffer buffer = encoded.get(format.ordinal());
+        if (buffer == null) {
+            ByteBuffer created = format == WireFormat.BINARY ? encodeBinary(text) : encodeText(text);
+            if (encoded.compareAndSet(format.ordinal(), null, created)) {
+                buffer = created;
+            } else {
+                // Another writer encoded it first
+                recycle(created);
+                buffer = encoded.get(format.ordinal());
+            }
+        }
+        return buffer;
+    }
+
+    private static ByteBuffer encodeText(String line) {
+        // A newline inside a message would split it in two for a text client
+        String safeLine = line.indexOf('\n') < 0 && line.indexOf('\r') < 0 ? line : line.replace('\n', ' ').replace('\r', ' ');
+        ByteBuffer buffer = allocate(maxEncodedLength(safeLine.length()) + 1);
+        putUtf8(safeLine, 0, buffer);
+        buffer.put((byte) '\n');
+        return buffer.flip();
+    }
+
+    private static ByteBuffer encodeBinary(String line) {
+        FrameType type = FrameType.of(line);
+        int payloadStart = type.prefixLength();
+        ByteBuffer buffer = allocate(BinaryFraming.HEADER_LENGTH + maxEncodedLength(line.length() - payloadStart));
+        buffer.position(BinaryFraming.HEADER_LENGTH);
+        putUtf8(line, payloadStart, buffer);
+        buffer.put(0, type.code());
+        buffer.putInt(1, buffer.position() - BinaryFraming.HEADER_LENGTH);
+        return buffer.flip();
+    }
+
+    private static void putUtf8(String line, int start, ByteBuffer buffer) {
+        CharsetEncoder encoder = ENCODER.get().reset();
+        int position = buffer.position();
+        CoderResult result = encoder.encode(CharBuffer.wrap(line, start, line.length()), buffer, true);
+        if (result.isUnderflow()) {
+            result = encoder.flush(buffer);
+        }
+        if (!result.isUnderflow()) {
+            // Malformed input such as a lone surrogate, let the charset replace it
+            buffer.position(position);
+            buffer.put(line.substring(start).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static int maxEncodedLength(int chars) {
+        return (int) Math.ceil(chars * (double) ENCODER.get().maxBytesPerChar());
+    }
+
+    private static ByteBuffer allocate(int size) {
+        BufferPool pool = poolFor(size);
+        return pool != null ? pool.acquire() : ByteBuffer.allocateDirect(size);
+    }
+
+    private static void recycle(ByteBuffer buffer) {
+        BufferPool pool = poolFor(buffer.capacity());
+        if (pool != null) {
+            pool.release(buffer);
+        }
+    }
+
+    private static BufferPool poolFor(int size) {
+        for (BufferPool pool : POOLS) {
+            if (size <= pool.getBufferSize()) {
+                return pool;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,262 @@
+package com.datamannen1013.javachattapp.server.connection;
+
+import com.datamannen1013.javachattapp.protocol.BinaryFraming;
+import com.datamannen1013.javachattapp.protocol.FrameReader;
+import com.datamannen1013.javachattapp.protocol.WireFormat;
+import com.datamannen1013.javachattapp.server.ServerMessageHandler;
+import com.datamannen1013.javachattapp.server.constants.ServerConstants;
+import com.datamannen1013.javachattapp.server.logger.ServerLogger;
+import com.datamannen1013.javachattapp.server.metrics.ServerMetrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Blocking transport backed by a plain Socket.
+ * Used by the thread-per-client server modes. Lines are queued in a bounded
+ * OutboundQueue and written by a dedicated writer thread, so a client that reads
+ * slowly never blocks the thread that is broadcasting to it. The queued frames are
+ * shared with other connections, the writer copies their bytes straight into the
+ * socket stream without encoding them again.
+ */
+public class SocketConnection implements BlockingClientConnection {
+    private static final long CLOSE_TIMEOUT_MS = 1000;
+    private static final int WRITE_CHUNK_SIZE = 8 * 1024;
+
+    private final Socket socket;
+    private final CountingInputStream counter;
+    private final FrameReader in;
+    private final OutputStream out;
+    private final byte[] writeChunk = new byte[WRITE_CHUNK_SIZE];
+    private final OutboundQueue<SharedFrame> outbound;
+    private final Thread writer;
+    private volatile boolean closed = false;
+    private volatile long bytesWritten; // Written by the writer thread only
+
+    // Framing - the writer switches to binary once it has written the acknowledgement
+    private volatile boolean binaryInbound = false;
+    private volatile SharedFrame binarySwitch;
+    private WireFormat outboundFormat = WireFormat.TEXT;
+
+    public SocketConnection(Socket socket, ThreadFactory writerThreadFactory) throws IOException {
+        this.socket = socket;
+        this.counter = new CountingInputStream(socket.getInputStream());
+        this.in = new FrameReader(counter, ServerConstants.MAX_LINE_LENGTH);
+        this.out = socket.getOutputStream();
+        this.outbound = new OutboundQueue<>(ServerConstants.OUTBOUND_QUEUE_CAPACITY, OverflowPolicy.configured(),
+                SharedFrame::release);
+        this.writer = writerThreadFactory.newThread(this::drainOutbound);
+        writer.start();
+    }
+
+    @Override
+    public String readLine() throws IOException {
+        // Backpressure: don't take more input from a client whose own output is backed up
+        try {
+            outbound.awaitBelow(ServerConstants.OUTBOUND_QUEUE_CAPACITY / 2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for outbound queue");
+        }
+        return binaryInbound ? in.readFrame() : in.readLine();
+    }
+
+    @Override
+    public void writeFrames(List<SharedFrame> frames) {
+        if (closed || socket.isClosed()) {
+            ServerLogger.logWarning("Socket is closed, cannot send message");
+            return;
+        }
+        frames.forEach(SharedFrame::retain);
+        int queued = outbound.offerAll(frames, frame -> ServerMessageHandler.coalesceKey(frame.text()));
+        if (queued < frames.size()) {
+            frames.subList(queued, frames.size()).forEach(SharedFrame::release);
+            ServerLogger.logWarning("Outbound queue full, disconnecting slow client: " + socket);
+            abort();
+        }
+    }
+
+    @Override
+    public boolean enableBinaryFraming() {
+        SharedFrame acknowledgement = SharedFrame.of(BinaryFraming.ACKNOWLEDGEMENT);
+        binarySwitch = acknowledgement;
+        writeFrame(acknowledgement);
+        acknowledgement.release();
+        binaryInbound = true;
+        return true;
+    }
+
+    @Override
+    public void writeFrame(SharedFrame frame) {
+        if (closed || socket.isClosed()) {
+            ServerLogger.logWarning("Socket is closed, cannot send message");
+            return;
+        }
+        OutboundQueue.OfferResult result = outbound.offer(frame.retain(), ServerMessageHandler.coalesceKey(frame.text()));
+        if (result == OutboundQueue.OfferResult.REJECTED) {
+            frame.release();
+            ServerLogger.logWarning("Outbound queue full, disconnecting slow client: " + socket);
+            abort();
+        }
+    }
+
+    @Override
+    public void awaitOutboundBelow(int highWaterMark) throws InterruptedException {
+        outbound.awaitBelow(highWaterMark);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed && !socket.isClosed();
+    }
+
+    @Override
+    public void flush() {
+        // The writer flushes after every batch it drains
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        // Let the writer deliver what is already queued before the socket goes away
+        outbound.close();
+        try {
+            writer.join(CLOSE_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        out.close();
+        socket.close();
+    }
+
+    @Override
+    public int getQueuedLineCount() {
+        return outbound.size();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return counter.count;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    // Private methods
+    private void drainOutbound() {
+        ArrayDeque<SharedFrame> batch = new ArrayDeque<>(ServerConstants.OUTBOUND_WRITE_BATCH);
+        try {
+            while (outbound.awaitDrainTo(batch, ServerConstants.OUTBOUND_WRITE_BATCH) >= 0) {
+                writeBatch(batch);
+            }
+        } catch (IOException e) {
+            ServerLogger.logWarning("Error writing to client, closing: " + e.getMessage());
+            abort();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            batch.forEach(SharedFrame::release);
+        }
+    }
+
+    /**
+     * Writes a batch of frames in as few socket writes as possible, filling the
+     * chunk buffer from the shared frames and sending it whenever it is full.
+     */
+    private void writeBatch(ArrayDeque<SharedFrame> batch) throws IOException {
+        int chunked = 0;
+        long written = 0;
+        while (!batch.isEmpty()) {
+            SharedFrame frame = batch.peekFirst();
+            int frameLength = frame.length(outboundFormat);
+            written += frameLength;
+            int offset = 0;
+            while (offset < frameLength) {
+                if (chunked == writeChunk.length) {
+                    out.write(writeChunk, 0, chunked);
+                    chunked = 0;
+                }
+                int length = Math.min(frameLength - offset, writeChunk.length - chunked);
+                frame.copyTo(outboundFormat, offset, writeChunk, chunked, length);
+                offset += length;
+                chunked += length;
+            }
+            batch.pollFirst().release();
+            if (frame == binarySwitch) {
+                outboundFormat = WireFormat.BINARY;
+            }
+        }
+        if (chunked > 0) {
+            out.write(writeChunk, 0, chunked);
+        }
+        out.flush();
+        bytesWritten += written;
+        ServerMetrics.BYTES_OUT.add(written);
+    }
+
+    /**
+     * Closes the socket without waiting for queued lines. The blocked reader fails,
+     * which makes the client handler run its normal disconnect.
+     */
+    private void abort() {
+        closed = true;
+        outbound.close();
+        outbound.clear();
+        try {
+            socket.close();
+        } catch (IOException e) {
+            ServerLogger.logError("Error closing socket: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return socket.toString();
+    }
+
+    // Counts what the reader takes off the socket, only the client's reading thread touches it
+    private static final class CountingInputStream extends FilterInputStream {
+        private volatile long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                counted(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read > 0) {
+                counted(read);
+            }
+            return read;
+        }
+
+        private void counted(int bytes) {
+            count += bytes;
+            ServerMetrics.BYTES_IN.add(bytes);
+        }
+    }
+}
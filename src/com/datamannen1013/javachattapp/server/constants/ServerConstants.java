@@ -12,6 +12,32 @@ public class ServerConstants {
     // Constants for server address and port
     public static final int SERVER_PORT = 5000;
 
+    // Server execution mode, selected with -Dchat.server.mode=<mode>
+    public static final String SERVER_MODE_PROPERTY = "chat.server.mode";
+    public static final String SERVER_MODE_THREAD = "thread"; // One platform thread per client (default)
+    public static final String SERVER_MODE_VIRTUAL = "virtual"; // One virtual thread per client
+    public static final String SERVER_MODE_NIO = "nio"; // Selector based event loops
+
+    // NIO event loop settings
+    public static final String NIO_EVENT_LOOPS_PROPERTY = "chat.nio.eventLoops";
+    public static final int NIO_EVENT_LOOPS = Integer.getInteger(NIO_EVENT_LOOPS_PROPERTY,
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    public static final int NIO_BUFFER_SIZE = 16 * 1024; // Size of each pooled direct buffer
+    public static final int NIO_MAX_POOLED_BUFFERS = 1024; // Buffers kept for reuse, extra ones are left to the GC
+    public static final int MAX_LINE_LENGTH = 64 * 1024; // Longest line accepted from a client
+
+    // Outbound queue per client, see OverflowPolicy for the accepted policy names
+    public static final int OUTBOUND_QUEUE_CAPACITY = Integer.getInteger("chat.outbound.capacity", 1024);
+    public static final String OUTBOUND_OVERFLOW_POLICY = System.getProperty("chat.outbound.overflowPolicy", "DISCONNECT");
+    public static final int OUTBOUND_WRITE_BATCH = 64; // Lines written before each flush
+
+    // Join handshake, a connection must send its join line within the timeout
+    public static final long HANDSHAKE_TIMEOUT_MS = Long.getLong("chat.handshake.timeoutMs", 10_000);
+    public static final int MAX_PENDING_HANDSHAKES = Integer.getInteger("chat.handshake.maxPending", 256);
+
+    // Broadcast fan-out, slots in the dispatcher ring shared by all publishing clients
+    public static final int BROADCAST_RING_SIZE = Integer.getInteger("chat.broadcast.ringSize", 4096);
+
     // Command prefixes for handling specific message types
     @SuppressWarnings("SpellCheckingInspection") //Correct spelling in this spesific case
     public static final String ONLINE_USERS_MESSAGE_PREFIX = "/onlineusers ";
@@ -24,31 +50,134 @@ public class ServerConstants {
     @SuppressWarnings("SpellCheckingInspection") //Correct spelling in this spesific case
     public static final String SERVER_SHUTDOWN_MESSAGE = "/serverclose";
     public static final String SERVER_HISTORY_MESSAGE_PREFIX = "/history ";
+    // Scroll-back, a client asks for "/historybefore <id> <limit>" and gets "/historypage <next id>" then the lines
+    public static final String HISTORY_BEFORE_REQUEST_PREFIX = "/historybefore ";
+    public static final String HISTORY_PAGE_PREFIX = "/historypage ";
+    public static final int MAX_HISTORY_PAGE_SIZE = Integer.getInteger("chat.history.maxPageSize", 200);
+    // Rows read per query while streaming history, also the most a stream holds in memory
+    public static final int HISTORY_FETCH_SIZE = Integer.getInteger("chat.history.fetchSize", 100);
+    // Search, "/search [from:user] [after:yyyy-MM-dd] [before:yyyy-MM-dd] [page:cursor] terms"
+    public static final String SEARCH_REQUEST_PREFIX = "/search ";
+    public static final String SEARCH_RESULT_PREFIX = "/searchresult ";
+    public static final String SEARCH_PAGE_PREFIX = "/searchpage ";
+    public static final int SEARCH_PAGE_SIZE = Integer.getInteger("chat.search.pageSize", 20);
+    public static final String MESSAGE_NOT_SAVED_NOTICE = "Your last message could not be saved and will be missing from history.";
 
     // Database constants
     public static final int MESSAGE_HISTORY_LIMIT = 50; // Number of recent messages to load
-    public static final String DATABASE_URL = "jdbc:sqlite:chat.db";
+    public static final String DATABASE_URL = System.getProperty("chat.db.url", "jdbc:sqlite:chat.db"); // -Dchat.db.url points the server at another database file
+    // Connection pool, every pooled connection keeps its own prepared statement cache
+    public static final int DB_POOL_SIZE = Integer.getInteger("chat.db.pool.size", 4);
+    public static final long DB_POOL_MAX_WAIT_MS = Long.getLong("chat.db.pool.maxWaitMs", 5_000);
+    public static final long DB_POOL_VALIDATION_INTERVAL_MS = Long.getLong("chat.db.pool.validationIntervalMs", 30_000);
+    public static final int DB_STATEMENT_CACHE_SIZE = Integer.getInteger("chat.db.statementCacheSize", 32);
+    // SQLite settings applied once to every new connection
+    public static final int DB_BUSY_TIMEOUT_MS = Integer.getInteger("chat.db.busyTimeoutMs", 5_000);
+    public static final String DB_JOURNAL_MODE = System.getProperty("chat.db.journalMode", "WAL");
+    // Write-behind persistence, messages are committed in groups off the reader threads
+    public static final String DB_DURABILITY = System.getProperty("chat.db.durability", "BATCHED");
+    public static final int DB_WRITE_QUEUE_CAPACITY = Integer.getInteger("chat.db.writeQueueCapacity", 8192);
+    public static final int DB_WRITE_BATCH_SIZE = Integer.getInteger("chat.db.writeBatchSize", 256);
+    public static final long DB_WRITE_MAX_DELAY_MS = Long.getLong("chat.db.writeMaxDelayMs", 5);
+    // Message store, "sqlite" or "log" for the memory-mapped segment log
+    public static final String MESSAGE_STORE = System.getProperty("chat.store", "sqlite");
+    public static final String LOG_STORE_DIRECTORY = System.getProperty("chat.store.log.dir", "chat-log");
+    public static final int LOG_SEGMENT_BYTES = Integer.getInteger("chat.store.log.segmentBytes", 64 * 1024 * 1024);
+    public static final int LOG_INDEX_INTERVAL = Integer.getInteger("chat.store.log.indexInterval", 64);
+    // Retention, old messages move from the messages table into compressed archive files; 0 keeps them forever
+    public static final int RETENTION_MAX_AGE_DAYS = Integer.getInteger("chat.retention.maxAgeDays", 0);
+    public static final long RETENTION_MAX_ROWS = Long.getLong("chat.retention.maxRows", 0);
+    public static final long RETENTION_INTERVAL_MS = Long.getLong("chat.retention.intervalMs", 60_000);
+    public static final int RETENTION_ARCHIVE_ROWS = Integer.getInteger("chat.retention.archiveRows", 10_000); // Messages per archive file
+    public static final int RETENTION_BATCH_SIZE = Integer.getInteger("chat.retention.batchSize", 500); // Messages per delete transaction
+    public static final long RETENTION_LOCK_WAIT_MS = 100; // Longest a delete waits for history pages in flight
+    public static final String ARCHIVE_DIRECTORY = System.getProperty("chat.archive.dir", "chat-archive");
+    public static final int ARCHIVE_CACHE_FILES = Integer.getInteger("chat.archive.cacheFiles", 4);
+    // Metrics, always logged on shutdown and every interval while running; 0 logs them on shutdown only
+    public static final long METRICS_LOG_INTERVAL_MS = Long.getLong("chat.metrics.logIntervalMs", 0);
 
-    //Message database
+    //Message database, timestamps are epoch milliseconds and senders reference users
+    public static final int SCHEMA_VERSION = 2;
     public static final String CREATE_MESSAGES_TABLE =
             "CREATE TABLE IF NOT EXISTS messages (" +
                     "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                    "username TEXT NOT NULL, " +
+                    "sender_id INTEGER NOT NULL REFERENCES users (id), " +
                     "message TEXT NOT NULL, " +
-                    "timestamp DATETIME DEFAULT CURRENT_TIMESTAMP)";
+                    "timestamp INTEGER NOT NULL)";
     public static final String INSERT_MESSAGE =
-            "INSERT INTO messages (username, message) VALUES (?, ?)";
+            "INSERT INTO messages (sender_id, message, timestamp) VALUES (?, ?, ?)";
+    public static final String CREATE_MESSAGES_TIMESTAMP_INDEX =
+            "CREATE INDEX IF NOT EXISTS idx_messages_timestamp_id ON messages (timestamp, id)";
+    // Every message query reads these columns, with the sender's name
+    private static final String SELECT_MESSAGES =
+            "SELECT m.id, u.username, m.message, m.timestamp FROM messages m " +
+                    "JOIN users u ON u.id = m.sender_id ";
     public static final String GET_RECENT_MESSAGES =
-            "SELECT * FROM messages " +
-                    "ORDER BY timestamp DESC LIMIT ?";
+            SELECT_MESSAGES +
+                    "ORDER BY m.timestamp DESC, m.id DESC LIMIT ?";
+    // Keyset pages, ids grow with time so the primary key orders and bounds the page
+    public static final String GET_PAGE_START_ID =
+            "SELECT id FROM messages WHERE id < ? " +
+                    "ORDER BY id DESC LIMIT 1 OFFSET ?";
+    public static final String GET_MESSAGES_BETWEEN =
+            SELECT_MESSAGES + "WHERE m.id >= ? AND m.id < ? " +
+                    "ORDER BY m.id ASC LIMIT ?";
+    public static final String GET_LAST_INSERT_ID = "SELECT last_insert_rowid()";
+
+    // Full-text search, an external content FTS5 index over messages kept in sync by the write path
+    public static final String FTS_TABLE_EXISTS =
+            "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'messages_fts'";
+    public static final String CREATE_MESSAGES_FTS_TABLE =
+            "CREATE VIRTUAL TABLE IF NOT EXISTS messages_fts USING fts5(" +
+                    "message, content='messages', content_rowid='id')";
+    public static final String REBUILD_MESSAGES_FTS =
+            "INSERT INTO messages_fts(messages_fts) VALUES ('rebuild')";
+    public static final String INSERT_MESSAGE_FTS =
+            "INSERT INTO messages_fts (rowid, message) VALUES (?, ?)";
+    // Best match first, then newest; the page continues after the (rank, id) of the last hit
+    public static final String SEARCH_MESSAGES =
+            "SELECT * FROM (" +
+                    "SELECT m.id, u.username, m.message, m.timestamp, bm25(messages_fts) AS rank FROM messages_fts " +
+                    "JOIN messages m ON m.id = messages_fts.rowid " +
+                    "JOIN users u ON u.id = m.sender_id " +
+                    "WHERE messages_fts MATCH ? AND u.username = coalesce(?, u.username) " +
+                    "AND m.timestamp >= ? AND m.timestamp < ?) " +
+                    "WHERE rank > ? OR (rank = ? AND id < ?) " +
+                    "ORDER BY rank, id DESC LIMIT ?";
+
+    // Retention, archived messages leave both tables and are indexed in a contentless FTS5 table
+    public static final String COUNT_MESSAGES = "SELECT COUNT(*) FROM messages";
+    public static final String COUNT_MESSAGES_BETWEEN =
+            "SELECT COUNT(*) FROM (SELECT 1 FROM messages WHERE id > ? AND id < ? LIMIT ?)";
+    public static final String GET_OLDEST_MESSAGES =
+            SELECT_MESSAGES + "WHERE m.id <= ? ORDER BY m.id ASC LIMIT ?";
+    public static final String DELETE_MESSAGES_BETWEEN =
+            "DELETE FROM messages WHERE id >= ? AND id <= ?";
+    public static final String DELETE_MESSAGE_FTS =
+            "INSERT INTO messages_fts (messages_fts, rowid, message) VALUES ('delete', ?, ?)";
+    public static final String CREATE_ARCHIVE_FTS_TABLE =
+            "CREATE VIRTUAL TABLE IF NOT EXISTS messages_archive_fts USING fts5(message, content='')";
+    public static final String INSERT_ARCHIVE_FTS =
+            "INSERT INTO messages_archive_fts (rowid, message) VALUES (?, ?)";
+    public static final String SEARCH_ARCHIVED_MESSAGES =
+            "SELECT * FROM (" +
+                    "SELECT rowid AS id, bm25(messages_archive_fts) AS rank FROM messages_archive_fts " +
+                    "WHERE messages_archive_fts MATCH ?) " +
+                    "WHERE rank > ? OR (rank = ? AND id < ?) " +
+                    "ORDER BY rank, id DESC LIMIT ?";
 
-    // Users database
+    // Users database, every sender gets a row; password and email stay empty until registration exists
     public static final String CREATE_USERS_TABLE =
             "CREATE TABLE IF NOT EXISTS users (" +
                     "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
                     "username TEXT NOT NULL UNIQUE, " +
-                    "password_hash VARCHAR(255) NOT NULL, " +
-                    "email TEXT NOT NULL UNIQUE)";
+                    "password_hash VARCHAR(255), " +
+                    "email TEXT UNIQUE)";
+    public static final String INSERT_SENDER =
+            "INSERT OR IGNORE INTO users (username) VALUES (?)";
+    public static final String GET_USER_ID =
+            "SELECT id FROM users WHERE username = ?";
+
     @SuppressWarnings("unused") // Will be implemented
     public static final String INSERT_USER =
             "INSERT INTO users (username, password, email) VALUES (?, ?, ?)";
@@ -56,5 +185,36 @@ public class ServerConstants {
     public static final String GET_USER_BY_USERNAME =
             "SELECT * FROM users WHERE username = ?";
 
+    // Schema versions, kept in PRAGMA user_version; version 1 had text timestamps and sender names
+    public static final String GET_SCHEMA_VERSION = "PRAGMA user_version";
+    public static final String SET_SCHEMA_VERSION = "PRAGMA user_version = " + SCHEMA_VERSION;
+    public static final String IS_SCHEMA_V1 =
+            "SELECT 1 FROM pragma_table_info('messages') WHERE name = 'username'";
+    // Run in one transaction; ids are kept, so the search index and archive files stay valid
+    public static final String[] MIGRATE_SCHEMA_V1_TO_V2 = {
+            CREATE_USERS_TABLE,
+            "CREATE TABLE users_v2 (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "username TEXT NOT NULL UNIQUE, " +
+                    "password_hash VARCHAR(255), " +
+                    "email TEXT UNIQUE)",
+            "INSERT INTO users_v2 (id, username, password_hash, email) " +
+                    "SELECT id, username, password_hash, email FROM users",
+            "INSERT OR IGNORE INTO users_v2 (username) SELECT DISTINCT username FROM messages",
+            "DROP TABLE users",
+            "ALTER TABLE users_v2 RENAME TO users",
+            "CREATE TABLE messages_v2 (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "sender_id INTEGER NOT NULL REFERENCES users (id), " +
+                    "message TEXT NOT NULL, " +
+                    "timestamp INTEGER NOT NULL)",
+            // Version 1 stored CURRENT_TIMESTAMP, which is UTC text with whole seconds
+            "INSERT INTO messages_v2 (id, sender_id, message, timestamp) " +
+                    "SELECT m.id, u.id, m.message, coalesce(unixepoch(m.timestamp), 0) * 1000 " +
+                    "FROM messages m JOIN users u ON u.username = m.username",
+            "DROP TABLE messages",
+            "ALTER TABLE messages_v2 RENAME TO messages"
+    };
+
 
 }
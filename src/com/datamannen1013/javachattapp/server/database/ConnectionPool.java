@@ -0,0 +1,347 @@
+package com.datamannen1013.javachattapp.server.database;
+
+import com.datamannen1013.javachattapp.server.database.exceptions.ConnectionException;
+import com.datamannen1013.javachattapp.server.logger.ServerLogger;
+import com.datamannen1013.javachattapp.server.metrics.LatencyHistogram;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed size pool of JDBC connections with a prepared statement cache per connection.
+ * Callers use the returned Connection exactly like a plain one: closing it, or a
+ * statement prepared from it, hands it back to the pool instead of closing it.
+ * Every physical connection gets the SQLite settings once, when it is opened, and
+ * is checked with isValid() before reuse when it has been idle for a while.
+ */
+public class ConnectionPool {
+    private final String url;
+    private final int maxSize;
+    private final long maxWaitMillis;
+    private final long validationIntervalNanos;
+    private final int statementCacheSize;
+    private final int busyTimeoutMillis;
+    private final String journalMode;
+    private final String synchronous;
+
+    private final Semaphore permits;
+    private final Deque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private volatile boolean closed = false;
+
+    // Metrics
+    private final LatencyHistogram waitTime = new LatencyHistogram();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+
+    public ConnectionPool(String url, int maxSize, long maxWaitMillis, long validationIntervalMillis,
+                          int statementCacheSize, int busyTimeoutMillis, String journalMode,
+                          String synchronous) {
+        this.url = url;
+        this.maxSize = maxSize;
+        this.maxWaitMillis = maxWaitMillis;
+        this.validationIntervalNanos = TimeUnit.MILLISECONDS.toNanos(validationIntervalMillis);
+        this.statementCacheSize = statementCacheSize;
+        this.busyTimeoutMillis = busyTimeoutMillis;
+        this.journalMode = journalMode;
+        this.synchronous = synchronous;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Borrows a connection, waiting up to the configured max wait if all are in use.
+     * @return A connection that returns to the pool when closed
+     * @throws ConnectionException If no connection became free in time or a new one cannot be opened
+     */
+    public Connection getConnection() {
+        if (closed) {
+            throw new ConnectionException("Connection pool is closed", null);
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new ConnectionException("Timed out after " + maxWaitMillis
+                        + " ms waiting for a database connection", null);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectionException("Interrupted while waiting for a database connection", e);
+        }
+        waitTime.record(System.nanoTime() - start);
+
+        try {
+            PooledConnection pooled = takeHealthyIdle();
+            if (pooled == null) {
+                pooled = open();
+            }
+            activeCount.incrementAndGet();
+            return lease(pooled);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e instanceof ConnectionException connectionException ? connectionException
+                    : new ConnectionException("Failed to establish database connection", e);
+        }
+    }
+
+    /**
+     * Closes all idle connections and refuses new borrows.
+     * Connections still lent out are closed when they are returned.
+     */
+    public void close() {
+        closed = true;
+        PooledConnection pooled;
+        while ((pooled = idle.poll()) != null) {
+            pooled.closePhysical();
+        }
+    }
+
+    // Metrics
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * @return Nanoseconds callers waited for a free connection
+     */
+    public LatencyHistogram getWaitTime() {
+        return waitTime;
+    }
+
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits.get();
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.get();
+    }
+
+    // Private methods - pool management
+    private PooledConnection takeHealthyIdle() {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            if (System.nanoTime() - pooled.lastReturnedNanos < validationIntervalNanos || pooled.isHealthy()) {
+                return pooled;
+            }
+            ServerLogger.logWarning("Discarding broken pooled database connection");
+            pooled.closePhysical();
+        }
+        return null;
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection physical = DriverManager.getConnection(url);
+        try (Statement statement = physical.createStatement()) {
+            statement.execute("PRAGMA journal_mode=" + journalMode);
+            statement.execute("PRAGMA busy_timeout=" + busyTimeoutMillis);
+            statement.execute("PRAGMA synchronous=" + synchronous);
+        } catch (SQLException e) {
+            physical.close();
+            throw e;
+        }
+        createdCount.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private void giveBack(PooledConnection pooled) {
+        activeCount.decrementAndGet();
+        try {
+            if (closed || pooled.physical.isClosed() || !pooled.reset()) {
+                pooled.closePhysical();
+            } else {
+                pooled.lastReturnedNanos = System.nanoTime();
+                idle.offerFirst(pooled); // Most recently used first, keeps a warm working set
+            }
+        } catch (SQLException e) {
+            pooled.closePhysical();
+        } finally {
+            permits.release();
+        }
+    }
+
+    private Connection lease(PooledConnection pooled) {
+        return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new Lease(pooled));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * One physical connection and its statement cache. Used by one borrower at a time.
+     */
+    private final class PooledConnection {
+        private final Connection physical;
+        private final Map<String, PreparedStatement> statements;
+        private long lastReturnedNanos = System.nanoTime();
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() <= statementCacheSize) {
+                        return false;
+                    }
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+            };
+        }
+
+        PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement != null && !statement.isClosed()) {
+                statementCacheHits.incrementAndGet();
+                return statement;
+            }
+            statementCacheMisses.incrementAndGet();
+            PreparedStatement physicalStatement = physical.prepareStatement(sql);
+            statement = (PreparedStatement) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new CachedStatement(physicalStatement));
+            if (statementCacheSize > 0) {
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+
+        boolean isHealthy() {
+            try {
+                return physical.isValid(1);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Undoes what a borrower may have left behind.
+         * @return false if the connection is not fit for reuse
+         */
+        boolean reset() throws SQLException {
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            return true;
+        }
+
+        void closePhysical() {
+            statements.values().forEach(this::closeQuietly);
+            statements.clear();
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                ServerLogger.logError("Error closing database connection: " + e.getMessage(), e);
+            }
+        }
+
+        private void closeQuietly(PreparedStatement statement) {
+            try {
+                statement.unwrap(PreparedStatement.class).close();
+            } catch (SQLException ignored) {
+                // Connection is going away or the statement was already closed
+            }
+        }
+    }
+
+    /**
+     * The Connection handed to one borrower. Closing it returns the physical connection;
+     * any use after that fails instead of touching a connection someone else now holds.
+     */
+    private final class Lease implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean returned = false;
+
+        Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close")) {
+                if (!returned) {
+                    returned = true;
+                    giveBack(pooled);
+                }
+                return null;
+            }
+            if (name.equals("isClosed")) {
+                return returned || pooled.physical.isClosed();
+            }
+            if (returned) {
+                throw new SQLException("Connection has been returned to the pool");
+            }
+            if (name.equals("prepareStatement") && args != null && args.length == 1) {
+                return pooled.prepare((String) args[0]);
+            }
+            return ConnectionPool.invoke(pooled.physical, method, args);
+        }
+    }
+
+    /**
+     * A cached PreparedStatement. Closing it only clears its parameters and batch so the next
+     * borrower can reuse it; unwrap() gives the real statement.
+     */
+    private static final class CachedStatement implements InvocationHandler {
+        private final PreparedStatement physical;
+
+        CachedStatement(PreparedStatement physical) {
+            this.physical = physical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close")) {
+                if (!physical.isClosed()) {
+                    physical.clearParameters();
+                    physical.clearBatch();
+                }
+                return null;
+            }
+            if (name.equals("unwrap") && PreparedStatement.class.equals(args[0])) {
+                return physical;
+            }
+            return ConnectionPool.invoke(physical, method, args);
+        }
+    }
+}
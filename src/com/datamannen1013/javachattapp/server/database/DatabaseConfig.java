@@ -2,9 +2,12 @@ package com.datamannen1013.javachattapp.server.database;
 
 import com.datamannen1013.javachattapp.server.constants.ServerConstants;
 
+import java.nio.file.Path;
+
 public class DatabaseConfig {
     private static final String DB_URL = ServerConstants.DATABASE_URL;
     private static final String JDBC_DRIVER = "org.sqlite.JDBC";
+    private static final Durability DURABILITY = Durability.fromName(ServerConstants.DB_DURABILITY);
 
     public static String getDbUrl() {
         return DB_URL;
@@ -13,4 +16,92 @@ public class DatabaseConfig {
     public static String getJdbcDriver() {
         return JDBC_DRIVER;
     }
+
+    public static int getPoolSize() {
+        return ServerConstants.DB_POOL_SIZE;
+    }
+
+    public static long getPoolMaxWaitMillis() {
+        return ServerConstants.DB_POOL_MAX_WAIT_MS;
+    }
+
+    public static long getPoolValidationIntervalMillis() {
+        return ServerConstants.DB_POOL_VALIDATION_INTERVAL_MS;
+    }
+
+    public static int getStatementCacheSize() {
+        return ServerConstants.DB_STATEMENT_CACHE_SIZE;
+    }
+
+    public static int getBusyTimeoutMillis() {
+        return ServerConstants.DB_BUSY_TIMEOUT_MS;
+    }
+
+    public static String getJournalMode() {
+        return ServerConstants.DB_JOURNAL_MODE;
+    }
+
+    public static Durability getDurability() {
+        return DURABILITY;
+    }
+
+    public static int getWriteQueueCapacity() {
+        return ServerConstants.DB_WRITE_QUEUE_CAPACITY;
+    }
+
+    public static int getWriteBatchSize() {
+        return ServerConstants.DB_WRITE_BATCH_SIZE;
+    }
+
+    public static long getWriteMaxDelayMillis() {
+        return ServerConstants.DB_WRITE_MAX_DELAY_MS;
+    }
+
+    public static String getMessageStore() {
+        return ServerConstants.MESSAGE_STORE;
+    }
+
+    public static Path getLogStoreDirectory() {
+        return Path.of(ServerConstants.LOG_STORE_DIRECTORY);
+    }
+
+    public static int getLogSegmentBytes() {
+        return ServerConstants.LOG_SEGMENT_BYTES;
+    }
+
+    public static int getLogIndexInterval() {
+        return ServerConstants.LOG_INDEX_INTERVAL;
+    }
+
+    public static int getRetentionMaxAgeDays() {
+        return ServerConstants.RETENTION_MAX_AGE_DAYS;
+    }
+
+    public static long getRetentionMaxRows() {
+        return ServerConstants.RETENTION_MAX_ROWS;
+    }
+
+    public static long getRetentionIntervalMillis() {
+        return ServerConstants.RETENTION_INTERVAL_MS;
+    }
+
+    public static int getRetentionArchiveRows() {
+        return ServerConstants.RETENTION_ARCHIVE_ROWS;
+    }
+
+    public static int getRetentionBatchSize() {
+        return ServerConstants.RETENTION_BATCH_SIZE;
+    }
+
+    public static long getRetentionLockWaitMillis() {
+        return ServerConstants.RETENTION_LOCK_WAIT_MS;
+    }
+
+    public static Path getArchiveDirectory() {
+        return Path.of(ServerConstants.ARCHIVE_DIRECTORY);
+    }
+
+    public static int getArchiveCacheFiles() {
+        return ServerConstants.ARCHIVE_CACHE_FILES;
+    }
 }
@@ -1,9 +1,14 @@
 package com.datamannen1013.javachattapp.server.database;
 
 import com.datamannen1013.javachattapp.server.constants.ServerConstants;
-import com.datamannen1013.javachattapp.server.database.exceptions.ConnectionException;
+import com.datamannen1013.javachattapp.server.database.archive.MessageArchive;
+import com.datamannen1013.javachattapp.server.database.archive.RetentionJob;
 import com.datamannen1013.javachattapp.server.database.exceptions.InitializationException;
+import com.datamannen1013.javachattapp.server.database.log.SegmentLogStore;
 import com.datamannen1013.javachattapp.server.database.repository.MessageRepository;
+import com.datamannen1013.javachattapp.server.database.repository.MessageWriter;
+import com.datamannen1013.javachattapp.server.database.repository.SqliteMessageStore;
+import com.datamannen1013.javachattapp.server.logger.ServerLogger;
 
 import java.sql.*;
 
@@ -14,11 +19,22 @@ import java.sql.*;
 public class DatabaseManager {
     private static DatabaseManager instance;
     private final MessageRepository messageRepository;
+    private final ConnectionPool connectionPool;
+    private final MessageStore messageStore;
 
     private DatabaseManager() {
         initializeDatabaseDriver();
+        this.connectionPool = new ConnectionPool(DatabaseConfig.getDbUrl(),
+                DatabaseConfig.getPoolSize(),
+                DatabaseConfig.getPoolMaxWaitMillis(),
+                DatabaseConfig.getPoolValidationIntervalMillis(),
+                DatabaseConfig.getStatementCacheSize(),
+                DatabaseConfig.getBusyTimeoutMillis(),
+                DatabaseConfig.getJournalMode(),
+                DatabaseConfig.getDurability().getSynchronous());
         initializeDatabase();
         this.messageRepository = new MessageRepository(this);
+        this.messageStore = createMessageStore();
     }
 
     public static synchronized DatabaseManager getInstance() {
@@ -36,26 +52,118 @@ public class DatabaseManager {
         }
     }
 
+    /**
+     * Borrows a pooled connection. Closing it returns it to the pool.
+     * @throws com.datamannen1013.javachattapp.server.database.exceptions.ConnectionException
+     *         If no connection is free within the pool's max wait
+     */
     public Connection getConnection() {
-        try {
-            return DriverManager.getConnection(DatabaseConfig.getDbUrl());
-        } catch (SQLException e) {
-            throw new ConnectionException("Failed to establish database connection", e);
+        return connectionPool.getConnection();
+    }
+
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    public MessageStore getMessageStore() {
+        return messageStore;
+    }
+
+    /**
+     * Stores queued messages and closes the message store, then the pooled connections.
+     * Called once on server shutdown.
+     */
+    public void shutdown() {
+        messageStore.close();
+        connectionPool.close();
+    }
+
+    private MessageStore createMessageStore() {
+        if ("log".equalsIgnoreCase(DatabaseConfig.getMessageStore())) {
+            return new SegmentLogStore(DatabaseConfig.getLogStoreDirectory(),
+                    DatabaseConfig.getLogSegmentBytes(),
+                    DatabaseConfig.getLogIndexInterval(),
+                    DatabaseConfig.getDurability(),
+                    DatabaseConfig.getWriteMaxDelayMillis());
         }
+        MessageWriter messageWriter = new MessageWriter(this,
+                DatabaseConfig.getWriteQueueCapacity(),
+                DatabaseConfig.getWriteBatchSize(),
+                DatabaseConfig.getWriteMaxDelayMillis(),
+                DatabaseConfig.getPoolMaxWaitMillis());
+        messageWriter.start();
+        MessageArchive archive = new MessageArchive(DatabaseConfig.getArchiveDirectory(),
+                DatabaseConfig.getArchiveCacheFiles());
+        RetentionJob retentionJob = new RetentionJob(archive,
+                DatabaseConfig.getRetentionMaxAgeDays(),
+                DatabaseConfig.getRetentionMaxRows(),
+                DatabaseConfig.getRetentionIntervalMillis(),
+                DatabaseConfig.getRetentionArchiveRows(),
+                DatabaseConfig.getRetentionBatchSize(),
+                DatabaseConfig.getRetentionLockWaitMillis());
+        retentionJob.start();
+        return new SqliteMessageStore(messageWriter, archive, retentionJob);
     }
 
     private void initializeDatabase() {
         try (Connection conn = getConnection();
              Statement stmt = conn.createStatement()) {
+            migrateSchema(conn, stmt);
             createDatabaseSchema(stmt);
         } catch (SQLException e) {
             throw new InitializationException("Failed to initialize database", e);
         }
     }
 
+    // Upgrades a version 1 database in place, in one transaction so a failure leaves it as it was
+    private void migrateSchema(Connection conn, Statement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(ServerConstants.GET_SCHEMA_VERSION)) {
+            if (rs.next() && rs.getInt(1) >= ServerConstants.SCHEMA_VERSION) {
+                return;
+            }
+        }
+        boolean versionOne;
+        try (ResultSet rs = stmt.executeQuery(ServerConstants.IS_SCHEMA_V1)) {
+            versionOne = rs.next();
+        }
+        if (versionOne) {
+            long start = System.currentTimeMillis();
+            conn.setAutoCommit(false);
+            try {
+                for (String sql : ServerConstants.MIGRATE_SCHEMA_V1_TO_V2) {
+                    stmt.execute(sql);
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+            ServerLogger.logInfo("Migrated database to schema version " + ServerConstants.SCHEMA_VERSION
+                    + " in " + (System.currentTimeMillis() - start) + " ms");
+        }
+        stmt.execute(ServerConstants.SET_SCHEMA_VERSION);
+    }
+
     private void createDatabaseSchema(Statement stmt) throws SQLException {
-        stmt.execute(ServerConstants.CREATE_MESSAGES_TABLE);
         stmt.execute(ServerConstants.CREATE_USERS_TABLE);
+        stmt.execute(ServerConstants.CREATE_MESSAGES_TABLE);
+        stmt.execute(ServerConstants.CREATE_MESSAGES_TIMESTAMP_INDEX);
+        createSearchIndex(stmt);
+        stmt.execute(ServerConstants.CREATE_ARCHIVE_FTS_TABLE);
+    }
+
+    // Messages saved before the index existed are indexed once, later saves keep it current
+    private void createSearchIndex(Statement stmt) throws SQLException {
+        boolean exists;
+        try (ResultSet rs = stmt.executeQuery(ServerConstants.FTS_TABLE_EXISTS)) {
+            exists = rs.next();
+        }
+        stmt.execute(ServerConstants.CREATE_MESSAGES_FTS_TABLE);
+        if (!exists) {
+            stmt.execute(ServerConstants.REBUILD_MESSAGES_FTS);
+        }
     }
 
     public MessageRepository getMessageRepository() {
@@ -0,0 +1,57 @@
+package com.datamannen1013.javachattapp.server.database;
+
+/**
+ * How hard the server tries to keep a chat message before it is broadcast.
+ * Selected with -Dchat.db.durability=<level>.
+ */
+public enum Durability {
+    /**
+     * Broadcast right away and let SQLite skip syncing. A crash of the machine can lose
+     * recent messages, a crash of the server cannot once they are committed.
+     */
+    RELAXED("OFF", false),
+    /**
+     * Broadcast right away, commit in groups. With WAL, commits survive a server crash and
+     * are synced to disk at checkpoints.
+     */
+    BATCHED("NORMAL", false),
+    /**
+     * Broadcast only after the message's group commit has been synced to disk.
+     */
+    STRICT("FULL", true);
+
+    private final String synchronous;
+    private final boolean commitAwaited;
+
+    Durability(String synchronous, boolean commitAwaited) {
+        this.synchronous = synchronous;
+        this.commitAwaited = commitAwaited;
+    }
+
+    /**
+     * @return Value for PRAGMA synchronous
+     */
+    public String getSynchronous() {
+        return synchronous;
+    }
+
+    /**
+     * @return true if a message is only broadcast once it has been committed
+     */
+    public boolean isCommitAwaited() {
+        return commitAwaited;
+    }
+
+    /**
+     * @param name Level name, case-insensitive
+     * @return The matching level, BATCHED if the name is unknown
+     */
+    public static Durability fromName(String name) {
+        for (Durability durability : values()) {
+            if (durability.name().equalsIgnoreCase(name)) {
+                return durability;
+            }
+        }
+        return BATCHED;
+    }
+}
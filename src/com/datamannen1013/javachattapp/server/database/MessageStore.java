@@ -0,0 +1,49 @@
+package com.datamannen1013.javachattapp.server.database;
+
+import com.datamannen1013.javachattapp.server.database.models.Message;
+import com.datamannen1013.javachattapp.server.database.models.SearchHit;
+import com.datamannen1013.javachattapp.server.database.models.SearchQuery;
+import com.datamannen1013.javachattapp.server.database.repository.MessageSink;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Where chat messages are kept. Selected with -Dchat.store=sqlite|log.
+ * Ids are assigned by the store, grow with every append and are what history pages key on.
+ */
+public interface MessageStore {
+
+    /**
+     * Stores a chat message. How long the future takes depends on the configured Durability.
+     * @param sender Username of the sender
+     * @param content The message text
+     * @return Completes with the stored message, with the id and timestamp it was stored with,
+     *         or exceptionally if it could not be stored
+     */
+    CompletableFuture<Message> append(String sender, String content);
+
+    /**
+     * Streams up to limit messages with an id below beforeId, oldest first.
+     * @param fetchSize Messages per chunk, the sink may wait for its consumer between chunks
+     * @return The number of messages the sink accepted
+     */
+    int streamBefore(long beforeId, int limit, int fetchSize, MessageSink sink);
+
+    /**
+     * Full-text search.
+     * @return Hits, best match first
+     * @throws UnsupportedOperationException If the store has no search index
+     */
+    List<SearchHit> search(SearchQuery query);
+
+    /**
+     * @return One line of counters for the shutdown log
+     */
+    String summary();
+
+    /**
+     * Stores everything already appended and releases the store's resources.
+     */
+    void close();
+}
@@ -0,0 +1,324 @@
+package com.datamannen1013.javachattapp.server.database.archive;
+
+import com.datamannen1013.javachattapp.server.database.exceptions.InitializationException;
+import com.datamannen1013.javachattapp.server.database.exceptions.MessagePersistenceException;
+import com.datamannen1013.javachattapp.server.database.exceptions.MessageRetrievalException;
+import com.datamannen1013.javachattapp.server.database.models.Message;
+import com.datamannen1013.javachattapp.server.database.models.SearchHit;
+import com.datamannen1013.javachattapp.server.database.models.SearchQuery;
+import com.datamannen1013.javachattapp.server.database.repository.MessageRepository;
+import com.datamannen1013.javachattapp.server.logger.ServerLogger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Read-only, gzip-compressed files of messages that retention moved out of the messages table.
+ * Each file holds a run of consecutive messages and is named after its first and last id;
+ * together the files hold every message from the oldest up to getLastId(), the messages
+ * table holds the rest. Their words stay searchable through a contentless FTS5 index.
+ * <p>
+ * A file is decoded whole when first read and kept in a small LRU cache, since scroll-back
+ * tends to read neighbouring pages.
+ */
+public class MessageArchive {
+    private static final int MAGIC = 0x43484131; // "CHA1"
+    private static final String PREFIX = "messages-";
+    private static final String SUFFIX = ".gz";
+
+    private final Path directory;
+    private final int cacheFiles;
+    private final ConcurrentSkipListMap<Long, ArchiveFile> files = new ConcurrentSkipListMap<>();
+    private final ReentrantLock cacheLock = new ReentrantLock();
+    private final Map<Path, List<Message>> cache;
+    // History reads hold the read lock, removing archived rows from the messages table the write lock
+    private final ReadWriteLock moveLock = new ReentrantReadWriteLock();
+
+    /**
+     * Opens the archive in directory, creating it if needed.
+     * @throws InitializationException If the directory cannot be listed
+     */
+    public MessageArchive(Path directory, int cacheFiles) {
+        this.directory = directory;
+        this.cacheFiles = Math.max(1, cacheFiles);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, List<Message>> eldest) {
+                return size() > MessageArchive.this.cacheFiles;
+            }
+        };
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> listing = Files.list(directory)) {
+                listing.map(ArchiveFile::parse).filter(Objects::nonNull)
+                        .forEach(file -> files.put(file.firstId(), file));
+            }
+        } catch (IOException e) {
+            throw new InitializationException("Failed to open message archive in " + directory, e);
+        }
+        if (!files.isEmpty()) {
+            ServerLogger.logInfo("Opened message archive with " + files.size() + " files up to id "
+                    + files.lastEntry().getValue().lastId());
+        }
+    }
+
+    /**
+     * @return Id of the newest archived message, 0 if nothing is archived
+     */
+    public long getLastId() {
+        Map.Entry<Long, ArchiveFile> last = files.lastEntry();
+        return last == null ? 0 : last.getValue().lastId();
+    }
+
+    public int getFileCount() {
+        return files.size();
+    }
+
+    public ReadWriteLock getMoveLock() {
+        return moveLock;
+    }
+
+    /**
+     * Writes messages to a new archive file and syncs it before it becomes visible.
+     * @param messages Consecutive messages newer than getLastId(), oldest first
+     * @throws IllegalArgumentException If the messages overlap what is already archived
+     * @throws MessagePersistenceException If the file cannot be written
+     */
+    public void write(List<Message> messages) {
+        long firstId = messages.getFirst().id();
+        long lastId = messages.getLast().id();
+        if (firstId <= getLastId()) {
+            throw new IllegalArgumentException("Message " + firstId + " is already archived, the archive ends at " + getLastId());
+        }
+        Path target = directory.resolve(ArchiveFile.fileName(firstId, lastId));
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        try {
+            try (FileOutputStream fileOut = new FileOutputStream(temporary.toFile());
+                 GZIPOutputStream gzipOut = new GZIPOutputStream(fileOut);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(gzipOut))) {
+                out.writeInt(MAGIC);
+                out.writeInt(messages.size());
+                for (Message message : messages) {
+                    out.writeLong(message.id());
+                    out.writeLong(message.timestamp());
+                    writeString(out, message.sender());
+                    writeString(out, message.content());
+                }
+                out.flush();
+                gzipOut.finish();
+                fileOut.getFD().sync();
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+            target.toFile().setReadOnly();
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+                // The next write of the same range replaces it
+            }
+            throw MessagePersistenceException.builder()
+                    .errorCode(MessagePersistenceException.ErrorCode.SAVE_FAILED)
+                    .message("Failed to write archive file " + target)
+                    .cause(e)
+                    .build();
+        }
+        ArchiveFile file = new ArchiveFile(firstId, lastId, target);
+        files.put(firstId, file);
+        cacheLock.lock();
+        try {
+            cache.put(target, Collections.unmodifiableList(new ArrayList<>(messages)));
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    /**
+     * @return Up to limit of the newest archived messages with an id below beforeId, oldest first
+     */
+    public List<Message> readBefore(long beforeId, int limit) {
+        List<List<Message>> parts = new ArrayList<>();
+        int found = 0;
+        Map.Entry<Long, ArchiveFile> entry = files.lowerEntry(beforeId);
+        while (entry != null && found < limit) {
+            List<Message> messages = load(entry.getValue());
+            int end = upperBound(messages, beforeId - 1);
+            int start = Math.max(0, end - (limit - found));
+            parts.add(messages.subList(start, end));
+            found += end - start;
+            entry = files.lowerEntry(entry.getKey());
+        }
+        List<Message> page = new ArrayList<>(found);
+        for (int i = parts.size() - 1; i >= 0; i--) {
+            page.addAll(parts.get(i));
+        }
+        return page;
+    }
+
+    /**
+     * Searches archived messages. Sender and date filters are applied to the matches read
+     * back from the archive files, so a filtered search may read several candidate pages.
+     * @return Up to query.limit() hits, best match first
+     */
+    public List<SearchHit> search(SearchQuery query) {
+        List<SearchHit> hits = new ArrayList<>(query.limit());
+        if (files.isEmpty()) {
+            return hits;
+        }
+        int candidates = query.limit() * 2;
+        double afterRank = query.afterRank();
+        long afterId = query.afterId();
+        while (hits.size() < query.limit()) {
+            Map<Long, Double> matches = MessageRepository.searchArchivedMessages(query.terms(), afterRank, afterId, candidates);
+            for (Map.Entry<Long, Double> match : matches.entrySet()) {
+                afterId = match.getKey();
+                afterRank = match.getValue();
+                Message message = get(afterId);
+                if (message != null && matches(message, query)) {
+                    hits.add(new SearchHit(message, afterRank));
+                    if (hits.size() == query.limit()) {
+                        break;
+                    }
+                }
+            }
+            if (matches.size() < candidates) {
+                break;
+            }
+        }
+        return hits;
+    }
+
+    // Private methods
+    private Message get(long id) {
+        Map.Entry<Long, ArchiveFile> entry = files.floorEntry(id);
+        if (entry == null || entry.getValue().lastId() < id) {
+            return null;
+        }
+        List<Message> messages = load(entry.getValue());
+        int index = upperBound(messages, id) - 1;
+        return index >= 0 && messages.get(index).id() == id ? messages.get(index) : null;
+    }
+
+    private static boolean matches(Message message, SearchQuery query) {
+        if (query.sender() != null && !query.sender().equals(message.sender())) {
+            return false;
+        }
+        return message.timestamp() >= query.from() && message.timestamp() < query.to();
+    }
+
+    private List<Message> load(ArchiveFile file) {
+        cacheLock.lock();
+        try {
+            List<Message> cached = cache.get(file.path());
+            if (cached != null) {
+                return cached;
+            }
+        } finally {
+            cacheLock.unlock();
+        }
+        List<Message> messages = decode(file);
+        cacheLock.lock();
+        try {
+            cache.put(file.path(), messages);
+        } finally {
+            cacheLock.unlock();
+        }
+        return messages;
+    }
+
+    private static List<Message> decode(ArchiveFile file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file.path()))))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a message archive");
+            }
+            int count = in.readInt();
+            List<Message> messages = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long id = in.readLong();
+                long timestamp = in.readLong();
+                messages.add(new Message.Builder()
+                        .id(id)
+                        .timestamp(timestamp)
+                        .sender(readString(in))
+                        .content(readString(in))
+                        .build());
+            }
+            return Collections.unmodifiableList(messages);
+        } catch (IOException e) {
+            throw MessageRetrievalException.builder()
+                    .errorCode(MessageRetrievalException.ErrorCode.RESULT_SET_ERROR)
+                    .message("Failed to read archive file " + file.path())
+                    .cause(e)
+                    .build();
+        }
+    }
+
+    // Index of the first message with an id above id
+    private static int upperBound(List<Message> messages, long id) {
+        int low = 0;
+        int high = messages.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (messages.get(mid).id() <= id) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private record ArchiveFile(long firstId, long lastId, Path path) {
+
+        static String fileName(long firstId, long lastId) {
+            return String.format("%s%020d-%020d%s", PREFIX, firstId, lastId, SUFFIX);
+        }
+
+        // Null for anything that is not a finished archive file
+        static ArchiveFile parse(Path path) {
+            String name = path.getFileName().toString();
+            if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) {
+                return null;
+            }
+            String[] ids = name.substring(PREFIX.length(), name.length() - SUFFIX.length()).split("-");
+            try {
+                return new ArchiveFile(Long.parseLong(ids[0]), Long.parseLong(ids[1]), path);
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.datamannen1013.javachattapp.server.database.archive;
+
+import com.datamannen1013.javachattapp.server.database.models.Message;
+import com.datamannen1013.javachattapp.server.database.repository.MessageRepository;
+import com.datamannen1013.javachattapp.server.logger.ServerLogger;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Moves old messages out of the messages table into the archive, on a background thread.
+ * A message is old once it is older than the max age, or once the table holds more than
+ * the max rows and it is among the oldest. Each pass writes old messages to archive files,
+ * oldest first, then deletes them from the table in small transactions, so the message
+ * writer and history pages only ever wait for one short delete.
+ * <p>
+ * A file is written and synced before its rows are deleted. If the server stops in
+ * between, the next pass deletes the rows the archive already holds.
+ */
+public class RetentionJob {
+    private final MessageArchive archive;
+    private final int maxAgeDays;
+    private final long maxRows;
+    private final long intervalMillis;
+    private final int archiveRows;
+    private final int batchSize;
+    private final long lockWaitMillis;
+    private final ScheduledExecutorService scheduler;
+
+    // Metrics
+    private final AtomicLong archivedCount = new AtomicLong();
+    private final AtomicLong passCount = new AtomicLong();
+
+    public RetentionJob(MessageArchive archive, int maxAgeDays, long maxRows, long intervalMillis,
+                        int archiveRows, int batchSize, long lockWaitMillis) {
+        this.archive = archive;
+        this.maxAgeDays = maxAgeDays;
+        this.maxRows = maxRows;
+        this.intervalMillis = intervalMillis;
+        this.archiveRows = archiveRows;
+        this.batchSize = batchSize;
+        this.lockWaitMillis = lockWaitMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-retention");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return true if a max age or max rows is set
+     */
+    public boolean isEnabled() {
+        return maxAgeDays > 0 || maxRows > 0;
+    }
+
+    /**
+     * Runs the first pass right away and then one every interval. Does nothing if retention is off.
+     */
+    public void start() {
+        if (isEnabled()) {
+            scheduler.scheduleWithFixedDelay(this::runSafely, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops after the current delete transaction.
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * One retention pass.
+     * @return Number of messages moved to the archive
+     */
+    public long runOnce() {
+        long start = System.nanoTime();
+        long moved = removeLeftovers();
+        if (moved < 0) {
+            // Archiving more now would write the rows still in the table a second time
+            ServerLogger.logInfo("Retention pass skipped, history pages kept the messages table busy");
+            passCount.incrementAndGet();
+            return 0;
+        }
+        long excess = maxRows > 0 ? MessageRepository.countMessages() - maxRows : 0;
+        long cutoff = maxAgeDays > 0
+                ? System.currentTimeMillis() - TimeUnit.DAYS.toMillis(maxAgeDays)
+                : Long.MIN_VALUE;
+        // Trimming by count waits for a batch worth of excess, so steady traffic does not make tiny files
+        if (excess < batchSize) {
+            excess = 0;
+        }
+        while (!Thread.currentThread().isInterrupted()) {
+            List<Message> oldest = MessageRepository.getOldestMessages(Long.MAX_VALUE, archiveRows);
+            int old = 0;
+            while (old < oldest.size() && (old < excess || isOlderThan(oldest.get(old), cutoff))) {
+                old++;
+            }
+            if (old == 0) {
+                break;
+            }
+            List<Message> expired = oldest.subList(0, old);
+            archive.write(expired);
+            if (!remove(expired)) {
+                ServerLogger.logInfo("Retention pass stopped early, history pages kept the messages table busy");
+                break;
+            }
+            excess -= old;
+            moved += old;
+        }
+        archivedCount.addAndGet(moved);
+        passCount.incrementAndGet();
+        if (moved > 0) {
+            ServerLogger.logInfo("Retention archived " + moved + " messages in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms, archive now has " + archive.getFileCount() + " files");
+        }
+        return moved;
+    }
+
+    public long getArchivedCount() {
+        return archivedCount.get();
+    }
+
+    public long getPassCount() {
+        return passCount.get();
+    }
+
+    // Private methods
+    private void runSafely() {
+        try {
+            runOnce();
+        } catch (Exception e) {
+            ServerLogger.logError("Retention pass failed, retrying in " + intervalMillis + " ms: " + e.getMessage(), e);
+        }
+    }
+
+    // Rows already written to the archive by a pass that stopped before deleting them.
+    // Returns the number removed, or -1 if remove() gave up and some are still in the table
+    private long removeLeftovers() {
+        long archivedUpTo = archive.getLastId();
+        long removed = 0;
+        while (archivedUpTo > 0 && !Thread.currentThread().isInterrupted()) {
+            List<Message> leftovers = MessageRepository.getOldestMessages(archivedUpTo, archiveRows);
+            if (leftovers.isEmpty()) {
+                break;
+            }
+            if (!remove(leftovers)) {
+                return -1;
+            }
+            removed += leftovers.size();
+        }
+        return removed;
+    }
+
+    // false if history pages held the lock too long; the rows left are removed by the next pass
+    private boolean remove(List<Message> messages) {
+        for (int from = 0; from < messages.size(); from += batchSize) {
+            List<Message> batch = messages.subList(from, Math.min(messages.size(), from + batchSize));
+            Lock lock = archive.getMoveLock().writeLock();
+            try {
+                // A waiting writer holds up new history pages, so it only waits briefly
+                if (!lock.tryLock(lockWaitMillis, TimeUnit.MILLISECONDS)) {
+                    return false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            try {
+                MessageRepository.removeArchivedMessages(batch);
+            } finally {
+                lock.unlock();
+            }
+        }
+        return true;
+    }
+
+    private static boolean isOlderThan(Message message, long cutoff) {
+        return message.timestamp() < cutoff;
+    }
+}
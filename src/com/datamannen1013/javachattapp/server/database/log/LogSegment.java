@@ -0,0 +1,230 @@
+package com.datamannen1013.javachattapp.server.database.log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * One memory-mapped file of the message log, holding consecutive ids from its base id on.
+ * Record layout, big-endian:
+ * <pre>
+ * int length      bytes after this field
+ * int crc         CRC32C of the bytes after this field
+ * long id
+ * long timestamp  epoch millis
+ * short senderLength
+ * byte[] sender   UTF-8
+ * byte[] content  UTF-8, the rest of the record
+ * </pre>
+ * A zero length ends the segment. Only one thread appends; readers see records up to
+ * the volatile limit, which is published after a record is complete.
+ * Every indexInterval-th record is noted in a sparse index of id to position.
+ */
+final class LogSegment {
+    static final int HEADER_LENGTH = 26;
+    private static final int LENGTH_FIELD = 4;
+    private static final int CRC_FIELD = 4;
+    private static final String SUFFIX = ".log";
+
+    private final Path path;
+    private final long baseId;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int indexInterval;
+    private final long[] indexIds;
+    private final int[] indexPositions;
+    private volatile int indexSize;
+    private volatile int limit;
+    private volatile long lastId;
+
+    private LogSegment(Path path, long baseId, FileChannel channel, int capacity, int indexInterval) throws IOException {
+        this.path = path;
+        this.baseId = baseId;
+        this.channel = channel;
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        this.indexInterval = indexInterval;
+        int maxEntries = capacity / (HEADER_LENGTH * indexInterval) + 1;
+        this.indexIds = new long[maxEntries];
+        this.indexPositions = new int[maxEntries];
+        this.lastId = baseId - 1;
+    }
+
+    /**
+     * Creates an empty segment whose first record will have baseId.
+     */
+    static LogSegment create(Path directory, long baseId, int capacity, int indexInterval) throws IOException {
+        Path path = directory.resolve(fileName(baseId));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new LogSegment(path, baseId, channel, capacity, indexInterval);
+    }
+
+    /**
+     * Opens an existing segment and scans it, stopping at the first record that is
+     * incomplete, fails its checksum or breaks the id sequence. Whatever follows is
+     * zeroed, so a torn write from a crash can never be read back.
+     */
+    static LogSegment open(Path path, int capacity, int indexInterval) throws IOException {
+        long baseId = Long.parseLong(path.getFileName().toString().replace(SUFFIX, ""));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int size = (int) Math.max(capacity, channel.size());
+        LogSegment segment = new LogSegment(path, baseId, channel, size, indexInterval);
+        segment.recover();
+        return segment;
+    }
+
+    static boolean isSegmentFile(Path path) {
+        return path.getFileName().toString().endsWith(SUFFIX);
+    }
+
+    static int recordLength(int senderBytes, int contentBytes) {
+        return HEADER_LENGTH + senderBytes + contentBytes;
+    }
+
+    /**
+     * Appends a record if it fits, leaving room for the end marker.
+     * @return false if the segment is full
+     */
+    boolean append(long id, long timestamp, byte[] sender, byte[] content) {
+        int position = limit;
+        int length = recordLength(sender.length, content.length);
+        if (position + length + LENGTH_FIELD > buffer.capacity()) {
+            return false;
+        }
+        int bodyStart = position + LENGTH_FIELD + CRC_FIELD;
+        buffer.putLong(bodyStart, id);
+        buffer.putLong(bodyStart + 8, timestamp);
+        buffer.putShort(bodyStart + 16, (short) sender.length);
+        buffer.put(bodyStart + 18, sender);
+        buffer.put(bodyStart + 18 + sender.length, content);
+        buffer.putInt(position + LENGTH_FIELD, checksum(bodyStart, length - LENGTH_FIELD - CRC_FIELD));
+        buffer.putInt(position, length - LENGTH_FIELD);
+        noteInIndex(id, position);
+        lastId = id;
+        limit = position + length; // Publishes the record to readers
+        return true;
+    }
+
+    /**
+     * @return Position of the record with the id, or -1 if the segment does not hold it
+     */
+    int positionOf(long id) {
+        if (id < baseId || id > lastId) {
+            return -1;
+        }
+        int entries = indexSize;
+        int low = 0;
+        int high = entries - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (indexIds[mid] <= id) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        int position = indexPositions[low];
+        long current = indexIds[low];
+        while (current < id) {
+            position = nextPosition(position);
+            current++;
+        }
+        return position;
+    }
+
+    /**
+     * @return Position of the record after the one at position
+     */
+    int nextPosition(int position) {
+        return position + LENGTH_FIELD + buffer.getInt(position);
+    }
+
+    /**
+     * @return A read-only view of the record body at position, id first, without copying
+     */
+    ByteBuffer recordAt(int position) {
+        int bodyLength = buffer.getInt(position) - CRC_FIELD;
+        int bodyStart = position + LENGTH_FIELD + CRC_FIELD;
+        return buffer.slice(bodyStart, bodyLength).asReadOnlyBuffer();
+    }
+
+    long getBaseId() {
+        return baseId;
+    }
+
+    long getLastId() {
+        return lastId;
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    boolean isEmpty() {
+        return lastId < baseId;
+    }
+
+    /**
+     * Writes the mapped pages of this segment to disk.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    // Private methods
+    private void recover() {
+        int position = 0;
+        long expectedId = baseId;
+        int capacity = buffer.capacity();
+        while (position + LENGTH_FIELD <= capacity) {
+            int bodyAndCrc = buffer.getInt(position);
+            int bodyStart = position + LENGTH_FIELD + CRC_FIELD;
+            if (bodyAndCrc < HEADER_LENGTH - LENGTH_FIELD || position + LENGTH_FIELD + bodyAndCrc > capacity
+                    || buffer.getLong(bodyStart) != expectedId
+                    || buffer.getInt(position + LENGTH_FIELD) != checksum(bodyStart, bodyAndCrc - CRC_FIELD)) {
+                break;
+            }
+            noteInIndex(expectedId, position);
+            lastId = expectedId++;
+            position += LENGTH_FIELD + bodyAndCrc;
+        }
+        limit = position;
+        // A clean segment ends in a zero length, anything else is a torn write to wipe
+        if (position + LENGTH_FIELD <= capacity && buffer.getInt(position) != 0) {
+            for (int i = position; i < capacity; i++) {
+                buffer.put(i, (byte) 0);
+            }
+            buffer.force();
+        }
+    }
+
+    private void noteInIndex(long id, int position) {
+        if ((id - baseId) % indexInterval == 0 && indexSize < indexIds.length) {
+            indexIds[indexSize] = id;
+            indexPositions[indexSize] = position;
+            indexSize++;
+        }
+    }
+
+    private int checksum(int start, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(start, length));
+        return (int) crc.getValue();
+    }
+
+    private static String fileName(long baseId) {
+        return String.format("%020d%s", baseId, SUFFIX);
+    }
+}
@@ -0,0 +1,369 @@
+package com.datamannen1013.javachattapp.server.database.log;
+
+import com.datamannen1013.javachattapp.server.database.Durability;
+import com.datamannen1013.javachattapp.server.database.MessageStore;
+import com.datamannen1013.javachattapp.server.database.exceptions.InitializationException;
+import com.datamannen1013.javachattapp.server.database.exceptions.MessagePersistenceException;
+import com.datamannen1013.javachattapp.server.database.models.Message;
+import com.datamannen1013.javachattapp.server.database.models.SearchHit;
+import com.datamannen1013.javachattapp.server.database.models.SearchQuery;
+import com.datamannen1013.javachattapp.server.database.repository.MessageSink;
+import com.datamannen1013.javachattapp.server.jfr.MessagePersistEvent;
+import com.datamannen1013.javachattapp.server.logger.ServerLogger;
+import com.datamannen1013.javachattapp.server.metrics.LatencyHistogram;
+import com.datamannen1013.javachattapp.server.metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Keeps messages in an append-only log of memory-mapped segment files.
+ * Appends copy the record into the mapped file under a lock and never wait on a database;
+ * reads decode records straight from the mapping, with no read calls and no lock.
+ * When the active segment is full a new one is started, named after its first id.
+ * <p>
+ * Appends complete on the flusher thread in id order, like MessageWriter's, so whatever runs
+ * on completion sees messages in the order they were stored.
+ * <p>
+ * Durability decides when mapped pages are forced to disk:
+ * RELAXED leaves it to the operating system, BATCHED forces every max delay without holding
+ * appends back, STRICT completes appends only once a force has covered them.
+ * <p>
+ * There is no search index, search throws UnsupportedOperationException.
+ */
+public class SegmentLogStore implements MessageStore {
+    private final Path directory;
+    private final int segmentBytes;
+    private final int indexInterval;
+    private final Durability durability;
+    private final long flushIntervalMillis;
+    private final ConcurrentSkipListMap<Long, LogSegment> segments = new ConcurrentSkipListMap<>();
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final Condition appended = appendLock.newCondition();
+    private final Thread flusherThread;
+    private LogSegment active;
+    private long nextId;
+    private volatile long lastId;
+    private volatile boolean closed = false;
+
+    // Appends waiting for the flusher to complete them, in id order; guarded by appendLock
+    private List<CompletableFuture<Message>> pending = new ArrayList<>();
+    private List<Message> pendingMessages = new ArrayList<>();
+    private boolean dirty = false;
+
+    // Metrics
+    private final LatencyHistogram forceTime = new LatencyHistogram();
+    private final AtomicLong appendedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    /**
+     * Opens the log in directory, creating it if needed, and recovers every segment.
+     * @throws InitializationException If the directory or a segment cannot be opened
+     */
+    public SegmentLogStore(Path directory, int segmentBytes, int indexInterval,
+                           Durability durability, long flushIntervalMillis) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.indexInterval = indexInterval;
+        this.durability = durability;
+        this.flushIntervalMillis = Math.max(1, flushIntervalMillis);
+        try {
+            Files.createDirectories(directory);
+            openSegments();
+        } catch (IOException e) {
+            throw new InitializationException("Failed to open message log in " + directory, e);
+        }
+        this.flusherThread = new Thread(this::flushLoop, "message-log-flusher");
+        this.flusherThread.setDaemon(true);
+        MetricsRegistry.getInstance().register("db.log.force", forceTime);
+        flusherThread.start();
+    }
+
+    @Override
+    public CompletableFuture<Message> append(String sender, String content) {
+        MessagePersistEvent event = new MessagePersistEvent();
+        event.begin();
+        CompletableFuture<Message> appended = appendRecord(sender, content);
+        event.record("log", 1, content.length(), !appended.isCompletedExceptionally());
+        return appended;
+    }
+
+    // Private methods - appending
+    private CompletableFuture<Message> appendRecord(String sender, String content) {
+        byte[] senderBytes = sender.getBytes(StandardCharsets.UTF_8);
+        byte[] contentBytes = content.getBytes(StandardCharsets.UTF_8);
+        if (senderBytes.length > Short.MAX_VALUE
+                || LogSegment.recordLength(senderBytes.length, contentBytes.length) + Integer.BYTES > segmentBytes) {
+            return CompletableFuture.failedFuture(failure("Message from " + sender + " is too large for a segment", null, 1));
+        }
+        long timestamp = System.currentTimeMillis();
+        appendLock.lock();
+        try {
+            if (closed) {
+                return CompletableFuture.failedFuture(failure("Message log is closed", null, 1));
+            }
+            long id = nextId;
+            if (!active.append(id, timestamp, senderBytes, contentBytes)) {
+                roll(id);
+                active.append(id, timestamp, senderBytes, contentBytes);
+            }
+            nextId = id + 1;
+            lastId = id;
+            appendedCount.incrementAndGet();
+            if (!durability.isCommitAwaited()) {
+                dirty = true;
+            }
+            CompletableFuture<Message> stored = new CompletableFuture<>();
+            pending.add(stored);
+            pendingMessages.add(new Message(id, sender, content, timestamp));
+            appended.signal();
+            return stored;
+        } catch (IOException | UncheckedIOException e) {
+            return CompletableFuture.failedFuture(failure("Failed to start a new log segment", e, 1));
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    public int streamBefore(long beforeId, int limit, int fetchSize, MessageSink sink) {
+        long end = Math.min(beforeId - 1, lastId);
+        Map.Entry<Long, LogSegment> first = segments.firstEntry();
+        if (first == null || end < first.getKey() || limit <= 0) {
+            return 0;
+        }
+        long id = Math.max(first.getKey(), end - limit + 1);
+        int accepted = 0;
+        int inChunk = 0;
+        while (id <= end) {
+            LogSegment segment = segments.floorEntry(id).getValue();
+            int position = segment.positionOf(id);
+            if (position < 0) {
+                // A gap left by recovery, carry on in the next segment
+                Long next = segments.higherKey(id);
+                if (next == null) {
+                    break;
+                }
+                id = next;
+                continue;
+            }
+            long segmentEnd = Math.min(end, segment.getLastId());
+            for (; id <= segmentEnd; id++) {
+                if (!sink.accept(decode(segment.recordAt(position)))) {
+                    return accepted;
+                }
+                accepted++;
+                if (++inChunk == fetchSize) {
+                    inChunk = 0;
+                    if (!sink.endOfChunk()) {
+                        return accepted;
+                    }
+                }
+                position = segment.nextPosition(position);
+            }
+        }
+        return accepted;
+    }
+
+    @Override
+    public List<SearchHit> search(SearchQuery query) {
+        throw new UnsupportedOperationException("The message log has no search index");
+    }
+
+    @Override
+    public String summary() {
+        return "Message log appended " + appendedCount.get() + " messages to " + segments.size()
+                + " segments, " + failedCount.get() + " failed, p99 force "
+                + forceTime.getValueAtPercentile(99) / 1000 + " us";
+    }
+
+    @Override
+    public void close() {
+        appendLock.lock();
+        try {
+            closed = true;
+            appended.signal();
+        } finally {
+            appendLock.unlock();
+        }
+        if (flusherThread.isAlive()) {
+            try {
+                flusherThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (LogSegment segment : segments.values()) {
+            try {
+                segment.force();
+                segment.close();
+            } catch (IOException | UncheckedIOException e) {
+                ServerLogger.logError("Failed to close log segment " + segment.getPath(), e);
+            }
+        }
+    }
+
+    public long getAppendedCount() {
+        return appendedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public LatencyHistogram getForceTime() {
+        return forceTime;
+    }
+
+    // Private methods
+    private void openSegments() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(LogSegment::isSegmentFile).sorted().toList();
+        }
+        for (Path file : files) {
+            LogSegment segment = LogSegment.open(file, segmentBytes, indexInterval);
+            segments.put(segment.getBaseId(), segment);
+        }
+        if (segments.isEmpty()) {
+            active = LogSegment.create(directory, 1, segmentBytes, indexInterval);
+            segments.put(active.getBaseId(), active);
+        } else {
+            active = segments.lastEntry().getValue();
+        }
+        lastId = active.getLastId();
+        nextId = lastId + 1;
+        ServerLogger.logInfo("Opened message log in " + directory + " with " + segments.size()
+                + " segments, next id " + nextId);
+    }
+
+    // Called with appendLock held, the full segment is forced so it never needs a flush again
+    private void roll(long baseId) throws IOException {
+        if (durability != Durability.RELAXED) {
+            force(active);
+        }
+        active = LogSegment.create(directory, baseId, segmentBytes, indexInterval);
+        segments.put(baseId, active);
+    }
+
+    private void flushLoop() {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        long nextForce = System.nanoTime() + intervalNanos;
+        while (true) {
+            List<CompletableFuture<Message>> futures;
+            List<Message> messages;
+            LogSegment segment;
+            boolean stopping;
+            appendLock.lock();
+            try {
+                // BATCHED also wakes up when its next force is due
+                long waitNanos = nextForce - System.nanoTime();
+                while (pending.isEmpty() && !closed && (durability != Durability.BATCHED || waitNanos > 0)) {
+                    if (durability == Durability.BATCHED) {
+                        waitNanos = appended.awaitNanos(waitNanos);
+                    } else {
+                        appended.awaitUninterruptibly();
+                    }
+                }
+                stopping = closed;
+                futures = pending;
+                messages = pendingMessages;
+                pending = new ArrayList<>();
+                pendingMessages = new ArrayList<>();
+                boolean needsForce = durability.isCommitAwaited() ? !futures.isEmpty()
+                        : durability == Durability.BATCHED && dirty && (stopping || nextForce - System.nanoTime() <= 0);
+                if (needsForce) {
+                    dirty = false;
+                }
+                segment = needsForce ? active : null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                appendLock.unlock();
+            }
+            MessagePersistenceException forceFailure = null;
+            if (segment != null) {
+                try {
+                    // Forcing the active segment covers every record appended before it was taken
+                    force(segment);
+                } catch (UncheckedIOException e) {
+                    forceFailure = forceFailed(segment, e, futures.size());
+                }
+            }
+            if (nextForce - System.nanoTime() <= 0) {
+                nextForce = System.nanoTime() + intervalNanos;
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                if (forceFailure != null) {
+                    futures.get(i).completeExceptionally(forceFailure);
+                } else {
+                    futures.get(i).complete(messages.get(i));
+                }
+            }
+            if (stopping) {
+                return;
+            }
+        }
+    }
+
+    // The records stay in the mapping and the next force covers them again. STRICT appends that
+    // were waiting for this one fail, BATCHED ones never promised a force and still complete
+    private MessagePersistenceException forceFailed(LogSegment segment, UncheckedIOException e, int waiting) {
+        ServerLogger.logError("Failed to force log segment " + segment.getPath() + ": " + e.getMessage(), e);
+        appendLock.lock();
+        try {
+            dirty = true;
+        } finally {
+            appendLock.unlock();
+        }
+        if (!durability.isCommitAwaited() || waiting == 0) {
+            return null;
+        }
+        return failure("Failed to force " + waiting + " messages to " + segment.getPath(), e, waiting);
+    }
+
+    private void force(LogSegment segment) {
+        long start = System.nanoTime();
+        segment.force();
+        forceTime.record(System.nanoTime() - start);
+    }
+
+    private static Message decode(ByteBuffer record) {
+        long id = record.getLong();
+        long timestamp = record.getLong();
+        byte[] sender = new byte[record.getShort()];
+        record.get(sender);
+        byte[] content = new byte[record.remaining()];
+        record.get(content);
+        return new Message.Builder()
+                .id(id)
+                .sender(new String(sender, StandardCharsets.UTF_8))
+                .content(new String(content, StandardCharsets.UTF_8))
+                .timestamp(timestamp)
+                .build();
+    }
+
+    private MessagePersistenceException failure(String message, Throwable cause, int messages) {
+        failedCount.addAndGet(messages);
+        return MessagePersistenceException.builder()
+                .errorCode(MessagePersistenceException.ErrorCode.SAVE_FAILED)
+                .message(message)
+                .cause(cause)
+                .build();
+    }
+}
@@ -1,17 +1,20 @@
 package com.datamannen1013.javachattapp.server.database.models;
 
-import java.sql.Timestamp;
-
-public record Message(String id, String sender, String content, Timestamp timestamp) {
+/**
+ * A stored chat message.
+ * @param id Assigned by the store, grows with every message
+ * @param timestamp When it was stored, in epoch milliseconds
+ */
+public record Message(long id, String sender, String content, long timestamp) {
 
     // Builder pattern for more flexible construction
     public static class Builder {
-        private String id;
+        private long id;
         private String sender;
         private String content;
-        private Timestamp timestamp;
+        private long timestamp;
 
-        public Builder id(String id) {
+        public Builder id(long id) {
             this.id = id;
             return this;
         }
@@ -26,7 +29,7 @@ public record Message(String id, String sender, String content, Timestamp timest
             return this;
         }
 
-        public Builder timestamp(Timestamp timestamp) {
+        public Builder timestamp(long timestamp) {
             this.timestamp = timestamp;
             return this;
         }
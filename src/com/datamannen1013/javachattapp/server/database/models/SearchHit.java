@@ -0,0 +1,7 @@
+package com.datamannen1013.javachattapp.server.database.models;
+
+/**
+ * One search result with its bm25 rank, lower is a better match.
+ */
+public record SearchHit(Message message, double rank) {
+}
@@ -0,0 +1,63 @@
+package com.datamannen1013.javachattapp.server.database.models;
+
+/**
+ * A full-text search with its filters and the position to continue after.
+ * @param terms FTS5 match expression
+ * @param sender Only messages from this user, null for any
+ * @param from Earliest timestamp, inclusive, in epoch milliseconds
+ * @param to Latest timestamp, exclusive, in epoch milliseconds
+ * @param afterRank Rank of the last hit already seen
+ * @param afterId Id of the last hit already seen, Long.MAX_VALUE for the first page
+ * @param limit Maximum number of hits
+ */
+public record SearchQuery(String terms, String sender, long from, long to,
+                          double afterRank, long afterId, int limit) {
+
+    public static final long MIN_TIMESTAMP = Long.MIN_VALUE;
+    public static final long MAX_TIMESTAMP = Long.MAX_VALUE;
+
+    public static class Builder {
+        private String terms;
+        private String sender;
+        private long from = MIN_TIMESTAMP;
+        private long to = MAX_TIMESTAMP;
+        private double afterRank = Double.NEGATIVE_INFINITY;
+        private long afterId = Long.MAX_VALUE;
+        private int limit = 20;
+
+        public Builder terms(String terms) {
+            this.terms = terms;
+            return this;
+        }
+
+        public Builder sender(String sender) {
+            this.sender = sender;
+            return this;
+        }
+
+        public Builder from(long from) {
+            this.from = from;
+            return this;
+        }
+
+        public Builder to(long to) {
+            this.to = to;
+            return this;
+        }
+
+        public Builder after(double rank, long id) {
+            this.afterRank = rank;
+            this.afterId = id;
+            return this;
+        }
+
+        public Builder limit(int limit) {
+            this.limit = limit;
+            return this;
+        }
+
+        public SearchQuery build() {
+            return new SearchQuery(terms, sender, from, to, afterRank, afterId, limit);
+        }
+    }
+}
@@ -5,47 +5,137 @@ import com.datamannen1013.javachattapp.server.database.DatabaseManager;
 import com.datamannen1013.javachattapp.server.database.exceptions.MessagePersistenceException;
 import com.datamannen1013.javachattapp.server.database.exceptions.MessageRetrievalException;
 import com.datamannen1013.javachattapp.server.database.models.Message;
+import com.datamannen1013.javachattapp.server.database.models.SearchHit;
+import com.datamannen1013.javachattapp.server.database.models.SearchQuery;
+import com.datamannen1013.javachattapp.server.jfr.MessagePersistEvent;
+import com.datamannen1013.javachattapp.server.logger.ClassLogger;
 import com.datamannen1013.javachattapp.server.logger.ServerLogger;
+import com.datamannen1013.javachattapp.server.metrics.ServerMetrics;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class MessageRepository {
+    private static final ClassLogger LOG = ServerLogger.forClass(MessageRepository.class);
     private static DatabaseManager databaseManager = null;
+    private static final Map<String, Long> SENDER_IDS = new ConcurrentHashMap<>();
 
     public MessageRepository(DatabaseManager databaseManager) {
         this.databaseManager = databaseManager;
     }
 
-    public static void saveMessage(String sender, String content) {
+    /**
+     * Saves a chat message. Join and leave notices are only logged.
+     * @return true if the message was stored
+     */
+    public static boolean saveMessage(String sender, String content) {
         if (content.contains(ServerConstants.LEAVE_MESSAGE_SUFFIX)){
-            ServerLogger.logInfo("User left the chat: " + sender);
+            LOG.logDebug("User left the chat: {}", sender);
+            return false;
         }
         else if (content.contains(ServerConstants.JOIN_MESSAGE_SUFFIX)){
-            ServerLogger.logInfo("User joined the chat: " + sender);
+            LOG.logDebug("User joined the chat: {}", sender);
+            return false;
         }
         else {
+            long start = System.nanoTime();
+            MessagePersistEvent event = new MessagePersistEvent();
+            event.begin();
+            boolean saved = false;
             try (Connection conn = databaseManager.getConnection();
-                 PreparedStatement pstmt = conn.prepareStatement(ServerConstants.INSERT_MESSAGE)) {
+                 PreparedStatement pstmt = conn.prepareStatement(ServerConstants.INSERT_MESSAGE);
+                 PreparedStatement ftsStmt = conn.prepareStatement(ServerConstants.INSERT_MESSAGE_FTS)) {
 
-                pstmt.setString(1, sender);
-                pstmt.setString(2, content);
-                pstmt.executeUpdate();
+                long senderId = getSenderId(conn, sender);
+                conn.setAutoCommit(false);
+                try {
+                    pstmt.setLong(1, senderId);
+                    pstmt.setString(2, content);
+                    pstmt.setLong(3, System.currentTimeMillis());
+                    pstmt.executeUpdate();
+                    indexMessage(conn, ftsStmt, content);
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
 
-                ServerLogger.logInfo("Message saved successfully from: " + sender);
+                LOG.logDebug("Message saved successfully from: {}", sender);
+                saved = true;
+                return true;
             } catch (SQLException e) {
                 throw MessagePersistenceException.builder()
                         .errorCode(MessagePersistenceException.ErrorCode.SAVE_FAILED)
                         .message("Failed to save message from " + sender)
                         .cause(e)
                         .build();
+            } finally {
+                ServerMetrics.DB_SAVE_MESSAGE.record(System.nanoTime() - start);
+                event.record("sqlite", 1, content.length(), saved);
             }
         }
 
     }
 
+    /**
+     * Full-text search over stored messages.
+     * @return Up to query.limit() hits, best match first
+     */
+    public static List<SearchHit> searchMessages(SearchQuery query) {
+        long start = System.nanoTime();
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(ServerConstants.SEARCH_MESSAGES)) {
+
+            pstmt.setString(1, query.terms());
+            pstmt.setString(2, query.sender());
+            pstmt.setLong(3, query.from());
+            pstmt.setLong(4, query.to());
+            pstmt.setDouble(5, query.afterRank());
+            pstmt.setDouble(6, query.afterRank());
+            pstmt.setLong(7, query.afterId());
+            pstmt.setInt(8, query.limit());
+            List<SearchHit> hits = new ArrayList<>(query.limit());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    hits.add(new SearchHit(createMessageFromResultSet(rs), rs.getDouble("rank")));
+                }
+            }
+            return hits;
+        } catch (SQLException e) {
+            MessageRetrievalException.QueryDetails queryDetails = new MessageRetrievalException.QueryDetails.Builder()
+                    .queryType("SEARCH")
+                    .limit(query.limit())
+                    .filterCriteria(query.terms())
+                    .executionTime(System.currentTimeMillis())
+                    .build();
+
+            throw MessageRetrievalException.builder()
+                    .errorCode(MessageRetrievalException.ErrorCode.QUERY_FAILED)
+                    .message("Failed to search messages")
+                    .cause(e)
+                    .queryDetails(queryDetails)
+                    .build();
+        } finally {
+            ServerMetrics.DB_SEARCH_MESSAGES.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return false for join and leave notices, which are never stored
+     */
+    public static boolean isStoredMessage(String content) {
+        return !content.contains(ServerConstants.LEAVE_MESSAGE_SUFFIX)
+                && !content.contains(ServerConstants.JOIN_MESSAGE_SUFFIX);
+    }
+
     public static List<Message> getRecentMessages(int limit) throws SQLException {
+        long start = System.nanoTime();
         try (Connection conn = databaseManager.getConnection();
              PreparedStatement pstmt = prepareRecentMessagesQuery(conn, limit)) {
 
@@ -63,6 +153,268 @@ public class MessageRepository {
                     .cause(e)
                     .queryDetails(queryDetails)
                     .build();
+        } finally {
+            ServerMetrics.DB_RECENT_MESSAGES.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Streams one page of history, oldest first, without loading the page into memory.
+     * Each chunk of fetchSize rows is read with its own keyset query, so no connection
+     * is held between chunks.
+     * @param beforeId Only messages with a smaller id are streamed
+     * @param limit Maximum number of messages
+     * @param fetchSize Rows per chunk
+     * @param sink Receives the messages, and can stop the stream
+     * @return The number of messages the sink accepted
+     */
+    public static int streamMessagesBefore(long beforeId, int limit, int fetchSize, MessageSink sink) {
+        try {
+            long nextId = findPageStart(beforeId, limit);
+            int[] accepted = {0};
+            boolean[] stopped = {false};
+            MessageSink counting = message -> {
+                if (!sink.accept(message)) {
+                    stopped[0] = true;
+                    return false;
+                }
+                accepted[0]++;
+                return true;
+            };
+            while (accepted[0] < limit) {
+                int chunkSize = Math.min(fetchSize, limit - accepted[0]);
+                int acceptedBefore = accepted[0];
+                long start = System.nanoTime();
+                long lastId = streamChunk(nextId, beforeId, chunkSize, counting);
+                ServerMetrics.DB_STREAM_MESSAGES.record(System.nanoTime() - start);
+                if (stopped[0] || accepted[0] - acceptedBefore < chunkSize || !sink.endOfChunk()) {
+                    break;
+                }
+                nextId = lastId + 1;
+            }
+            return accepted[0];
+        } catch (SQLException e) {
+            MessageRetrievalException.QueryDetails queryDetails = new MessageRetrievalException.QueryDetails.Builder()
+                    .queryType("MESSAGES_BEFORE")
+                    .limit(limit)
+                    .filterCriteria("id < " + beforeId)
+                    .executionTime(System.currentTimeMillis())
+                    .build();
+
+            throw MessageRetrievalException.builder()
+                    .errorCode(MessageRetrievalException.ErrorCode.PAGINATION_ERROR)
+                    .message("Failed to stream messages before id " + beforeId)
+                    .cause(e)
+                    .queryDetails(queryDetails)
+                    .build();
+        }
+    }
+
+    /**
+     * @return Number of messages in the messages table
+     */
+    public static long countMessages() {
+        long start = System.nanoTime();
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(ServerConstants.COUNT_MESSAGES);
+             ResultSet rs = pstmt.executeQuery()) {
+            rs.next();
+            return rs.getLong(1);
+        } catch (SQLException e) {
+            throw retrievalFailure("COUNT", "Failed to count messages", e, 0, null);
+        } finally {
+            ServerMetrics.DB_COUNT_MESSAGES.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return Number of messages with afterId &lt; id &lt; beforeId, at most limit
+     */
+    public static int countMessagesBetween(long afterId, long beforeId, int limit) {
+        long start = System.nanoTime();
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(ServerConstants.COUNT_MESSAGES_BETWEEN)) {
+
+            pstmt.setLong(1, afterId);
+            pstmt.setLong(2, beforeId);
+            pstmt.setInt(3, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        } catch (SQLException e) {
+            throw retrievalFailure("COUNT_BETWEEN", "Failed to count messages", e, limit,
+                    afterId + " < id < " + beforeId);
+        } finally {
+            ServerMetrics.DB_COUNT_MESSAGES.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return Up to limit of the oldest messages with an id of at most upToId, oldest first
+     */
+    public static List<Message> getOldestMessages(long upToId, int limit) {
+        long start = System.nanoTime();
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(ServerConstants.GET_OLDEST_MESSAGES)) {
+
+            pstmt.setLong(1, upToId);
+            pstmt.setInt(2, limit);
+            return executeMessageQuery(pstmt);
+        } catch (SQLException e) {
+            throw retrievalFailure("OLDEST_MESSAGES", "Failed to read the oldest messages", e, limit,
+                    "id <= " + upToId);
+        } finally {
+            ServerMetrics.DB_OLDEST_MESSAGES.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Removes messages that have been written to an archive file, in one transaction:
+     * they move from the search index to the archive search index and leave the messages table.
+     * @param messages Consecutive messages by id, oldest first
+     */
+    public static void removeArchivedMessages(List<Message> messages) {
+        long start = System.nanoTime();
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement archiveFts = conn.prepareStatement(ServerConstants.INSERT_ARCHIVE_FTS);
+             PreparedStatement deleteFts = conn.prepareStatement(ServerConstants.DELETE_MESSAGE_FTS);
+             PreparedStatement delete = conn.prepareStatement(ServerConstants.DELETE_MESSAGES_BETWEEN)) {
+
+            conn.setAutoCommit(false);
+            try {
+                for (Message message : messages) {
+                    long id = message.id();
+                    archiveFts.setLong(1, id);
+                    archiveFts.setString(2, message.content());
+                    archiveFts.addBatch();
+                    deleteFts.setLong(1, id);
+                    deleteFts.setString(2, message.content());
+                    deleteFts.addBatch();
+                }
+                archiveFts.executeBatch();
+                deleteFts.executeBatch();
+                delete.setLong(1, messages.getFirst().id());
+                delete.setLong(2, messages.getLast().id());
+                delete.executeUpdate();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw MessagePersistenceException.builder()
+                    .errorCode(MessagePersistenceException.ErrorCode.DELETE_FAILED)
+                    .message("Failed to remove " + messages.size() + " archived messages")
+                    .cause(e)
+                    .build();
+        } finally {
+            ServerMetrics.DB_REMOVE_ARCHIVED.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Full-text search over archived messages, which only the archive holds.
+     * @return Ids of up to limit matches after (afterRank, afterId), mapped to their rank, best match first
+     */
+    public static Map<Long, Double> searchArchivedMessages(String terms, double afterRank, long afterId, int limit) {
+        long start = System.nanoTime();
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(ServerConstants.SEARCH_ARCHIVED_MESSAGES)) {
+
+            pstmt.setString(1, terms);
+            pstmt.setDouble(2, afterRank);
+            pstmt.setDouble(3, afterRank);
+            pstmt.setLong(4, afterId);
+            pstmt.setInt(5, limit);
+            Map<Long, Double> matches = new LinkedHashMap<>();
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    matches.put(rs.getLong("id"), rs.getDouble("rank"));
+                }
+            }
+            return matches;
+        } catch (SQLException e) {
+            throw retrievalFailure("ARCHIVE_SEARCH", "Failed to search archived messages", e, limit, terms);
+        } finally {
+            ServerMetrics.DB_SEARCH_ARCHIVED.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Id of the sender's row in users, added on their first message. Ids are cached, since
+     * user rows are never removed. Must not run inside a transaction that may roll back.
+     */
+    static long getSenderId(Connection conn, String username) throws SQLException {
+        Long cached = SENDER_IDS.get(username);
+        if (cached != null) {
+            return cached;
+        }
+        try (PreparedStatement insert = conn.prepareStatement(ServerConstants.INSERT_SENDER);
+             PreparedStatement select = conn.prepareStatement(ServerConstants.GET_USER_ID)) {
+            insert.setString(1, username);
+            insert.executeUpdate();
+            select.setString(1, username);
+            try (ResultSet rs = select.executeQuery()) {
+                rs.next();
+                long id = rs.getLong(1);
+                SENDER_IDS.put(username, id);
+                return id;
+            }
+        }
+    }
+
+    // Private methods - search index
+    /**
+     * Adds the message just inserted on this connection to the search index.
+     * Must run in the inserting transaction, so the index never misses a stored message.
+     */
+    private static void indexMessage(Connection conn, PreparedStatement ftsStmt, String content) throws SQLException {
+        try (PreparedStatement lastIdQuery = conn.prepareStatement(ServerConstants.GET_LAST_INSERT_ID);
+             ResultSet rs = lastIdQuery.executeQuery()) {
+            rs.next();
+            ftsStmt.setLong(1, rs.getLong(1));
+        }
+        ftsStmt.setString(2, content);
+        ftsStmt.executeUpdate();
+    }
+
+    // Private methods - streaming
+    // Id of the oldest message on the page, 0 if fewer than limit messages are older than beforeId
+    private static long findPageStart(long beforeId, int limit) throws SQLException {
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(ServerConstants.GET_PAGE_START_ID)) {
+
+            pstmt.setLong(1, beforeId);
+            pstmt.setInt(2, limit - 1);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    // Pushes rows as they are read, returns the id of the last row read
+    private static long streamChunk(long fromId, long beforeId, int chunkSize, MessageSink sink) throws SQLException {
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(ServerConstants.GET_MESSAGES_BETWEEN)) {
+
+            pstmt.setLong(1, fromId);
+            pstmt.setLong(2, beforeId);
+            pstmt.setInt(3, chunkSize);
+            pstmt.setFetchSize(chunkSize);
+            long lastId = fromId - 1;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    Message message = createMessageFromResultSet(rs);
+                    lastId = message.id();
+                    if (!sink.accept(message)) {
+                        break;
+                    }
+                }
+            }
+            return lastId;
         }
     }
 
@@ -83,12 +435,29 @@ public class MessageRepository {
         return messages;
     }
 
+    private static MessageRetrievalException retrievalFailure(String queryType, String message, SQLException cause,
+                                                              int limit, String criteria) {
+        MessageRetrievalException.QueryDetails queryDetails = new MessageRetrievalException.QueryDetails.Builder()
+                .queryType(queryType)
+                .limit(limit)
+                .filterCriteria(criteria)
+                .executionTime(System.currentTimeMillis())
+                .build();
+
+        return MessageRetrievalException.builder()
+                .errorCode(MessageRetrievalException.ErrorCode.QUERY_FAILED)
+                .message(message)
+                .cause(cause)
+                .queryDetails(queryDetails)
+                .build();
+    }
+
     private static Message createMessageFromResultSet(ResultSet rs) throws SQLException {
         return new Message(
-                rs.getString("id"),
+                rs.getLong("id"),
                 rs.getString("username"),
                 rs.getString("message"),
-                rs.getTimestamp("timestamp")
+                rs.getLong("timestamp")
         );
     }
 }
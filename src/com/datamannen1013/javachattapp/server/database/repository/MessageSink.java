@@ -0,0 +1,26 @@
+package com.datamannen1013.javachattapp.server.database.repository;
+
+import com.datamannen1013.javachattapp.server.database.models.Message;
+
+/**
+ * Receives messages streamed from the repository, oldest first.
+ * Rows are pushed while they are read, in chunks of the fetch size; between chunks no
+ * database connection is held, so that is where a sink may wait for a slow consumer.
+ */
+public interface MessageSink {
+
+    /**
+     * Takes one message. Called with a database connection held, so it must not block.
+     * @param message The next message
+     * @return false to stop streaming
+     */
+    boolean accept(Message message);
+
+    /**
+     * Called after each chunk, before the next one is read.
+     * @return false to stop streaming
+     */
+    default boolean endOfChunk() {
+        return true;
+    }
+}
@@ -0,0 +1,259 @@
+package com.datamannen1013.javachattapp.server.database.repository;
+
+import com.datamannen1013.javachattapp.server.constants.ServerConstants;
+import com.datamannen1013.javachattapp.server.database.DatabaseManager;
+import com.datamannen1013.javachattapp.server.database.exceptions.MessagePersistenceException;
+import com.datamannen1013.javachattapp.server.database.models.Message;
+import com.datamannen1013.javachattapp.server.jfr.MessagePersistEvent;
+import com.datamannen1013.javachattapp.server.metrics.LatencyHistogram;
+import com.datamannen1013.javachattapp.server.metrics.MetricsRegistry;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind queue for chat messages.
+ * Callers queue a message and get a future; a single writer thread commits queued
+ * messages in one transaction per group, once the group is full or the oldest message
+ * has waited the max delay. Futures complete in id order, on the writer thread.
+ * Every future of a failed group fails with the same exception.
+ */
+public class MessageWriter {
+    private final DatabaseManager databaseManager;
+    private final BlockingQueue<PendingMessage> queue;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final long offerTimeoutMillis;
+    private final Thread writerThread;
+    private volatile boolean closed = false;
+
+    // Metrics
+    private final LatencyHistogram commitTime = new LatencyHistogram();
+    private final AtomicLong committedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+
+    // Queued on shutdown, tells the writer to stop after the messages ahead of it
+    private static final PendingMessage SHUTDOWN = new PendingMessage(null, null);
+
+    public MessageWriter(DatabaseManager databaseManager, int capacity, int maxBatchSize,
+                         long maxDelayMillis, long offerTimeoutMillis) {
+        this.databaseManager = databaseManager;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.writerThread = new Thread(this::writeLoop, "message-writer");
+        this.writerThread.setDaemon(true);
+        MetricsRegistry.getInstance().register("db.writer.commit", commitTime);
+    }
+
+    public void start() {
+        writerThread.start();
+    }
+
+    /**
+     * Queues a message for the next group commit. Waits a short while if the queue is full.
+     * @return Completes with the committed message, or exceptionally with a
+     *         MessagePersistenceException if it could not be queued or saved
+     */
+    public CompletableFuture<Message> submit(String sender, String content) {
+        PendingMessage message = new PendingMessage(sender, content);
+        if (closed) {
+            message.fail(failure("Message writer is shut down", null, 1));
+            return message.saved;
+        }
+        try {
+            if (!queue.offer(message, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                message.fail(failure("Write queue is full, message from " + sender + " dropped", null, 1));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            message.fail(failure("Interrupted while queueing message from " + sender, e, 1));
+        }
+        return message.saved;
+    }
+
+    /**
+     * Commits everything queued so far and stops the writer thread.
+     */
+    public void shutdown() {
+        closed = true;
+        try {
+            queue.put(SHUTDOWN);
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Messages that raced with shutdown, after the marker
+        List<PendingMessage> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        remaining.remove(SHUTDOWN);
+        if (!remaining.isEmpty()) {
+            commit(remaining);
+        }
+    }
+
+    // Metrics
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    public long getCommittedCount() {
+        return committedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * @return Nanoseconds per group commit, from borrowing the connection to commit
+     */
+    public LatencyHistogram getCommitTime() {
+        return commitTime;
+    }
+
+    // Private methods - writer thread
+    private void writeLoop() {
+        List<PendingMessage> batch = new ArrayList<>(maxBatchSize);
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize && batch.get(batch.size() - 1) != SHUTDOWN) {
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    PendingMessage next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+            if (batch.remove(SHUTDOWN)) {
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                commit(batch);
+            }
+            batch.clear();
+        }
+    }
+
+    private void commit(List<PendingMessage> batch) {
+        long start = System.nanoTime();
+        MessagePersistEvent event = new MessagePersistEvent();
+        event.begin();
+        long lastId;
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(ServerConstants.INSERT_MESSAGE);
+             PreparedStatement lastIdQuery = conn.prepareStatement(ServerConstants.GET_LAST_INSERT_ID);
+             PreparedStatement ftsStmt = conn.prepareStatement(ServerConstants.INSERT_MESSAGE_FTS)) {
+            // Looked up before the transaction, a new sender's row is kept even if the group fails
+            long[] senderIds = new long[batch.size()];
+            for (int i = 0; i < batch.size(); i++) {
+                senderIds[i] = MessageRepository.getSenderId(conn, batch.get(i).sender);
+            }
+            conn.setAutoCommit(false);
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    PendingMessage message = batch.get(i);
+                    pstmt.setLong(1, senderIds[i]);
+                    pstmt.setString(2, message.content);
+                    pstmt.setLong(3, message.timestamp);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                // The transaction holds the write lock, so the group got consecutive ids
+                try (ResultSet rs = lastIdQuery.executeQuery()) {
+                    rs.next();
+                    lastId = rs.getLong(1);
+                }
+                // Same transaction, the search index never misses a stored message
+                long id = lastId - batch.size() + 1;
+                for (PendingMessage message : batch) {
+                    ftsStmt.setLong(1, id++);
+                    ftsStmt.setString(2, message.content);
+                    ftsStmt.addBatch();
+                }
+                ftsStmt.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException | RuntimeException e) {
+            MessagePersistenceException failure =
+                    failure("Failed to save a group of " + batch.size() + " messages", e, batch.size());
+            batch.forEach(message -> message.fail(failure));
+            event.record("sqlite", batch.size(), contentLength(batch), false);
+            return;
+        }
+        commitTime.record(System.nanoTime() - start);
+        event.record("sqlite", batch.size(), contentLength(batch), true);
+        batchCount.incrementAndGet();
+        committedCount.addAndGet(batch.size());
+        long firstId = lastId - batch.size() + 1;
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).complete(firstId + i);
+        }
+    }
+
+    private static int contentLength(List<PendingMessage> batch) {
+        int length = 0;
+        for (PendingMessage message : batch) {
+            length += message.content.length();
+        }
+        return length;
+    }
+
+    private MessagePersistenceException failure(String message, Throwable cause, int messages) {
+        failedCount.addAndGet(messages);
+        return MessagePersistenceException.builder()
+                .errorCode(MessagePersistenceException.ErrorCode.SAVE_FAILED)
+                .message(message)
+                .cause(cause)
+                .build();
+    }
+
+    private static final class PendingMessage {
+        private final String sender;
+        private final String content;
+        private final long timestamp = System.currentTimeMillis();
+        private final CompletableFuture<Message> saved = new CompletableFuture<>();
+
+        PendingMessage(String sender, String content) {
+            this.sender = sender;
+            this.content = content;
+        }
+
+        void complete(long id) {
+            saved.complete(new Message(id, sender, content, timestamp));
+        }
+
+        void fail(MessagePersistenceException failure) {
+            saved.completeExceptionally(failure);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.datamannen1013.javachattapp.server.database.repository;
+
+import com.datamannen1013.javachattapp.server.database.MessageStore;
+import com.datamannen1013.javachattapp.server.database.archive.MessageArchive;
+import com.datamannen1013.javachattapp.server.database.archive.RetentionJob;
+import com.datamannen1013.javachattapp.server.database.models.Message;
+import com.datamannen1013.javachattapp.server.database.models.SearchHit;
+import com.datamannen1013.javachattapp.server.database.models.SearchQuery;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Keeps messages in the SQLite messages table: appends go through the write-behind
+ * MessageWriter, reads and search through MessageRepository.
+ * Messages the retention job has moved to the archive are read from there, so history
+ * pages and search cover both without the caller knowing where a message lives.
+ */
+public class SqliteMessageStore implements MessageStore {
+    private static final Comparator<SearchHit> BEST_MATCH_FIRST = Comparator.comparingDouble(SearchHit::rank)
+            .thenComparing(hit -> hit.message().id(), Comparator.reverseOrder());
+
+    private final MessageWriter writer;
+    private final MessageArchive archive;
+    private final RetentionJob retentionJob;
+
+    public SqliteMessageStore(MessageWriter writer, MessageArchive archive, RetentionJob retentionJob) {
+        this.writer = writer;
+        this.archive = archive;
+        this.retentionJob = retentionJob;
+    }
+
+    @Override
+    public CompletableFuture<Message> append(String sender, String content) {
+        return writer.submit(sender, content);
+    }
+
+    /**
+     * Archived messages come first, the page ends with what is still in the messages table.
+     */
+    @Override
+    public int streamBefore(long beforeId, int limit, int fetchSize, MessageSink sink) {
+        Lock lock = archive.getMoveLock().readLock();
+        lock.lock();
+        try {
+            long archivedUpTo = archive.getLastId();
+            if (archivedUpTo == 0) {
+                return MessageRepository.streamMessagesBefore(beforeId, limit, fetchSize, sink);
+            }
+            int inTable = MessageRepository.countMessagesBetween(archivedUpTo, beforeId, limit);
+            int accepted = 0;
+            if (inTable < limit) {
+                List<Message> archived = archive.readBefore(Math.min(beforeId, archivedUpTo + 1), limit - inTable);
+                for (Message message : archived) {
+                    if (!sink.accept(message)) {
+                        return accepted;
+                    }
+                    accepted++;
+                    if (accepted % fetchSize == 0 && !sink.endOfChunk()) {
+                        return accepted;
+                    }
+                }
+            }
+            if (inTable > 0) {
+                accepted += MessageRepository.streamMessagesBefore(beforeId, inTable, fetchSize, sink);
+            }
+            return accepted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Merges the best hits from the messages table and the archive. Both are ranked with
+     * bm25, but against their own index statistics, so the merged order is approximate.
+     */
+    @Override
+    public List<SearchHit> search(SearchQuery query) {
+        List<SearchHit> hits;
+        List<SearchHit> archived;
+        Lock lock = archive.getMoveLock().readLock();
+        lock.lock();
+        try {
+            hits = MessageRepository.searchMessages(query);
+            archived = archive.search(query);
+        } finally {
+            lock.unlock();
+        }
+        if (archived.isEmpty()) {
+            return hits;
+        }
+        List<SearchHit> merged = new ArrayList<>(hits.size() + archived.size());
+        merged.addAll(hits);
+        merged.addAll(archived);
+        merged.sort(BEST_MATCH_FIRST);
+        return merged.subList(0, Math.min(query.limit(), merged.size()));
+    }
+
+    @Override
+    public String summary() {
+        return "SQLite store committed " + writer.getCommittedCount() + " messages in "
+                + writer.getBatchCount() + " groups, " + writer.getFailedCount() + " failed, p99 commit "
+                + writer.getCommitTime().getValueAtPercentile(99) / 1000 + " us, archived "
+                + retentionJob.getArchivedCount() + " in " + retentionJob.getPassCount() + " retention passes";
+    }
+
+    @Override
+    public void close() {
+        retentionJob.shutdown();
+        writer.shutdown();
+    }
+}
@@ -0,0 +1,27 @@
+package com.datamannen1013.javachattapp.server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The broadcast dispatcher handing one batch of messages to every client's outbound queue.
+ */
+@Name("com.datamannen1013.javachattapp.FanOut")
+@Label("Broadcast Fan-Out")
+@Category({"Chat Server", "Messages"})
+@StackTrace(false)
+public class FanOutEvent extends Event {
+    @Label("Messages")
+    public int messageCount;
+
+    @Label("Message Length")
+    @Description("Characters in the batch, all messages together")
+    public int messageLength;
+
+    @Label("Recipients")
+    public int recipients;
+}
@@ -0,0 +1,36 @@
+package com.datamannen1013.javachattapp.server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A client joining: waiting for and validating the join line, registering the client and
+ * sending it the online users and recent history. sinceAccept also counts the time the
+ * accepted connection waited for a handshake thread.
+ */
+@Name("com.datamannen1013.javachattapp.Handshake")
+@Label("Handshake")
+@Category({"Chat Server", "Connections"})
+@StackTrace(false)
+public class HandshakeEvent extends Event {
+    @Label("User")
+    public String user;
+
+    @Label("Join Line Length")
+    @Description("Characters in the join line")
+    public int messageLength;
+
+    @Label("Recipients")
+    @Description("Clients online after the join, who get the join notice")
+    public int recipients;
+
+    @Label("Since Accept")
+    @Description("Time from accepting the connection until the client joined")
+    @Timespan(Timespan.NANOSECONDS)
+    public long sinceAccept;
+}
@@ -0,0 +1,27 @@
+package com.datamannen1013.javachattapp.server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Recent history being queued for a client that just joined.
+ */
+@Name("com.datamannen1013.javachattapp.HistoryReplay")
+@Label("History Replay")
+@Category({"Chat Server", "Messages"})
+@StackTrace(false)
+public class HistoryReplayEvent extends Event {
+    @Label("User")
+    public String user;
+
+    @Label("Messages")
+    public int messageCount;
+
+    @Label("Message Length")
+    @Description("Characters in the replayed lines, all together")
+    public int messageLength;
+}
@@ -0,0 +1,44 @@
+package com.datamannen1013.javachattapp.server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Messages being stored: a single save, a group commit of the message writer,
+ * or an append to the message log.
+ */
+@Name("com.datamannen1013.javachattapp.MessagePersist")
+@Label("Message Persist")
+@Category({"Chat Server", "Database"})
+@StackTrace(false)
+public class MessagePersistEvent extends Event {
+    @Label("Store")
+    public String store;
+
+    @Label("Messages")
+    public int messageCount;
+
+    @Label("Message Length")
+    @Description("Characters of content stored, all messages together")
+    public int messageLength;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+
+    /**
+     * Ends the event and commits it, if it is enabled and over its threshold.
+     */
+    public void record(String store, int messageCount, int messageLength, boolean succeeded) {
+        if (shouldCommit()) {
+            this.store = store;
+            this.messageCount = messageCount;
+            this.messageLength = messageLength;
+            this.succeeded = succeeded;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.datamannen1013.javachattapp.server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One line from a client being handled, from reading it until it is published to the
+ * dispatcher or the request it carries is served.
+ */
+@Name("com.datamannen1013.javachattapp.MessageReceive")
+@Label("Message Receive")
+@Category({"Chat Server", "Messages"})
+@StackTrace(false)
+public class MessageReceiveEvent extends Event {
+    @Label("User")
+    public String user;
+
+    @Label("Message Length")
+    @Description("Characters in the received line")
+    public int messageLength;
+
+    @Label("Recipients")
+    @Description("Clients online when the line was received")
+    public int recipients;
+}
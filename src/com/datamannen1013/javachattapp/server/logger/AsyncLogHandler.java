@@ -0,0 +1,215 @@
+package com.datamannen1013.javachattapp.server.logger;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Writes log records to a file from a background thread, so logging never waits on disk.
+ * Built like the BroadcastDispatcher ring: a thread that logs claims a slot in a preallocated
+ * ring and publishes its record there without locks, and one writer thread formats every
+ * published record in order and writes the whole batch before a single flush.
+ * The file is a RollingLogFile, which starts a new file when the current one is full.
+ * <p>
+ * When the ring is full the LogOverflowPolicy decides if the record is dropped or the caller
+ * waits. Dropped records are counted, and the count is written to the file when it is closed.
+ */
+public final class AsyncLogHandler extends Handler {
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int MAX_BATCH = 512;
+
+    private final LogOverflowPolicy policy;
+    private final RollingLogFile file;
+
+    // Ring buffer - slots are written by the thread that claimed them, read by the writer thread
+    private final int mask;
+    private final int indexShift;
+    private final LogRecord[] records;
+    private final AtomicIntegerArray publishedRound;
+    private final AtomicLong claimSequence = new AtomicLong(-1);
+    private volatile long writtenSequence = -1;
+    private volatile long flushedSequence = -1;
+
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    // Metrics
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile long batchCount;
+
+    /**
+     * Starts the writer thread, which from then on owns file.
+     * @param ringSize Number of slots, rounded up to a power of two
+     */
+    public AsyncLogHandler(RollingLogFile file, int ringSize, LogOverflowPolicy policy) {
+        if (ringSize < 2) {
+            throw new IllegalArgumentException("Ring size must be at least 2");
+        }
+        int capacity = Integer.bitCount(ringSize) == 1 ? ringSize : Integer.highestOneBit(ringSize) << 1;
+        this.policy = policy;
+        this.file = file;
+        this.mask = capacity - 1;
+        this.indexShift = Integer.numberOfTrailingZeros(capacity);
+        this.records = new LogRecord[capacity];
+        this.publishedRound = new AtomicIntegerArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            publishedRound.set(i, -1);
+        }
+        this.writerThread = new Thread(this::writeLoop, "server-log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Queues the record for the writer thread. Never takes a lock; when the ring is full the
+     * record is dropped or the caller waits, depending on the overflow policy.
+     */
+    @Override
+    public void publish(LogRecord logRecord) {
+        if (!running || !isLoggable(logRecord)) {
+            return;
+        }
+        long sequence;
+        while (true) {
+            long claimed = claimSequence.get();
+            if (claimed - writtenSequence >= records.length) {
+                if (policy.drops(logRecord) || !running) {
+                    droppedCount.incrementAndGet();
+                    return;
+                }
+                LockSupport.parkNanos(1_000);
+            } else if (claimSequence.compareAndSet(claimed, claimed + 1)) {
+                sequence = claimed + 1;
+                break;
+            }
+        }
+        int index = (int) (sequence & mask);
+        records[index] = logRecord;
+        publishedRound.set(index, (int) (sequence >>> indexShift));
+    }
+
+    /**
+     * Waits until every record published so far has been written and flushed.
+     */
+    @Override
+    public void flush() {
+        long target = claimSequence.get();
+        while (flushedSequence < target && writerThread.isAlive()) {
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Writes everything already published, then closes the file.
+     */
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (droppedCount.get() > 0) {
+                file.write(getFormatter().format(new LogRecord(Level.WARNING,
+                        "Log ring was full, " + droppedCount.get() + " records were dropped")));
+            }
+            file.close();
+        } catch (IOException e) {
+            reportError("Failed to close log file", e, ErrorManager.CLOSE_FAILURE);
+        }
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getWrittenCount() {
+        return writtenSequence + 1;
+    }
+
+    public long getBatchCount() {
+        return batchCount;
+    }
+
+    /**
+     * @return Records waiting in the ring for the writer thread
+     */
+    public long getBacklog() {
+        return Math.max(0, claimSequence.get() - writtenSequence);
+    }
+
+    public int getCapacity() {
+        return records.length;
+    }
+
+    // Private methods
+    private void writeLoop() {
+        while (running || writtenSequence < claimSequence.get()) {
+            long available = highestPublishedSequence(writtenSequence + 1);
+            if (available > writtenSequence) {
+                writeBatch(writtenSequence + 1, Math.min(available, writtenSequence + MAX_BATCH));
+            } else if (running) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                rollIfPastInterval();
+            } else {
+                // A record was claimed but not yet published, its thread is about to store it
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    // An idle server writes no batches, so the file's age is also checked between them
+    private void rollIfPastInterval() {
+        try {
+            file.rollIfPastInterval();
+        } catch (IOException e) {
+            reportError("Failed to roll log file", e, ErrorManager.GENERIC_FAILURE);
+        }
+    }
+
+    private long highestPublishedSequence(long from) {
+        long claimed = claimSequence.get();
+        long sequence = from;
+        while (sequence <= claimed
+                && publishedRound.get((int) (sequence & mask)) == (int) (sequence >>> indexShift)) {
+            sequence++;
+        }
+        return sequence - 1;
+    }
+
+    private void writeBatch(long first, long last) {
+        for (long sequence = first; sequence <= last; sequence++) {
+            int index = (int) (sequence & mask);
+            LogRecord logRecord = records[index];
+            records[index] = null;
+            try {
+                file.write(getFormatter().format(logRecord));
+            } catch (IOException e) {
+                reportError("Failed to write log record", e, ErrorManager.WRITE_FAILURE);
+            } catch (RuntimeException e) {
+                reportError("Failed to format log record", e, ErrorManager.FORMAT_FAILURE);
+            }
+        }
+        // Frees the slots before the flush, callers can publish while the file is written
+        writtenSequence = last;
+        batchCount++;
+        try {
+            file.flush();
+        } catch (IOException e) {
+            reportError("Failed to flush or roll log file", e, ErrorManager.FLUSH_FAILURE);
+        }
+        flushedSequence = last;
+    }
+}
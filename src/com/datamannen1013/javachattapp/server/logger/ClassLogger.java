@@ -0,0 +1,138 @@
+package com.datamannen1013.javachattapp.server.logger;
+
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * Logger for one class, with the level configured for its package (see LogLevels).
+ * The level is fixed when the logger is created, so a disabled call costs one comparison.
+ * Messages are only built once the level check passed: pass a Supplier, or a pattern
+ * whose {} placeholders are replaced by the arguments, instead of concatenating.
+ * <pre>
+ * private static final ClassLogger LOG = ServerLogger.forClass(ClientHandler.class);
+ * LOG.logDebug("Message queued: {}", message);
+ * </pre>
+ */
+public final class ClassLogger {
+    private static final String PLACEHOLDER = "{}";
+
+    private final String name;
+    private final int levelValue;
+
+    ClassLogger(String name, Level level) {
+        this.name = name;
+        this.levelValue = level.intValue();
+    }
+
+    public boolean isLoggable(Level level) {
+        return level.intValue() >= levelValue && levelValue != Level.OFF.intValue();
+    }
+
+    public boolean isDebugEnabled() {
+        return isLoggable(Level.FINE);
+    }
+
+    // Debug, for per-message details that are off by default
+    public void logDebug(String message) {
+        log(Level.FINE, message);
+    }
+
+    public void logDebug(Supplier<String> message) {
+        log(Level.FINE, message);
+    }
+
+    public void logDebug(String pattern, Object argument) {
+        log(Level.FINE, pattern, argument);
+    }
+
+    public void logDebug(String pattern, Object first, Object second) {
+        log(Level.FINE, pattern, first, second);
+    }
+
+    // Info
+    public void logInfo(String message) {
+        log(Level.INFO, message);
+    }
+
+    public void logInfo(Supplier<String> message) {
+        log(Level.INFO, message);
+    }
+
+    public void logInfo(String pattern, Object argument) {
+        log(Level.INFO, pattern, argument);
+    }
+
+    public void logInfo(String pattern, Object first, Object second) {
+        log(Level.INFO, pattern, first, second);
+    }
+
+    // Warning
+    public void logWarning(String message) {
+        log(Level.WARNING, message);
+    }
+
+    public void logWarning(Supplier<String> message) {
+        log(Level.WARNING, message);
+    }
+
+    public void logWarning(String pattern, Object argument) {
+        log(Level.WARNING, pattern, argument);
+    }
+
+    public void logWarning(String pattern, Object first, Object second) {
+        log(Level.WARNING, pattern, first, second);
+    }
+
+    // Error
+    public void logError(String error, Throwable throwable) {
+        if (isLoggable(Level.SEVERE)) {
+            ServerLogger.publish(Level.SEVERE, name, error, throwable);
+        }
+    }
+
+    public void logError(Supplier<String> error, Throwable throwable) {
+        if (isLoggable(Level.SEVERE)) {
+            ServerLogger.publish(Level.SEVERE, name, error.get(), throwable);
+        }
+    }
+
+    // Private methods
+    private void log(Level level, String message) {
+        if (isLoggable(level)) {
+            ServerLogger.publish(level, name, message, null);
+        }
+    }
+
+    private void log(Level level, Supplier<String> message) {
+        if (isLoggable(level)) {
+            ServerLogger.publish(level, name, message.get(), null);
+        }
+    }
+
+    private void log(Level level, String pattern, Object argument) {
+        if (isLoggable(level)) {
+            ServerLogger.publish(level, name, format(pattern, argument, null, 1), null);
+        }
+    }
+
+    private void log(Level level, String pattern, Object first, Object second) {
+        if (isLoggable(level)) {
+            ServerLogger.publish(level, name, format(pattern, first, second, 2), null);
+        }
+    }
+
+    // Replaces the first count placeholders, extra placeholders are left as they are
+    private static String format(String pattern, Object first, Object second, int count) {
+        StringBuilder message = new StringBuilder(pattern.length() + 32);
+        int from = 0;
+        for (int i = 0; i < count; i++) {
+            int at = pattern.indexOf(PLACEHOLDER, from);
+            if (at < 0) {
+                break;
+            }
+            message.append(pattern, from, at).append(i == 0 ? first : second);
+            from = at + PLACEHOLDER.length();
+        }
+        return message.append(pattern, from, pattern.length()).toString();
+    }
+}
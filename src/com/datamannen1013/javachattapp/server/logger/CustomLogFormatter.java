@@ -1,6 +1,6 @@
 package com.datamannen1013.javachattapp.server.logger;
 
-import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.logging.LogRecord;
 import java.util.logging.SimpleFormatter;
@@ -13,21 +13,22 @@ public class CustomLogFormatter extends SimpleFormatter {
 
     /** Format pattern for the timestamp in log messages */
     private static final DateTimeFormatter DATE_FORMAT =
-            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
 
 
     /**
      * Formats a log record into a standardized string format.
+     * The timestamp is when the record was logged, not when it is written.
      * @param fRecord The log record to be formatted
      * @return A formatted string in the format: [timestamp] [level] message
      */
     @Override
     public String format(LogRecord fRecord) {
-        LocalDateTime now = LocalDateTime.now();
-        return String.format("[%s] [%s] %s%n",
-                now.format(DATE_FORMAT),
-                fRecord.getLevel(),
-                fRecord.getMessage()
-        );
+        String message = fRecord.getMessage();
+        StringBuilder line = new StringBuilder(32 + message.length());
+        line.append('[');
+        DATE_FORMAT.formatTo(fRecord.getInstant(), line);
+        return line.append("] [").append(fRecord.getLevel()).append("] ")
+                .append(message).append(System.lineSeparator()).toString();
     }
 }
@@ -0,0 +1,165 @@
+package com.datamannen1013.javachattapp.server.logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzips full log files on a background thread and keeps index.txt up to date.
+ * The index has one tab separated line per compressed file, oldest first:
+ * time of the first record, time of the last record, file name. To find the file covering
+ * a time range, look for the lines whose range overlaps it.
+ * <p>
+ * Once more than keepFiles compressed files exist the oldest are deleted. Only the
+ * compressor thread touches the compressed files and the index.
+ */
+class LogCompressor {
+    static final String INDEX_FILE = "index.txt";
+    private static final String COMPRESSED_SUFFIX = ".gz";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    // Records start with "[yyyy-MM-dd HH:mm:ss]", see CustomLogFormatter
+    private static final int TIMESTAMP_LENGTH = 19;
+    private static final String UNKNOWN_TIME = "-";
+
+    private final Path directory;
+    private final int keepFiles;
+    private final ExecutorService executor;
+
+    LogCompressor(Path directory, int keepFiles) {
+        this.directory = directory;
+        this.keepFiles = keepFiles;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "log-compressor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    static Path compressedPath(Path file) {
+        return file.resolveSibling(file.getFileName() + COMPRESSED_SUFFIX);
+    }
+
+    /**
+     * Queues a full log file for compression.
+     */
+    void compress(Path file) {
+        executor.execute(() -> compressSafely(file));
+    }
+
+    /**
+     * Queues log files left uncompressed by earlier runs, e.g. the last file of each run.
+     */
+    void compressLeftovers(Path active) throws IOException {
+        try (Stream<Path> listing = Files.list(directory)) {
+            listing.filter(file -> isLogFile(file) && !file.equals(active))
+                    .sorted()
+                    .forEach(this::compress);
+        }
+    }
+
+    /**
+     * Finishes the compressions already queued, waiting at most a few seconds.
+     */
+    void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Private methods
+    private void compressSafely(Path file) {
+        try {
+            long start = System.nanoTime();
+            Path target = compressedPath(file);
+            Path temporary = target.resolveSibling(target.getFileName() + TEMPORARY_SUFFIX);
+            String first = UNKNOWN_TIME;
+            String last = UNKNOWN_TIME;
+            try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+                 OutputStream fileOut = Files.newOutputStream(temporary);
+                 Writer out = new OutputStreamWriter(new GZIPOutputStream(fileOut, 64 * 1024), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String time = timestampOf(line);
+                    if (time != null) {
+                        if (first.equals(UNKNOWN_TIME)) {
+                            first = time;
+                        }
+                        last = time;
+                    }
+                    out.write(line);
+                    out.write(System.lineSeparator());
+                }
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            Files.delete(file);
+            updateIndex(first + "\t" + last + "\t" + target.getFileName());
+            ServerLogger.logInfo("Compressed log file " + target.getFileName() + " in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (IOException | RuntimeException e) {
+            ServerLogger.logError("Failed to compress log file " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    // Adds the entry, deletes the oldest files beyond keepFiles and rewrites the index in one move
+    private void updateIndex(String entry) throws IOException {
+        Path index = directory.resolve(INDEX_FILE);
+        TreeMap<String, String> entries = new TreeMap<>();
+        if (Files.exists(index)) {
+            for (String line : Files.readAllLines(index, StandardCharsets.UTF_8)) {
+                String[] fields = line.split("\t");
+                if (fields.length == 3 && Files.exists(directory.resolve(fields[2]))) {
+                    entries.put(fields[2], line);
+                }
+            }
+        }
+        entries.put(entry.substring(entry.lastIndexOf('\t') + 1), entry);
+
+        List<Path> compressed;
+        try (Stream<Path> listing = Files.list(directory)) {
+            compressed = listing.filter(LogCompressor::isCompressedLogFile).sorted().toList();
+        }
+        for (int i = 0; keepFiles > 0 && i < compressed.size() - keepFiles; i++) {
+            Files.deleteIfExists(compressed.get(i));
+            entries.remove(compressed.get(i).getFileName().toString());
+        }
+
+        Path temporary = index.resolveSibling(INDEX_FILE + TEMPORARY_SUFFIX);
+        Files.write(temporary, new ArrayList<>(entries.values()), StandardCharsets.UTF_8);
+        Files.move(temporary, index, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String timestampOf(String line) {
+        if (line.length() > TIMESTAMP_LENGTH + 1 && line.charAt(0) == '[' && line.charAt(TIMESTAMP_LENGTH + 1) == ']') {
+            return line.substring(1, TIMESTAMP_LENGTH + 1);
+        }
+        return null;
+    }
+
+    private static boolean isLogFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(RollingLogFile.FILE_PREFIX) && name.endsWith(RollingLogFile.FILE_SUFFIX);
+    }
+
+    private static boolean isCompressedLogFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(RollingLogFile.FILE_PREFIX)
+                && name.endsWith(RollingLogFile.FILE_SUFFIX + COMPRESSED_SUFFIX);
+    }
+}
@@ -0,0 +1,76 @@
+package com.datamannen1013.javachattapp.server.logger;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * Log levels per package, read once at startup.
+ * -Dchat.log.level sets the level for everything (default INFO), and -Dchat.log.levels
+ * overrides it for packages or classes, e.g.
+ * {@code com.datamannen1013.javachattapp.server.nio=FINE,com.datamannen1013.javachattapp.server.database=WARNING}.
+ * The longest matching name wins. Levels are java.util.logging names, DEBUG is accepted for FINE.
+ */
+final class LogLevels {
+    static final String LEVEL_PROPERTY = "chat.log.level";
+    static final String PACKAGE_LEVELS_PROPERTY = "chat.log.levels";
+
+    private static final Level ROOT_LEVEL = parse(System.getProperty(LEVEL_PROPERTY, "INFO"), Level.INFO);
+    private static final Map<String, Level> PACKAGE_LEVELS = parsePackageLevels(System.getProperty(PACKAGE_LEVELS_PROPERTY, ""));
+
+    private LogLevels() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    static Level rootLevel() {
+        return ROOT_LEVEL;
+    }
+
+    /**
+     * @return Level of the longest configured package or class name that className falls under
+     */
+    static Level levelFor(String className) {
+        String name = className;
+        while (!name.isEmpty()) {
+            Level level = PACKAGE_LEVELS.get(name);
+            if (level != null) {
+                return level;
+            }
+            int dot = name.lastIndexOf('.');
+            name = dot < 0 ? "" : name.substring(0, dot);
+        }
+        return ROOT_LEVEL;
+    }
+
+    // Private methods
+    private static Map<String, Level> parsePackageLevels(String value) {
+        Map<String, Level> levels = new HashMap<>();
+        for (String entry : value.split(",")) {
+            int equals = entry.indexOf('=');
+            if (equals <= 0) {
+                if (!entry.isBlank()) {
+                    System.err.println("Ignoring log level entry without a level: " + entry);
+                }
+                continue;
+            }
+            Level level = parse(entry.substring(equals + 1), null);
+            if (level != null) {
+                levels.put(entry.substring(0, equals).trim(), level);
+            }
+        }
+        return levels;
+    }
+
+    private static Level parse(String name, Level fallback) {
+        String trimmed = name.trim().toUpperCase();
+        if (trimmed.equals("DEBUG")) {
+            return Level.FINE;
+        }
+        try {
+            return Level.parse(trimmed);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Ignoring unknown log level: " + name);
+            return fallback;
+        }
+    }
+}
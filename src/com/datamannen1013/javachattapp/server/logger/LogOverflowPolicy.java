@@ -0,0 +1,39 @@
+package com.datamannen1013.javachattapp.server.logger;
+
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * What the asynchronous log handler does with a record when its ring is full
+ * because the log file is written more slowly than records arrive.
+ */
+public enum LogOverflowPolicy {
+    /** Wait until the writer thread frees a slot, nothing is lost */
+    BLOCK,
+    /** Drop the new record */
+    DROP,
+    /** Drop INFO and finer records, wait for a slot for warnings and errors */
+    DROP_INFO;
+
+    /**
+     * @return true if the record is dropped instead of waiting for a free slot
+     */
+    boolean drops(LogRecord logRecord) {
+        return switch (this) {
+            case BLOCK -> false;
+            case DROP -> true;
+            case DROP_INFO -> logRecord.getLevel().intValue() < Level.WARNING.intValue();
+        };
+    }
+
+    /**
+     * @return The policy selected with -Dchat.log.overflowPolicy, DROP_INFO if unset or unknown
+     */
+    public static LogOverflowPolicy configured() {
+        try {
+            return valueOf(LoggerConfiguration.LOG_OVERFLOW_POLICY.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return DROP_INFO;
+        }
+    }
+}
@@ -2,33 +2,39 @@ package com.datamannen1013.javachattapp.server.logger;
 
 import java.io.File;
 import java.io.IOException;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.logging.FileHandler;
+import java.nio.file.Path;
 
 /**
  * Handles the configuration and setup of the logging system.
- * Responsible for creating log directories, files, and configuring the FileHandler.
+ * Responsible for creating log directories, files, and configuring the AsyncLogHandler.
  */
 public class LoggerConfiguration {
 
-    /** Format pattern for log file names */
-    private static final DateTimeFormatter FILE_NAME_FORMAT =
-            DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
-
     /** Directory where log files will be stored */
     private static final String LOG_DIRECTORY = "logs";
 
-    /** Pattern for log file names */
-    private static final String LOG_FILE_PATTERN = "logs/server_log_%s.txt";
+    /** Size after which a new log file is started, set with -Dchat.log.maxFileBytes, 0 for no limit */
+    static final long LOG_MAX_FILE_BYTES = Long.getLong("chat.log.maxFileBytes", 64L * 1024 * 1024);
+
+    /** Age after which a new log file is started, set with -Dchat.log.rotateIntervalMs, 0 for no limit */
+    static final long LOG_ROTATE_INTERVAL_MS = Long.getLong("chat.log.rotateIntervalMs", 24L * 60 * 60 * 1000);
+
+    /** Compressed log files kept, set with -Dchat.log.keepFiles, 0 keeps all */
+    static final int LOG_KEEP_FILES = Integer.getInteger("chat.log.keepFiles", 30);
+
+    /** Records that can wait for the log writer thread, set with -Dchat.log.ringSize */
+    static final int LOG_RING_SIZE = Integer.getInteger("chat.log.ringSize", 8192);
+
+    /** What happens to records when the ring is full, see LogOverflowPolicy for the accepted names */
+    static final String LOG_OVERFLOW_POLICY = System.getProperty("chat.log.overflowPolicy", "DROP_INFO");
 
 
-    /** FileHandler instance for managing log files */
-    private final FileHandler fileHandler;
+    /** Handler writing log records to the log file */
+    private final AsyncLogHandler fileHandler;
 
     /**
      * Initializes the logging configuration.
-     * Creates necessary directories and configures the FileHandler.
+     * Creates necessary directories and configures the AsyncLogHandler.
      * @throws IOException If there are issues with file operations
      */
     public LoggerConfiguration() throws IOException {
@@ -48,28 +54,28 @@ public class LoggerConfiguration {
     }
 
     /**
-     * Creates a new FileHandler with a timestamp-based filename.
-     * @return Configured FileHandler instance
+     * Creates a new AsyncLogHandler writing to a rolling, timestamp-named log file.
+     * @return Configured AsyncLogHandler instance
      * @throws IOException If the file cannot be created
      */
-    private FileHandler createFileHandler() throws IOException {
-        String logFileName = String.format(LOG_FILE_PATTERN,
-                LocalDateTime.now().format(FILE_NAME_FORMAT));
-        return new FileHandler(logFileName, true);
+    private AsyncLogHandler createFileHandler() throws IOException {
+        RollingLogFile file = new RollingLogFile(Path.of(LOG_DIRECTORY),
+                LOG_MAX_FILE_BYTES, LOG_ROTATE_INTERVAL_MS, LOG_KEEP_FILES);
+        return new AsyncLogHandler(file, LOG_RING_SIZE, LogOverflowPolicy.configured());
     }
 
     /**
-     * Configures the FileHandler with the custom formatter.
+     * Configures the AsyncLogHandler with the custom formatter.
      */
     private void configureFileHandler() {
         fileHandler.setFormatter(new CustomLogFormatter());
     }
 
     /**
-     * Gets the configured FileHandler instance.
-     * @return The configured FileHandler
+     * Gets the configured AsyncLogHandler instance.
+     * @return The configured AsyncLogHandler
      */
-    public FileHandler getFileHandler() {
+    public AsyncLogHandler getFileHandler() {
         return fileHandler;
     }
 }
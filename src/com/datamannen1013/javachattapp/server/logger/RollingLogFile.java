@@ -0,0 +1,145 @@
+package com.datamannen1013.javachattapp.server.logger;
+
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * The log file the AsyncLogHandler writes to, started over in a new file once it reaches
+ * the max size or has been open for the rotation interval. Only the log writer thread
+ * uses it. A full file is handed to the LogCompressor, so the writer never waits for gzip.
+ */
+public class RollingLogFile {
+
+    /** Format pattern for log file names */
+    private static final DateTimeFormatter FILE_NAME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
+
+    /** Prefix and suffix of log file names, server_log_&lt;time&gt;.txt */
+    static final String FILE_PREFIX = "server_log_";
+    static final String FILE_SUFFIX = ".txt";
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final long intervalMillis;
+    private final LogCompressor compressor;
+
+    private Path path;
+    private CountingOutputStream counter;
+    private Writer writer;
+    private long openedAt;
+
+    /**
+     * Opens a new log file in directory and starts compressing files left by earlier runs.
+     * @param maxBytes Size after which a new file is started, 0 for no limit
+     * @param intervalMillis Age after which a new file is started, 0 for no limit
+     * @param keepFiles Compressed files kept, older ones are deleted, 0 keeps all
+     * @throws IOException If the file cannot be created
+     */
+    public RollingLogFile(Path directory, long maxBytes, long intervalMillis, int keepFiles) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.intervalMillis = intervalMillis;
+        this.compressor = new LogCompressor(directory, keepFiles);
+        open();
+        compressor.compressLeftovers(path);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    void write(String text) throws IOException {
+        writer.write(text);
+    }
+
+    /**
+     * Flushes the batch written so far, then starts a new file if this one is full or old.
+     * A file can run over the max size by one batch.
+     */
+    void flush() throws IOException {
+        writer.flush();
+        if ((maxBytes > 0 && counter.count >= maxBytes) || isPastInterval()) {
+            roll();
+        }
+    }
+
+    /**
+     * Starts a new file if this one has been open for the rotation interval and is not empty.
+     * Called while the writer is idle, flush() only runs after writes.
+     */
+    void rollIfPastInterval() throws IOException {
+        if (counter.count > 0 && isPastInterval()) {
+            roll();
+        }
+    }
+
+    /**
+     * Closes the file and waits for compressions in progress. The last file is left as it is
+     * and compressed on the next start.
+     */
+    void close() throws IOException {
+        try {
+            writer.close();
+        } finally {
+            compressor.shutdown();
+        }
+    }
+
+    // Private methods
+    private boolean isPastInterval() {
+        return intervalMillis > 0 && System.currentTimeMillis() - openedAt >= intervalMillis;
+    }
+
+    private void roll() throws IOException {
+        Path full = path;
+        writer.close();
+        open();
+        compressor.compress(full);
+    }
+
+    private void open() throws IOException {
+        String name = FILE_PREFIX + LocalDateTime.now().format(FILE_NAME_FORMAT);
+        Path file = directory.resolve(name + FILE_SUFFIX);
+        // Files started within the same second get a sequence number
+        for (int sequence = 1; Files.exists(file) || Files.exists(LogCompressor.compressedPath(file)); sequence++) {
+            file = directory.resolve(name + "_" + sequence + FILE_SUFFIX);
+        }
+        counter = new CountingOutputStream(Files.newOutputStream(file,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE));
+        writer = new BufferedWriter(new OutputStreamWriter(counter, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+        path = file;
+        openedAt = System.currentTimeMillis();
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -1,19 +1,28 @@
 package com.datamannen1013.javachattapp.server.logger;
 
 import java.io.IOException;
+import java.util.function.Supplier;
 import java.util.logging.*;
 
 /**
  * Main logging utility class that provides static methods for logging at different levels.
  * This class serves as the primary interface for logging operations throughout the application.
+ * The static methods use the level set with -Dchat.log.level; classes on hot paths get a
+ * ClassLogger with forClass, which follows the per-package levels instead.
  */
 public class ServerLogger {
 
-    /** The core logger instance */
-    private static final Logger logger = Logger.getLogger(ServerLogger.class.getName());
+    /**
+     * The core logger instance. Anonymous, so the LogManager's own shutdown hook does not
+     * close its handler while the server's shutdown hook is still logging; close() does that.
+     */
+    private static final Logger logger = Logger.getAnonymousLogger();
+
+    /** Handler writing log files from a background thread */
+    private static AsyncLogHandler fileHandler;
 
-    /** FileHandler for managing log files */
-    private static FileHandler fileHandler;
+    /** Logger behind the static methods, at the root level */
+    private static final ClassLogger root = new ClassLogger("", LogLevels.rootLevel());
 
     /**
      * Private constructor to prevent instantiation as this is a utility class.
@@ -30,7 +39,7 @@ public class ServerLogger {
             fileHandler = config.getFileHandler();
 
             configureLogger();
-            logger.info("Logger initialized successfully");
+            root.logInfo("Logger initialized successfully");
         } catch (IOException e) {
             handleSetupError(e);
         }
@@ -57,13 +66,31 @@ public class ServerLogger {
         e.printStackTrace();
     }
 
+    /**
+     * Creates the logger for a class, at the level configured for its package.
+     * Meant for a static final field, the level is looked up once.
+     * @param source The class that logs
+     * @return Logger for the class
+     */
+    public static ClassLogger forClass(Class<?> source) {
+        return new ClassLogger(source.getName(), LogLevels.levelFor(source.getName()));
+    }
+
+    /**
+     * @param level The level to check
+     * @return true if the static methods log messages at level
+     */
+    public static boolean isLoggable(Level level) {
+        return root.isLoggable(level);
+    }
+
     /**
      * Logs an error message with an associated throwable.
      * @param error The error message to log
      * @param throwable The associated exception or error
      */
     public static void logError(String error, Throwable throwable) {
-        logger.log(Level.SEVERE, error, throwable);
+        root.logError(error, throwable);
     }
 
     /**
@@ -71,7 +98,24 @@ public class ServerLogger {
      * @param info The information message to log
      */
     public static void logInfo(String info) {
-        logger.info(info);
+        root.logInfo(info);
+    }
+
+    /**
+     * Logs an informational message, built only if INFO is enabled.
+     * @param info Supplies the information message
+     */
+    public static void logInfo(Supplier<String> info) {
+        root.logInfo(info);
+    }
+
+    /**
+     * Logs an informational message, built only if INFO is enabled.
+     * @param pattern The message, with {} where the argument goes
+     * @param argument Replaces the placeholder
+     */
+    public static void logInfo(String pattern, Object argument) {
+        root.logInfo(pattern, argument);
     }
 
     /**
@@ -79,11 +123,53 @@ public class ServerLogger {
      * @param warning The warning message to log
      */
     public static void logWarning(String warning) {
-        logger.warning(warning);
+        root.logWarning(warning);
+    }
+
+    /**
+     * Logs a warning message, built only if WARNING is enabled.
+     * @param warning Supplies the warning message
+     */
+    public static void logWarning(Supplier<String> warning) {
+        root.logWarning(warning);
+    }
+
+    /**
+     * Logs a warning message, built only if WARNING is enabled.
+     * @param pattern The message, with {} where the argument goes
+     * @param argument Replaces the placeholder
+     */
+    public static void logWarning(String pattern, Object argument) {
+        root.logWarning(pattern, argument);
+    }
+
+    /**
+     * Logs a debug message, built only if FINE is enabled.
+     * @param debug Supplies the debug message
+     */
+    public static void logDebug(Supplier<String> debug) {
+        root.logDebug(debug);
+    }
+
+    /**
+     * Hands a record that passed its level check to the handlers.
+     */
+    static void publish(Level level, String loggerName, String message, Throwable throwable) {
+        LogRecord logRecord = new LogRecord(level, message);
+        logRecord.setLoggerName(loggerName);
+        logRecord.setThrown(throwable);
+        logger.log(logRecord);
+    }
+
+    /**
+     * @return The handler writing the log files, null before setupLogger
+     */
+    public static AsyncLogHandler getHandler() {
+        return fileHandler;
     }
 
     /**
-     * Closes the FileHandler and releases resources.
+     * Writes the records still queued, then closes the log file.
      * Should be called when the application is shutting down.
      */
     public static void close() {
@@ -0,0 +1,57 @@
+package com.datamannen1013.javachattapp.server.management;
+
+import java.util.List;
+
+/**
+ * Live state of the chat server, registered as com.datamannen1013.javachattapp:type=ChatServer.
+ * Readable with jconsole, VisualVM or any other JMX client.
+ */
+public interface ChatServerMXBean {
+
+    int getConnectedClientCount();
+
+    /**
+     * @return One entry per joined client: outbound queue depth and bytes in and out
+     */
+    List<ClientStats> getClients();
+
+    /**
+     * @return Lines queued for all clients together
+     */
+    long getQueuedLineCount();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    long getBroadcastsPublished();
+
+    long getBroadcastsDispatched();
+
+    /**
+     * @return Broadcasts waiting for the dispatcher thread
+     */
+    long getBroadcastBacklog();
+
+    /**
+     * @return Broadcasts dispatched per second, measured since the previous read at least a second ago
+     */
+    double getBroadcastRatePerSecond();
+
+    boolean isDraining();
+
+    /**
+     * Disconnects a user and tells the other clients they left.
+     * @param userName The user to disconnect
+     * @return false if the user is not connected
+     */
+    boolean disconnectUser(String userName);
+
+    /**
+     * Refuses new connections, waits for queued broadcasts to reach the clients, then
+     * disconnects every client. The server keeps running, idle, until it is stopped.
+     * @param timeoutMillis Longest to wait for queues to empty before disconnecting anyway
+     * @return Number of clients disconnected
+     */
+    int drain(long timeoutMillis);
+}
@@ -0,0 +1,108 @@
+package com.datamannen1013.javachattapp.server.management;
+
+import com.datamannen1013.javachattapp.server.BroadcastDispatcher;
+import com.datamannen1013.javachattapp.server.ChatServer;
+import com.datamannen1013.javachattapp.server.ClientHandler;
+import com.datamannen1013.javachattapp.server.metrics.ServerMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads the server's live state straight from the client set and the dispatcher,
+ * and hands the operations to ChatServer.
+ */
+public class ChatServerMonitor implements ChatServerMXBean {
+    private static final long RATE_WINDOW_NANOS = 1_000_000_000L;
+
+    private final Set<ClientHandler> clients;
+    private final BroadcastDispatcher dispatcher;
+
+    // Last broadcast rate sample, guarded by this
+    private long sampleNanos = System.nanoTime();
+    private long sampleCount;
+    private double rate;
+
+    public ChatServerMonitor(Set<ClientHandler> clients, BroadcastDispatcher dispatcher) {
+        this.clients = clients;
+        this.dispatcher = dispatcher;
+        this.sampleCount = dispatcher.getDispatchedCount();
+    }
+
+    @Override
+    public int getConnectedClientCount() {
+        return clients.size();
+    }
+
+    @Override
+    public List<ClientStats> getClients() {
+        List<ClientStats> stats = new ArrayList<>(clients.size());
+        for (ClientHandler client : clients) {
+            stats.add(new ClientStats(client.getUserName(), client.getQueuedLineCount(),
+                    client.getBytesRead(), client.getBytesWritten()));
+        }
+        return stats;
+    }
+
+    @Override
+    public long getQueuedLineCount() {
+        long queued = 0;
+        for (ClientHandler client : clients) {
+            queued += client.getQueuedLineCount();
+        }
+        return queued;
+    }
+
+    @Override
+    public long getBytesIn() {
+        return ServerMetrics.BYTES_IN.get();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return ServerMetrics.BYTES_OUT.get();
+    }
+
+    @Override
+    public long getBroadcastsPublished() {
+        return dispatcher.getPublishedCount();
+    }
+
+    @Override
+    public long getBroadcastsDispatched() {
+        return dispatcher.getDispatchedCount();
+    }
+
+    @Override
+    public long getBroadcastBacklog() {
+        return Math.max(0, dispatcher.getPublishedCount() - dispatcher.getDispatchedCount());
+    }
+
+    @Override
+    public synchronized double getBroadcastRatePerSecond() {
+        long now = System.nanoTime();
+        if (now - sampleNanos >= RATE_WINDOW_NANOS) {
+            long count = dispatcher.getDispatchedCount();
+            rate = (count - sampleCount) * 1e9 / (now - sampleNanos);
+            sampleNanos = now;
+            sampleCount = count;
+        }
+        return rate;
+    }
+
+    @Override
+    public boolean isDraining() {
+        return ChatServer.isDraining();
+    }
+
+    @Override
+    public boolean disconnectUser(String userName) {
+        return ChatServer.disconnectUser(userName);
+    }
+
+    @Override
+    public int drain(long timeoutMillis) {
+        return ChatServer.drain(timeoutMillis);
+    }
+}
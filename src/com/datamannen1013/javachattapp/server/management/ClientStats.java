@@ -0,0 +1,11 @@
+package com.datamannen1013.javachattapp.server.management;
+
+/**
+ * One connected client as shown over JMX.
+ * @param userName The user's name
+ * @param queuedLines Lines waiting to be written to the client
+ * @param bytesIn Bytes read from the client
+ * @param bytesOut Bytes written to the client
+ */
+public record ClientStats(String userName, int queuedLines, long bytesIn, long bytesOut) {
+}
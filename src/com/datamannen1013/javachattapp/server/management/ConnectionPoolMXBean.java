@@ -0,0 +1,26 @@
+package com.datamannen1013.javachattapp.server.management;
+
+/**
+ * State of the database connection pool, registered as com.datamannen1013.javachattapp:type=ConnectionPool.
+ */
+public interface ConnectionPoolMXBean {
+
+    int getMaxSize();
+
+    int getActiveCount();
+
+    int getIdleCount();
+
+    long getCreatedCount();
+
+    long getTimeoutCount();
+
+    /**
+     * @return Time callers waited for a free connection at the 99th percentile, in microseconds
+     */
+    long getP99WaitMicros();
+
+    long getStatementCacheHits();
+
+    long getStatementCacheMisses();
+}
@@ -0,0 +1,51 @@
+package com.datamannen1013.javachattapp.server.management;
+
+import com.datamannen1013.javachattapp.server.database.ConnectionPool;
+
+public class ConnectionPoolMonitor implements ConnectionPoolMXBean {
+    private final ConnectionPool pool;
+
+    public ConnectionPoolMonitor(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public int getMaxSize() {
+        return pool.getMaxSize();
+    }
+
+    @Override
+    public int getActiveCount() {
+        return pool.getActiveCount();
+    }
+
+    @Override
+    public int getIdleCount() {
+        return pool.getIdleCount();
+    }
+
+    @Override
+    public long getCreatedCount() {
+        return pool.getCreatedCount();
+    }
+
+    @Override
+    public long getTimeoutCount() {
+        return pool.getTimeoutCount();
+    }
+
+    @Override
+    public long getP99WaitMicros() {
+        return pool.getWaitTime().getValueAtPercentile(99) / 1000;
+    }
+
+    @Override
+    public long getStatementCacheHits() {
+        return pool.getStatementCacheHits();
+    }
+
+    @Override
+    public long getStatementCacheMisses() {
+        return pool.getStatementCacheMisses();
+    }
+}
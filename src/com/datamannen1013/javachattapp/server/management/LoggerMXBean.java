@@ -0,0 +1,23 @@
+package com.datamannen1013.javachattapp.server.management;
+
+/**
+ * State of the asynchronous log writer, registered as com.datamannen1013.javachattapp:type=Logger.
+ */
+public interface LoggerMXBean {
+
+    /**
+     * @return Records waiting in the ring for the writer thread
+     */
+    long getBacklog();
+
+    int getCapacity();
+
+    long getWrittenCount();
+
+    /**
+     * @return Records dropped because the ring was full
+     */
+    long getDroppedCount();
+
+    long getBatchCount();
+}
@@ -0,0 +1,36 @@
+package com.datamannen1013.javachattapp.server.management;
+
+import com.datamannen1013.javachattapp.server.logger.AsyncLogHandler;
+
+public class LoggerMonitor implements LoggerMXBean {
+    private final AsyncLogHandler handler;
+
+    public LoggerMonitor(AsyncLogHandler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public long getBacklog() {
+        return handler.getBacklog();
+    }
+
+    @Override
+    public int getCapacity() {
+        return handler.getCapacity();
+    }
+
+    @Override
+    public long getWrittenCount() {
+        return handler.getWrittenCount();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return handler.getDroppedCount();
+    }
+
+    @Override
+    public long getBatchCount() {
+        return handler.getBatchCount();
+    }
+}
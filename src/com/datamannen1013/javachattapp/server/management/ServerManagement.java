@@ -0,0 +1,38 @@
+package com.datamannen1013.javachattapp.server.management;
+
+import com.datamannen1013.javachattapp.server.logger.ServerLogger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Registers the server's MBeans with the platform MBean server.
+ * Local JMX clients can attach to the process right away; for remote access start the server
+ * with the usual -Dcom.sun.management.jmxremote.* properties.
+ */
+public class ServerManagement {
+    public static final String DOMAIN = "com.datamannen1013.javachattapp";
+
+    private ServerManagement() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Registers a bean as DOMAIN:type=&lt;type&gt;, replacing one already there.
+     * A failure is logged, the server runs on without the bean.
+     */
+    public static void register(String type, Object bean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DOMAIN + ":type=" + type);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(bean, name);
+        } catch (JMException e) {
+            ServerLogger.logError("Failed to register MBean " + type + ": " + e.getMessage(), e);
+        }
+    }
+}
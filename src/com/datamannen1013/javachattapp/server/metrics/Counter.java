@@ -0,0 +1,23 @@
+package com.datamannen1013.javachattapp.server.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A count that only goes up, e.g. messages received.
+ * Backed by a LongAdder, so threads counting at once add to separate cells.
+ */
+public class Counter {
+    private final LongAdder count = new LongAdder();
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void add(long amount) {
+        count.add(amount);
+    }
+
+    public long get() {
+        return count.sum();
+    }
+}
@@ -0,0 +1,136 @@
+package com.datamannen1013.javachattapp.server.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear latency histogram in the style of HdrHistogram.
+ * Values are grouped into power of two ranges, each split into 32 linear sub-buckets,
+ * which keeps the relative error of every percentile within about 3%.
+ * <p>
+ * Counts are striped: each recording thread picks a stripe by its thread id, so threads
+ * measuring the same path rarely increment the same counters. Recording is a few atomic
+ * increments on the stripe and never allocates; reads add the stripes up.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+    private static final int MAX_STRIPES = 16;
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    public LatencyHistogram() {
+        int processors = Math.min(MAX_STRIPES, Runtime.getRuntime().availableProcessors());
+        int stripeCount = Integer.highestOneBit(Math.max(1, processors * 2 - 1));
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.stripeMask = stripeCount - 1;
+    }
+
+    /**
+     * Records one measurement. Negative values are recorded as zero.
+     * @param value The measured value, usually nanoseconds
+     */
+    public void record(long value) {
+        long clamped = Math.max(0, value);
+        Stripe stripe = stripes[(int) Thread.currentThread().threadId() & stripeMask];
+        stripe.counts.incrementAndGet(indexOf(clamped));
+        stripe.totalCount.incrementAndGet();
+        stripe.totalValue.addAndGet(clamped);
+        long max;
+        while (clamped > (max = stripe.maxValue.get()) && !stripe.maxValue.compareAndSet(max, clamped)) {
+            Thread.onSpinWait();
+        }
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (Stripe stripe : stripes) {
+            count += stripe.totalCount.get();
+        }
+        return count;
+    }
+
+    public long getMax() {
+        long max = 0;
+        for (Stripe stripe : stripes) {
+            max = Math.max(max, stripe.maxValue.get());
+        }
+        return max;
+    }
+
+    public double getMean() {
+        long count = 0;
+        long total = 0;
+        for (Stripe stripe : stripes) {
+            count += stripe.totalCount.get();
+            total += stripe.totalValue.get();
+        }
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * @param percentile Percentile between 0 and 100, e.g. 99.0
+     * @return The highest value of the bucket holding the percentile, 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long max = getMax();
+        long target = Math.max(1, (long) Math.ceil(count * Math.min(percentile, 100.0) / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            for (Stripe stripe : stripes) {
+                seen += stripe.counts.get(i);
+            }
+            if (seen >= target) {
+                return Math.min(highestValueIn(i), max);
+            }
+        }
+        return max;
+    }
+
+    public void reset() {
+        for (Stripe stripe : stripes) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                stripe.counts.set(i, 0);
+            }
+            stripe.totalCount.set(0);
+            stripe.totalValue.set(0);
+            stripe.maxValue.set(0);
+        }
+    }
+
+    // Private methods - bucket arithmetic
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKET_COUNT;
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long highestValueIn(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    private static final class Stripe {
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+        private final AtomicLong totalCount = new AtomicLong();
+        private final AtomicLong totalValue = new AtomicLong();
+        private final AtomicLong maxValue = new AtomicLong();
+    }
+}
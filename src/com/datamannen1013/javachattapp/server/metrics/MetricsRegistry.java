@@ -0,0 +1,88 @@
+package com.datamannen1013.javachattapp.server.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Named counters, gauges and latency histograms of the server.
+ * Metrics are registered once, usually in static fields (see ServerMetrics), and recorded
+ * directly on the returned object, so recording never looks anything up.
+ * Gauges are read only when the metrics are reported.
+ */
+public class MetricsRegistry {
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    private final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+
+    private MetricsRegistry() {
+    }
+
+    public static MetricsRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return The counter registered under name, created if needed
+     */
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, key -> new Counter());
+    }
+
+    /**
+     * @return The histogram registered under name, created if needed
+     */
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    /**
+     * Registers a histogram kept by another component, replacing one of the same name.
+     */
+    public void register(String name, LatencyHistogram histogram) {
+        histograms.put(name, histogram);
+    }
+
+    /**
+     * Registers a gauge, replacing one of the same name.
+     * @param value Reads the current value, called on the reporting thread
+     */
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    public Map<String, Counter> getCounters() {
+        return Collections.unmodifiableMap(counters);
+    }
+
+    public Map<String, LongSupplier> getGauges() {
+        return Collections.unmodifiableMap(gauges);
+    }
+
+    public Map<String, LatencyHistogram> getHistograms() {
+        return Collections.unmodifiableMap(histograms);
+    }
+
+    /**
+     * @return One line per metric, sorted by name; histograms in microseconds
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder("Metrics");
+        counters.forEach((name, counter) ->
+                report.append(System.lineSeparator()).append("  ").append(name).append(" = ").append(counter.get()));
+        gauges.forEach((name, gauge) ->
+                report.append(System.lineSeparator()).append("  ").append(name).append(" = ").append(gauge.getAsLong()));
+        histograms.forEach((name, histogram) -> {
+            if (histogram.getCount() > 0) {
+                report.append(System.lineSeparator()).append(String.format(
+                        "  %s count=%d p50=%dus p99=%dus p99.9=%dus max=%dus", name, histogram.getCount(),
+                        histogram.getValueAtPercentile(50) / 1000, histogram.getValueAtPercentile(99) / 1000,
+                        histogram.getValueAtPercentile(99.9) / 1000, histogram.getMax() / 1000));
+            }
+        });
+        return report.toString();
+    }
+}
@@ -0,0 +1,42 @@
+package com.datamannen1013.javachattapp.server.metrics;
+
+/**
+ * The metrics of the message pipeline, all in the MetricsRegistry.
+ * Latencies are in nanoseconds, measured with System.nanoTime.
+ */
+public class ServerMetrics {
+    private static final MetricsRegistry REGISTRY = MetricsRegistry.getInstance();
+
+    private ServerMetrics() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    // Connections
+    public static final LatencyHistogram HANDSHAKE_TIME = REGISTRY.histogram("connection.handshake"); // Accept until joined
+    public static final Counter CONNECTIONS_ACCEPTED = REGISTRY.counter("connection.accepted");
+    public static final Counter BYTES_IN = REGISTRY.counter("connection.bytesIn"); // Read from clients, framing included
+    public static final Counter BYTES_OUT = REGISTRY.counter("connection.bytesOut"); // Written to clients
+
+    // Messages, from the line being read off the client's connection
+    public static final Counter MESSAGES_RECEIVED = REGISTRY.counter("message.received");
+    public static final LatencyHistogram RECEIVE_TO_PERSIST = REGISTRY.histogram("message.receiveToPersist");
+    public static final LatencyHistogram RECEIVE_TO_LAST_DELIVERY = REGISTRY.histogram("message.receiveToLastDelivery"); // Until written to every recipient
+
+    // History
+    public static final LatencyHistogram HISTORY_REPLAY_TIME = REGISTRY.histogram("history.replay"); // Recent history sent to a joining client
+
+    // Reported by tracing clients, one value per report
+    public static final Counter TRACE_REPORTS = REGISTRY.counter("trace.reports");
+    public static final LatencyHistogram TRACE_END_TO_END_P50 = REGISTRY.histogram("trace.endToEnd.p50"); // Client send until rendered by another client
+    public static final LatencyHistogram TRACE_END_TO_END_P99 = REGISTRY.histogram("trace.endToEnd.p99");
+
+    // Database calls made through MessageRepository
+    public static final LatencyHistogram DB_SAVE_MESSAGE = REGISTRY.histogram("db.saveMessage");
+    public static final LatencyHistogram DB_RECENT_MESSAGES = REGISTRY.histogram("db.getRecentMessages");
+    public static final LatencyHistogram DB_STREAM_MESSAGES = REGISTRY.histogram("db.streamMessagesBefore"); // One chunk query
+    public static final LatencyHistogram DB_SEARCH_MESSAGES = REGISTRY.histogram("db.searchMessages");
+    public static final LatencyHistogram DB_COUNT_MESSAGES = REGISTRY.histogram("db.countMessages");
+    public static final LatencyHistogram DB_OLDEST_MESSAGES = REGISTRY.histogram("db.getOldestMessages");
+    public static final LatencyHistogram DB_REMOVE_ARCHIVED = REGISTRY.histogram("db.removeArchivedMessages");
+    public static final LatencyHistogram DB_SEARCH_ARCHIVED = REGISTRY.histogram("db.searchArchivedMessages");
+}
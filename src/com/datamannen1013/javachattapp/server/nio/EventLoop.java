@@ -0,0 +1,196 @@
+package com.datamannen1013.javachattapp.server.nio;
+
+import com.datamannen1013.javachattapp.server.BroadcastDispatcher;
+import com.datamannen1013.javachattapp.server.ClientHandler;
+import com.datamannen1013.javachattapp.server.HandshakeLimiter;
+import com.datamannen1013.javachattapp.server.logger.ServerLogger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single threaded selector loop owning the reads and writes of its connections.
+ * Other threads interact with the loop only through execute(), which queues a task
+ * and wakes the selector. Connections that have not joined yet are closed once their
+ * handshake deadline passes. Connections paused for backpressure are checked every
+ * PAUSE_CHECK_MILLIS and read again once their broadcasts have been dispatched.
+ */
+public final class EventLoop implements Runnable {
+    private static final long PAUSE_CHECK_MILLIS = 1;
+
+    private final Selector selector;
+    private final BufferPool bufferPool;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    // Every connection gets the same timeout, so registration order is deadline order
+    private final ArrayDeque<NioConnection> handshaking = new ArrayDeque<>();
+    private final List<NioConnection> paused = new ArrayList<>();
+    private volatile boolean running = true;
+    private volatile Thread thread;
+
+    public EventLoop(BufferPool bufferPool) throws IOException {
+        this.selector = Selector.open();
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Hands a freshly accepted channel over to this loop.
+     * @param channel The accepted client channel
+     * @param clients The shared set of joined clients
+     * @param dispatcher The dispatcher new clients publish broadcasts to
+     * @param handshakes Limiter the channel's pending handshake was counted in
+     */
+    public void register(SocketChannel channel, Set<ClientHandler> clients, BroadcastDispatcher dispatcher,
+                         HandshakeLimiter handshakes) {
+        long acceptedNanos = System.nanoTime();
+        execute(() -> {
+            NioConnection connection = new NioConnection(channel, this, clients, dispatcher, handshakes, acceptedNanos);
+            try {
+                channel.configureBlocking(false);
+                connection.attach(channel.register(selector, SelectionKey.OP_READ, connection));
+                handshaking.add(connection);
+            } catch (IOException e) {
+                ServerLogger.logError("Failed to register client channel: " + e.getMessage(), e);
+                connection.closeNow();
+            }
+        });
+    }
+
+    /**
+     * Runs the task on the loop thread.
+     * @param task The task to run
+     */
+    public void execute(Runnable task) {
+        tasks.offer(task);
+        if (Thread.currentThread() != thread) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Keeps checking a connection that stopped reading until it resumes. Loop thread only.
+     */
+    void pause(NioConnection connection) {
+        paused.add(connection);
+    }
+
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        ByteBuffer readBuffer = bufferPool.acquire();
+        try {
+            while (running) {
+                // Tasks queued from this thread did not wake the selector, so don't block on them
+                if (!tasks.isEmpty()) {
+                    selector.selectNow();
+                } else if (!paused.isEmpty()) {
+                    selector.select(PAUSE_CHECK_MILLIS);
+                } else if (handshaking.isEmpty()) {
+                    selector.select();
+                } else {
+                    long untilDeadline = handshaking.peek().getHandshakeDeadline() - System.nanoTime();
+                    selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(untilDeadline)));
+                }
+                runTasks();
+                processSelectedKeys(readBuffer);
+                expireHandshakes();
+                resumePaused();
+            }
+            runTasks();
+        } catch (IOException e) {
+            ServerLogger.logError("Event loop failed: " + e.getMessage(), e);
+        } finally {
+            closeAll();
+            bufferPool.release(readBuffer);
+        }
+    }
+
+    // Private methods
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                ServerLogger.logError("Event loop task failed: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private void expireHandshakes() {
+        long now = System.nanoTime();
+        NioConnection connection;
+        while ((connection = handshaking.peek()) != null) {
+            if (connection.isHandshakePending() && connection.getHandshakeDeadline() - now > 0) {
+                return;
+            }
+            handshaking.poll();
+            if (connection.isHandshakePending()) {
+                connection.onHandshakeTimeout();
+            }
+        }
+    }
+
+    private void resumePaused() {
+        if (!paused.isEmpty()) {
+            paused.removeIf(NioConnection::resumeReadingIfReady);
+        }
+    }
+
+    private void processSelectedKeys(ByteBuffer readBuffer) {
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            NioConnection connection = (NioConnection) key.attachment();
+            try {
+                if (key.isReadable()) {
+                    connection.onReadable(readBuffer);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    connection.onWritable();
+                }
+            } catch (IOException | CancelledKeyException e) {
+                connection.onEndOfStream();
+            } catch (Exception e) {
+                ServerLogger.logError("Error handling client " + connection + ": " + e.getMessage(), e);
+                readBuffer.clear();
+                connection.onEndOfStream();
+            }
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            NioConnection connection = (NioConnection) key.attachment();
+            try {
+                // Last attempt to deliver what is queued, e.g. the shutdown notice
+                connection.onWritable();
+            } catch (IOException | CancelledKeyException e) {
+                // Client is going away anyway
+            }
+            connection.closeNow();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            ServerLogger.logError("Error closing selector: " + e.getMessage(), e);
+        }
+    }
+}
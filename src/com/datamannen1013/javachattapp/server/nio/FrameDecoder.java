@@ -0,0 +1,69 @@
+package com.datamannen1013.javachattapp.server.nio;
+
+import com.datamannen1013.javachattapp.protocol.BinaryFraming;
+import com.datamannen1013.javachattapp.protocol.FrameType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * Splits the bytes read from a channel into binary frames, see BinaryFraming.
+ * A frame may arrive over several packets; header and payload are collected in
+ * buffers that are reused for every frame.
+ */
+final class FrameDecoder {
+    private final int maxPayloadLength;
+    private final byte[] header = new byte[BinaryFraming.HEADER_LENGTH];
+    private int headerRead;
+    private byte[] payload = new byte[256];
+    private int payloadLength = -1;
+    private int payloadRead;
+
+    FrameDecoder(int maxPayloadLength) {
+        this.maxPayloadLength = maxPayloadLength;
+    }
+
+    /**
+     * Consumes the readable bytes of the buffer and hands every complete frame to the sink.
+     * @param buffer Buffer in read mode
+     * @param sink Receives the text protocol line of each decoded frame, and returns false
+     *             to stop decoding and leave the remaining bytes in the buffer
+     * @return false if a frame has an unknown type or is longer than the maximum
+     */
+    boolean decode(ByteBuffer buffer, Predicate<String> sink) {
+        while (buffer.hasRemaining()) {
+            if (payloadLength < 0) {
+                int n = Math.min(header.length - headerRead, buffer.remaining());
+                buffer.get(header, headerRead, n);
+                headerRead += n;
+                if (headerRead < header.length) {
+                    return true;
+                }
+                payloadLength = (header[1] & 0xff) << 24 | (header[2] & 0xff) << 16
+                        | (header[3] & 0xff) << 8 | (header[4] & 0xff);
+                if (payloadLength < 0 || payloadLength > maxPayloadLength || !FrameType.isKnown(header[0])) {
+                    return false;
+                }
+                if (payloadLength > payload.length) {
+                    payload = Arrays.copyOf(payload, Math.max(payloadLength, Math.min(payload.length * 2, maxPayloadLength)));
+                }
+            }
+            int n = Math.min(payloadLength - payloadRead, buffer.remaining());
+            buffer.get(payload, payloadRead, n);
+            payloadRead += n;
+            if (payloadRead == payloadLength) {
+                FrameType type = FrameType.fromCode(header[0]);
+                String line = type.toLine(new String(payload, 0, payloadLength, StandardCharsets.UTF_8));
+                headerRead = 0;
+                payloadRead = 0;
+                payloadLength = -1;
+                if (!sink.test(line)) {
+                    return true;
+                }
+            }
+        }
+        return true;
+    }
+}
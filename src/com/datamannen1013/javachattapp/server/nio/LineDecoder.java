@@ -0,0 +1,50 @@
+package com.datamannen1013.javachattapp.server.nio;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * Splits the bytes read from a channel into protocol lines.
+ * Partial lines are kept between reads, so a line may arrive over several packets.
+ */
+final class LineDecoder {
+    private final int maxLineLength;
+    private byte[] line = new byte[256];
+    private int length;
+
+    LineDecoder(int maxLineLength) {
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * Consumes the readable bytes of the buffer and hands every complete line to the sink.
+     * @param buffer Buffer in read mode
+     * @param sink Receives each decoded line, without line terminator, and returns false
+     *             to stop decoding and leave the remaining bytes in the buffer
+     * @return false if a line grew beyond the maximum length
+     */
+    boolean decode(ByteBuffer buffer, Predicate<String> sink) {
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (b == '\n') {
+                int end = length > 0 && line[length - 1] == '\r' ? length - 1 : length;
+                String decoded = new String(line, 0, end, StandardCharsets.UTF_8);
+                length = 0;
+                if (!sink.test(decoded)) {
+                    return true;
+                }
+                continue;
+            }
+            if (length == maxLineLength) {
+                return false;
+            }
+            if (length == line.length) {
+                line = Arrays.copyOf(line, Math.min(line.length * 2, maxLineLength));
+            }
+            line[length++] = b;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,110 @@
+package com.datamannen1013.javachattapp.server.nio;
+
+import com.datamannen1013.javachattapp.server.BroadcastDispatcher;
+import com.datamannen1013.javachattapp.server.ClientHandler;
+import com.datamannen1013.javachattapp.server.HandshakeLimiter;
+import com.datamannen1013.javachattapp.server.constants.ServerConstants;
+import com.datamannen1013.javachattapp.server.logger.ClassLogger;
+import com.datamannen1013.javachattapp.server.logger.ServerLogger;
+import com.datamannen1013.javachattapp.server.metrics.ServerMetrics;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+
+/**
+ * Selector based server mode.
+ * The calling thread accepts connections and spreads them round-robin over a small
+ * pool of event loops, which do all reading and writing without a thread per client.
+ * The wire protocol is the same line protocol the blocking server speaks.
+ * Join handshakes complete on the event loops with a deadline, and the number of
+ * connections still waiting to join is capped.
+ */
+public class NioChatServer {
+    private static final ClassLogger LOG = ServerLogger.forClass(NioChatServer.class);
+    private final int port;
+    private final Set<ClientHandler> clients;
+    private final BroadcastDispatcher dispatcher;
+    private final EventLoop[] eventLoops;
+    private final HandshakeLimiter handshakes = new HandshakeLimiter(ServerConstants.MAX_PENDING_HANDSHAKES);
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running = true;
+    private volatile boolean accepting = true;
+
+    public NioChatServer(int port, int eventLoopCount, Set<ClientHandler> clients,
+                         BroadcastDispatcher dispatcher) throws IOException {
+        this.port = port;
+        this.clients = clients;
+        this.dispatcher = dispatcher;
+        BufferPool bufferPool = new BufferPool(ServerConstants.NIO_BUFFER_SIZE, ServerConstants.NIO_MAX_POOLED_BUFFERS);
+        this.eventLoops = new EventLoop[eventLoopCount];
+        for (int i = 0; i < eventLoopCount; i++) {
+            eventLoops[i] = new EventLoop(bufferPool);
+        }
+    }
+
+    /**
+     * Starts the event loops and accepts clients until shutdown() is called.
+     * @throws IOException If the server channel cannot be opened
+     */
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+
+        for (int i = 0; i < eventLoops.length; i++) {
+            Thread loopThread = new Thread(eventLoops[i], "nio-event-loop-" + i);
+            loopThread.start();
+        }
+        LOG.logInfo("NIO chat server started on port " + port + " with " + eventLoops.length + " event loops");
+
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                ServerMetrics.CONNECTIONS_ACCEPTED.increment();
+                if (!accepting) {
+                    LOG.logInfo("Server is draining, refusing client: {}", channel.getRemoteAddress());
+                    channel.close();
+                    continue;
+                }
+                if (!handshakes.tryBegin()) {
+                    LOG.logWarning("Too many pending handshakes, refusing client: {}", channel.getRemoteAddress());
+                    channel.close();
+                    continue;
+                }
+                channel.socket().setTcpNoDelay(true);
+                LOG.logInfo("Client connected: {}", channel.getRemoteAddress());
+                eventLoops[next].register(channel, clients, dispatcher, handshakes);
+                next = (next + 1) % eventLoops.length;
+            } catch (ClosedChannelException e) {
+                break; // Server channel closed by shutdown()
+            }
+        }
+    }
+
+    public HandshakeLimiter getHandshakeLimiter() {
+        return handshakes;
+    }
+
+    /**
+     * Closes new connections as soon as they are accepted, clients already joined stay.
+     */
+    public void refuseNewClients() {
+        accepting = false;
+    }
+
+    public void shutdown() {
+        running = false;
+        try {
+            if (serverChannel != null) serverChannel.close();
+        } catch (IOException e) {
+            LOG.logError("Error closing server channel: " + e.getMessage(), e);
+        }
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.shutdown();
+        }
+    }
+}
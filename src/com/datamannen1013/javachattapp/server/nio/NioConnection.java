@@ -0,0 +1,453 @@
+package com.datamannen1013.javachattapp.server.nio;
+
+import com.datamannen1013.javachattapp.protocol.BinaryFraming;
+import com.datamannen1013.javachattapp.protocol.WireFormat;
+import com.datamannen1013.javachattapp.server.BroadcastDispatcher;
+import com.datamannen1013.javachattapp.server.ClientHandler;
+import com.datamannen1013.javachattapp.server.HandshakeLimiter;
+import com.datamannen1013.javachattapp.server.ServerMessageHandler;
+import com.datamannen1013.javachattapp.server.connection.ClientConnection;
+import com.datamannen1013.javachattapp.server.connection.OutboundQueue;
+import com.datamannen1013.javachattapp.server.connection.OverflowPolicy;
+import com.datamannen1013.javachattapp.server.connection.SharedFrame;
+import com.datamannen1013.javachattapp.server.constants.ServerConstants;
+import com.datamannen1013.javachattapp.server.jfr.HandshakeEvent;
+import com.datamannen1013.javachattapp.server.logger.ServerLogger;
+import com.datamannen1013.javachattapp.server.metrics.ServerMetrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Non-blocking transport for one client, owned by a single EventLoop.
+ * Reads and writes only ever happen on the loop thread; other threads may call
+ * writeFrame, which queues the shared encoded frame in a bounded OutboundQueue and
+ * asks the loop to flush it. The loop is the writer task that drains the queue,
+ * handing views of up to a batch of frames to a single gathering write.
+ */
+public final class NioConnection implements ClientConnection {
+    private final SocketChannel channel;
+    private final EventLoop loop;
+    private final Set<ClientHandler> clients;
+    private final BroadcastDispatcher dispatcher;
+    private final HandshakeLimiter handshakes;
+    private final long acceptedNanos;
+    private final long handshakeDeadline;
+    private boolean handshakePending = true;
+    // Begun at accept, so the event spans what HANDSHAKE_TIME measures
+    private final HandshakeEvent handshakeEvent = new HandshakeEvent();
+    private final LineDecoder lineDecoder = new LineDecoder(ServerConstants.MAX_LINE_LENGTH);
+    private final FrameDecoder frameDecoder = new FrameDecoder(ServerConstants.MAX_LINE_LENGTH);
+    private boolean binaryInbound = false;
+
+    // Outbound state - the queue is shared, everything else belongs to the loop thread
+    private final OutboundQueue<SharedFrame> outbound = new OutboundQueue<>(
+            ServerConstants.OUTBOUND_QUEUE_CAPACITY, OverflowPolicy.configured(), SharedFrame::release);
+    private final AtomicBoolean writeScheduled = new AtomicBoolean(false);
+    private final ArrayDeque<SharedFrame> draining = new ArrayDeque<>();
+    private final SharedFrame[] gathered = new SharedFrame[ServerConstants.OUTBOUND_WRITE_BATCH];
+    private final ByteBuffer[] gather = new ByteBuffer[ServerConstants.OUTBOUND_WRITE_BATCH];
+    private int gatherStart;
+    private int gatherEnd;
+    private WireFormat outboundFormat = WireFormat.TEXT;
+    private volatile SharedFrame binarySwitch;
+
+    // Traffic, written by the loop thread only
+    private volatile long bytesRead;
+    private volatile long bytesWritten;
+
+    private SelectionKey key;
+    private ClientHandler handler;
+    // Inbound backpressure, loop thread only. Bytes read before a pause wait in unread
+    private boolean readingPaused;
+    private boolean pauseListed;
+    private BooleanSupplier resumeWhen;
+    private ByteBuffer unread;
+    private volatile boolean open = true;
+    private volatile boolean closing = false;
+
+    NioConnection(SocketChannel channel, EventLoop loop, Set<ClientHandler> clients, BroadcastDispatcher dispatcher,
+                  HandshakeLimiter handshakes, long acceptedNanos) {
+        this.channel = channel;
+        this.loop = loop;
+        this.clients = clients;
+        this.dispatcher = dispatcher;
+        this.handshakes = handshakes;
+        this.acceptedNanos = acceptedNanos;
+        this.handshakeDeadline = acceptedNanos + TimeUnit.MILLISECONDS.toNanos(ServerConstants.HANDSHAKE_TIMEOUT_MS);
+        handshakeEvent.begin();
+    }
+
+    void attach(SelectionKey key) {
+        this.key = key;
+    }
+
+    @Override
+    public void writeFrame(SharedFrame frame) {
+        if (!open || closing) {
+            ServerLogger.logWarning("Connection is closed, cannot send message");
+            return;
+        }
+        OutboundQueue.OfferResult result = outbound.offer(frame.retain(), ServerMessageHandler.coalesceKey(frame.text()));
+        if (result == OutboundQueue.OfferResult.REJECTED) {
+            frame.release();
+            ServerLogger.logWarning("Outbound queue full, disconnecting slow client: " + this);
+            closing = true;
+            loop.execute(this::onEndOfStream);
+            return;
+        }
+        scheduleWrite();
+    }
+
+    @Override
+    public void writeFrames(List<SharedFrame> frames) {
+        if (!open || closing) {
+            ServerLogger.logWarning("Connection is closed, cannot send message");
+            return;
+        }
+        frames.forEach(SharedFrame::retain);
+        int queued = outbound.offerAll(frames, frame -> ServerMessageHandler.coalesceKey(frame.text()));
+        if (queued < frames.size()) {
+            frames.subList(queued, frames.size()).forEach(SharedFrame::release);
+            ServerLogger.logWarning("Outbound queue full, disconnecting slow client: " + this);
+            closing = true;
+            loop.execute(this::onEndOfStream);
+            return;
+        }
+        scheduleWrite();
+    }
+
+    @Override
+    public boolean enableBinaryFraming() {
+        SharedFrame acknowledgement = SharedFrame.of(BinaryFraming.ACKNOWLEDGEMENT);
+        binarySwitch = acknowledgement;
+        writeFrame(acknowledgement);
+        acknowledgement.release();
+        binaryInbound = true; // Called on the loop thread, from the handshake
+        return true;
+    }
+
+    @Override
+    public void awaitOutboundBelow(int highWaterMark) throws InterruptedException {
+        outbound.awaitBelow(highWaterMark);
+    }
+
+    // Called on the loop thread while a line is handled, decoding stops after that line.
+    // A later condition covers more of the client's output, so it replaces an earlier one
+    @Override
+    public boolean pauseReading(BooleanSupplier resumeWhen) {
+        this.resumeWhen = resumeWhen;
+        pauseNow();
+        return true;
+    }
+
+    @Override
+    public int getQueuedLineCount() {
+        return outbound.size();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open && !closing;
+    }
+
+    @Override
+    public void flush() {
+        if (!outbound.isEmpty()) {
+            scheduleWrite();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closing || !open) {
+            return;
+        }
+        closing = true;
+        // Close once everything queued so far has been written
+        outbound.close();
+        loop.execute(() -> {
+            if (gatherStart == gatherEnd && outbound.isEmpty()) {
+                closeNow();
+            } else {
+                enableWriteInterest();
+            }
+        });
+    }
+
+    // Event loop callbacks
+    void onReadable(ByteBuffer readBuffer) throws IOException {
+        int read = channel.read(readBuffer);
+        if (read < 0) {
+            onEndOfStream();
+            return;
+        }
+        bytesRead += read;
+        ServerMetrics.BYTES_IN.add(read);
+        readBuffer.flip();
+        boolean withinLimit = decodeInbound(readBuffer);
+        if (withinLimit && readBuffer.hasRemaining()) {
+            // Reading was paused by a line, the rest is decoded once it resumes
+            unread = ByteBuffer.allocate(readBuffer.remaining()).put(readBuffer).flip();
+        }
+        readBuffer.clear();
+        if (!withinLimit) {
+            ServerLogger.logWarning("Invalid or too long message, closing connection: " + this);
+            onEndOfStream();
+        }
+    }
+
+    void onWritable() throws IOException {
+        while (true) {
+            if (gatherStart == gatherEnd && !fillGather()) {
+                onOutboundDrained();
+                return;
+            }
+            long written = channel.write(gather, gatherStart, gatherEnd - gatherStart);
+            bytesWritten += written;
+            ServerMetrics.BYTES_OUT.add(written);
+            while (gatherStart < gatherEnd && !gather[gatherStart].hasRemaining()) {
+                releaseGathered(gatherStart++);
+            }
+            if (gatherStart < gatherEnd) {
+                return; // Socket buffer full, wait for the next OP_WRITE
+            }
+        }
+    }
+
+    void onEndOfStream() {
+        if (!open) {
+            return;
+        }
+        if (handler != null) {
+            handler.disconnect();
+        }
+        closeNow();
+    }
+
+    /**
+     * Reads again once the client's output has drained below half its queue and the pause
+     * condition is met, decoding what was left unread first. Called by the loop for every paused connection.
+     * @return true if the connection is no longer paused, because it resumed or closed
+     */
+    boolean resumeReadingIfReady() {
+        if (open && (outbound.size() > ServerConstants.OUTBOUND_QUEUE_CAPACITY / 2
+                || resumeWhen != null && !resumeWhen.getAsBoolean())) {
+            return false;
+        }
+        readingPaused = false;
+        resumeWhen = null;
+        if (open && unread != null) {
+            boolean withinLimit = decodeInbound(unread);
+            if (!unread.hasRemaining()) {
+                unread = null;
+            }
+            if (!withinLimit) {
+                ServerLogger.logWarning("Invalid or too long message, closing connection: " + this);
+                onEndOfStream();
+            } else if (readingPaused) {
+                return false; // Paused again by one of the unread lines
+            }
+        }
+        pauseListed = false;
+        if (open && key.isValid()) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        }
+        return true;
+    }
+
+    boolean isHandshakePending() {
+        return handshakePending;
+    }
+
+    /**
+     * @return System.nanoTime() by which the client must have joined
+     */
+    long getHandshakeDeadline() {
+        return handshakeDeadline;
+    }
+
+    void onHandshakeTimeout() {
+        handshakes.recordTimeout();
+        ServerLogger.logWarning("Client did not join within " + ServerConstants.HANDSHAKE_TIMEOUT_MS + " ms: " + this);
+        closeNow();
+    }
+
+    void closeNow() {
+        if (!open) {
+            return;
+        }
+        open = false;
+        endHandshake();
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            ServerLogger.logError("Error closing channel: " + e.getMessage(), e);
+        }
+        while (gatherStart < gatherEnd) {
+            releaseGathered(gatherStart++);
+        }
+        outbound.close();
+        outbound.clear();
+        if (handler != null) {
+            // No-op after a graceful disconnect, otherwise removes the client from the online set
+            handler.disconnect();
+        }
+    }
+
+    // Private methods - Inbound
+    // Stops early, leaving the rest in the buffer, when a line pauses reading
+    private boolean decodeInbound(ByteBuffer buffer) {
+        boolean withinLimit = binaryInbound || lineDecoder.decode(buffer, this::onTextLine);
+        if (withinLimit && binaryInbound && !readingPaused) {
+            // Also picks up frames that arrived in the same read as the join line
+            withinLimit = frameDecoder.decode(buffer, this::onFrameLine);
+        }
+        return withinLimit;
+    }
+
+    private boolean onTextLine(String line) {
+        onLine(line);
+        return !binaryInbound && !readingPaused;
+    }
+
+    private boolean onFrameLine(String line) {
+        onLine(line);
+        return !readingPaused;
+    }
+
+    private void onLine(String line) {
+        if (!open) {
+            return;
+        }
+        if (handler == null) {
+            completeHandshake(line);
+        } else if (!handler.onMessage(line)) {
+            onEndOfStream();
+        } else if (outbound.size() > ServerConstants.OUTBOUND_QUEUE_CAPACITY / 2) {
+            // As on a blocking transport, a client whose own output is backed up is not read from
+            pauseNow();
+        }
+    }
+
+    private void pauseNow() {
+        if (readingPaused || !open || key == null || !key.isValid()) {
+            return;
+        }
+        readingPaused = true;
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        if (!pauseListed) {
+            pauseListed = true;
+            loop.pause(this);
+        }
+    }
+
+    private void completeHandshake(String joinLine) {
+        endHandshake();
+        HandshakeEvent event = handshakeEvent;
+        try {
+            handler = new ClientHandler(this, clients, dispatcher, joinLine);
+            long sinceAccept = System.nanoTime() - acceptedNanos;
+            ServerMetrics.HANDSHAKE_TIME.record(sinceAccept);
+            if (event.shouldCommit()) {
+                event.user = handler.getUserName();
+                event.messageLength = joinLine.length();
+                event.recipients = clients.size();
+                event.sinceAccept = sinceAccept;
+                event.commit();
+            }
+            ServerLogger.logInfo("Client joined: " + handler.getUserName() + " " + this);
+        } catch (IOException e) {
+            ServerLogger.logError("Rejected client " + this + ": " + e.getMessage(), e);
+            closeNow();
+        }
+    }
+
+    private void endHandshake() {
+        if (handshakePending) {
+            handshakePending = false;
+            handshakes.end();
+        }
+    }
+
+    // Private methods - Outbound
+    private void scheduleWrite() {
+        if (writeScheduled.compareAndSet(false, true)) {
+            loop.execute(this::enableWriteInterest);
+        }
+    }
+
+    private void enableWriteInterest() {
+        if (key != null && key.isValid()) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void onOutboundDrained() {
+        if (key.isValid()) {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+        writeScheduled.set(false);
+        // A producer may have queued a line after the last drain but before the flag was cleared
+        if (!outbound.isEmpty() && writeScheduled.compareAndSet(false, true)) {
+            enableWriteInterest();
+        } else if (closing) {
+            closeNow();
+        }
+    }
+
+    /**
+     * Takes the next batch of queued frames and lines up a view of each for one gathering write.
+     * @return false if nothing is queued
+     */
+    private boolean fillGather() {
+        gatherStart = 0;
+        gatherEnd = 0;
+        outbound.drainTo(draining, gather.length);
+        SharedFrame frame;
+        while ((frame = draining.poll()) != null) {
+            gathered[gatherEnd] = frame;
+            gather[gatherEnd++] = frame.view(outboundFormat);
+            if (frame == binarySwitch) {
+                outboundFormat = WireFormat.BINARY;
+            }
+        }
+        return gatherEnd > 0;
+    }
+
+    private void releaseGathered(int index) {
+        gathered[index].release();
+        gathered[index] = null;
+        gather[index] = null;
+    }
+
+    @Override
+    public String toString() {
+        try {
+            return "NioConnection[" + channel.getRemoteAddress() + "]";
+        } catch (IOException e) {
+            return "NioConnection[closed]";
+        }
+    }
+}